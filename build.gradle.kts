@@ -26,24 +26,172 @@ val selectedDb = providers
         .getOrElse("H2")
         .uppercase()
 
+val parsedSelectedDb = selectedDb
+        .indexOf('.')
+        .takeIf { it >= 0 }
+        ?.let { selectedDb.substring(0, it) to selectedDb.substring(it + 1) }
+        ?: (selectedDb to "")
+
+fun driverDependency(dbName: String): String? {
+    return when (dbName) {
+        "H2" -> "com.h2database:h2:2.2.222"
+        "H2.OLD" -> "com.h2database:h2:2.1.214"
+        "H2.OLD.SLEEP" -> "com.github.kelemen.mods.h2.sleep:h2:2.1.214"
+        "H2.OLD.NOSYNC", "H2.OLD.NOSYNC.SLEEP" -> "com.github.kelemen.mods.h2.nosync:h2:2.1.214"
+        "HSQL" -> "org.hsqldb:hsqldb:2.7.2"
+        "HSQL.SLEEP" -> "com.github.kelemen.mods.hsqldb.sleep:hsqldb:2.7.2"
+        "MARIA", "MARIA.SLEEP" -> "org.mariadb.jdbc:mariadb-java-client:3.1.4"
+        "POSTGRES", "POSTGRES.SLEEP" -> "org.postgresql:postgresql:42.6.0"
+        "POSTGRES.OLD", "POSTGRES.OLD.SLEEP" -> "org.postgresql:postgresql:42.4.3"
+        "DERBY", "DERBY.SLEEP" -> "org.apache.derby:derby:10.16.1.1"
+        "MSSQL", "MSSQL.SLEEP" -> "com.microsoft.sqlserver:mssql-jdbc:12.2.0.jre11"
+        "ORACLE.OLD", "ORACLE.OLD.SLEEP" -> "com.oracle.database.jdbc:ojdbc8:19.19.0.0"
+        "ORACLE", "ORACLE.SLEEP" -> "com.oracle.database.jdbc:ojdbc11:21.9.0.0"
+        else -> null
+    }
+}
+
+// The drivers of the other variants of the tested database listed in the driverVariant benchmark
+// parameter are resolved separately, and loaded into their own class loaders (see IsolatedDriver).
+// The parameter values are separated by ",", and the variants run within the same trial by "+".
+val driverVariantParams = providers
+        .gradleProperty("benchmark.driverVariant")
+        .map { rawValue -> rawValue.split(",").map { it.trim() } }
+        .getOrElse(listOf())
+val driverVariantJvmArgs = driverVariantParams
+        .flatMap { paramValue -> paramValue.split("+").map { it.trim().uppercase() } }
+        .distinct()
+        .filter { it != "DEFAULT" }
+        .map { variant ->
+            val dependency = driverDependency(variant)
+                    ?: throw GradleException("Unknown driver variant: ${variant}")
+            if (variant.substringBefore('.') != parsedSelectedDb.first) {
+                throw GradleException("Driver variant ${variant} is not a variant of ${parsedSelectedDb.first}")
+            }
+            val classpath = configurations
+                    .detachedConfiguration(dependencies.create(dependency))
+                    .resolve()
+                    .joinToString(File.pathSeparator)
+            "-Dloomdbtest.driverVariantClasspath.${variant}=${classpath}"
+        }
+
+val relSqlScriptDir = providers
+        .gradleProperty("loomdbtest.sqlScriptDir")
+        .getOrElse("sql-scripts")
+val sqlScriptDir = rootDir.resolve(relSqlScriptDir)
+
+val mockDbOptions = providers
+        .gradleProperty("loomdbtest.mockDbOptions")
+        .getOrElse("")
+
+val dbStorage = providers
+        .gradleProperty("loomdbtest.dbStorage")
+        .getOrElse("MEMORY")
+
+val dbSync = providers
+        .gradleProperty("loomdbtest.dbSync")
+        .getOrElse("DEFAULT")
+
+// Allows measuring how the benchmarks scale with the number of CPUs on a single machine.
+val processorCount = providers
+        .gradleProperty("loomdbtest.processorCount")
+        .orNull
+val carrierParallelism = providers
+        .gradleProperty("loomdbtest.carrierParallelism")
+        .orElse(providers.gradleProperty("loomdbtest.processorCount"))
+        .orNull
+val carrierMaxPoolSize = providers
+        .gradleProperty("loomdbtest.carrierMaxPoolSize")
+        .orNull
+
+val processorJvmArgs = listOfNotNull(
+        processorCount?.let { "-XX:ActiveProcessorCount=${it}" },
+        carrierParallelism?.let { "-Djdk.virtualThreadScheduler.parallelism=${it}" },
+        carrierMaxPoolSize?.let { "-Djdk.virtualThreadScheduler.maxPoolSize=${it}" },
+)
+
+// Records the custom pool events (disabled by default) of each benchmark fork into a separate JFR file.
+val jfrEvents = providers
+        .gradleProperty("loomdbtest.jfrEvents")
+        .map { it.toBoolean() }
+        .getOrElse(false)
+val jfrEventsDir = layout.buildDirectory.dir("results/jmh/jfr").get().asFile
+
+val jfrJvmArgs = if (jfrEvents) {
+    jfrEventsDir.mkdirs()
+    listOf(
+            "-XX:StartFlightRecording=filename=${jfrEventsDir}/loomdbtest-%p-%t.jfr" +
+                    ",+loomdbtest.PoolAcquire#enabled=true" +
+                    ",+loomdbtest.ConnectionHold#enabled=true" +
+                    ",+loomdbtest.StatementExecute#enabled=true",
+    )
+} else {
+    listOf()
+}
+
+// Reports the thread locals left behind by each virtual thread task (see ThreadLocalAuditor).
+val threadLocalAudit = providers
+        .gradleProperty("loomdbtest.threadLocalAudit")
+        .map { it.toBoolean() }
+        .getOrElse(false)
+val threadLocalAuditJvmArgs = if (threadLocalAudit) {
+    listOfNotNull(
+            "-Dloomdbtest.threadLocalAudit=true",
+            providers.gradleProperty("loomdbtest.threadLocalAuditInterval").orNull?.let {
+                "-Dloomdbtest.threadLocalAuditInterval=${it}"
+            },
+            "--add-opens=java.base/java.lang=ALL-UNNAMED",
+            "--add-opens=java.base/java.util=ALL-UNNAMED",
+            "--add-opens=java.base/java.util.concurrent=ALL-UNNAMED",
+    )
+} else {
+    listOf()
+}
+
+val collapsedStacks = providers
+        .gradleProperty("loomdbtest.collapsedStacks")
+        .map { it.toBoolean() }
+        .getOrElse(false)
+val profilePeriodMs = providers
+        .gradleProperty("loomdbtest.profilePeriodMs")
+        .orNull
+val collapsedStacksDir = layout.buildDirectory.dir("results/jmh/collapsed").get().asFile
+
+val benchmarkJvmArgs = processorJvmArgs + jfrJvmArgs + threadLocalAuditJvmArgs + driverVariantJvmArgs + listOf(
+        "-Dloomdbtest.testedDb=${parsedSelectedDb.first}",
+        "-Dloomdbtest.testedDbSubtype=${parsedSelectedDb.second}",
+        "-Dloomdbtest.sqlScriptDir=${sqlScriptDir}",
+        "-Dloomdbtest.mockDbOptions=${mockDbOptions}",
+        "-Dloomdbtest.dbStorage=${dbStorage}",
+        "-Dloomdbtest.dbSync=${dbSync}",
+)
+
+val jmhResultsFile = layout.buildDirectory.file("results/jmh/results.json").get().asFile
+
+// Every run is appended to this store (see ResultsStore), so that runs can be compared later.
+val resultsStore = rootDir.resolve(providers
+        .gradleProperty("loomdbtest.resultsStore")
+        .getOrElse("jmh-results/store/runs.jsonl"))
+
+val testedDbSystemProperties = mapOf(
+        "loomdbtest.testedDb" to parsedSelectedDb.first,
+        "loomdbtest.testedDbSubtype" to parsedSelectedDb.second,
+)
+
 jmh {
-    val parsedSelectedDb = selectedDb
-            .indexOf('.')
-            .takeIf { it >= 0 }
-            ?.let { selectedDb.substring(0, it) to selectedDb.substring(it + 1) }
-            ?: (selectedDb to "")
-
-    val relSqlScriptDir = providers
-            .gradleProperty("loomdbtest.sqlScriptDir")
-            .getOrElse("sql-scripts")
-    val sqlScriptDir = rootDir.resolve(relSqlScriptDir)
-
-    val extraJvmArgs = listOf(
-            "-Dloomdbtest.testedDb=${parsedSelectedDb.first}",
-            "-Dloomdbtest.testedDbSubtype=${parsedSelectedDb.second}",
-            "-Dloomdbtest.sqlScriptDir=${sqlScriptDir}",
+    jvmArgsAppend.set(benchmarkJvmArgs + enableLoomJvmArgs)
+
+    // The human-readable results.txt is written from the JSON by the storeResults task.
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResultsFile)
+
+    includes.set(providers
+            .gradleProperty("loomdbtest.benchmarks")
+            .map { rawValue ->
+                rawValue.split(",").map { it.trim() }
+            }
+            .orElse(listOf("DbPoolTest.testPools"))
     )
-    jvmArgsAppend.set(extraJvmArgs + enableLoomJvmArgs)
 
     val setBenchmarkParameter = { name: String ->
         val listValue = objects.listProperty<String>()
@@ -63,6 +211,133 @@ jmh {
     setBenchmarkParameter("cpuWork")
     setBenchmarkParameter("cpuSleepMs")
     setBenchmarkParameter("fullConcurrentTasks")
+    setBenchmarkParameter("bulkheadSize")
+    setBenchmarkParameter("taskDeadlineMs")
+    setBenchmarkParameter("batchTaskPercent")
+    setBenchmarkParameter("batchHoldMs")
+    setBenchmarkParameter("reservedConnections")
+    setBenchmarkParameter("shardCount")
+    setBenchmarkParameter("workload")
+    setBenchmarkParameter("connectionValidation")
+    setBenchmarkParameter("validationIntervalMs")
+    setBenchmarkParameter("maxLifetimeMs")
+    setBenchmarkParameter("throughputWindowMs")
+    setBenchmarkParameter("readPercent")
+    setBenchmarkParameter("cacheSize")
+    setBenchmarkParameter("cacheTtlMs")
+    setBenchmarkParameter("statementsPerTransaction")
+    setBenchmarkParameter("isolationLevel")
+    setBenchmarkParameter("hotRowCount")
+    setBenchmarkParameter("keySkew")
+    setBenchmarkParameter("maxRetries")
+    setBenchmarkParameter("lobReadMode")
+    setBenchmarkParameter("lobSizeKb")
+    setBenchmarkParameter("lobRowCount")
+    setBenchmarkParameter("connectionFactory")
+    setBenchmarkParameter("reconnectConcurrency")
+    setBenchmarkParameter("acquireTimeoutMs")
+    setBenchmarkParameter("faultType")
+    setBenchmarkParameter("faultDelayMs")
+    setBenchmarkParameter("faultDurationMs")
+    setBenchmarkParameter("stallPercent")
+    setBenchmarkParameter("stallMs")
+    setBenchmarkParameter("globalPoolSize")
+    setBenchmarkParameter("tenantCount")
+    setBenchmarkParameter("tenantBudget")
+    setBenchmarkParameter("tenantReservedConnections")
+    setBenchmarkParameter("tenantMaxConnections")
+    setBenchmarkParameter("tenantSkew")
+    setBenchmarkParameter("concurrentTasks")
+    setBenchmarkParameter("dbTaskCount")
+    setBenchmarkParameter("driverVariant")
+    setBenchmarkParameter("stackDepth")
+    setBenchmarkParameter("pipelineMode")
+    setBenchmarkParameter("pipelineParallelism")
+    setBenchmarkParameter("pipelineQueueDepth")
+    setBenchmarkParameter("pipelineBatchSize")
+    setBenchmarkParameter("pipelineRowCount")
+    setBenchmarkParameter("rowCpuWork")
+
+    // For example, "thrpt,avgt" and "gc" to report the throughput and the allocation rate as well.
+    providers.gradleProperty("loomdbtest.benchmarkModes").orNull?.let { rawValue ->
+        benchmarkMode.set(rawValue.split(",").map { it.trim() })
+    }
+    providers.gradleProperty("loomdbtest.profilers").orNull?.let { rawValue ->
+        profilers.addAll(rawValue.split(",").map { it.trim() })
+    }
+    if (driverVariantParams.any { it.contains("+") }) {
+        profilers.add("loomdbtest.DriverVariantProfiler")
+    }
+
+    // Writes the CPU samples of each trial as collapsed stacks (see CollapsedStackProfiler).
+    if (collapsedStacks) {
+        val profilerOptions = listOfNotNull(
+                "dir=${collapsedStacksDir}",
+                profilePeriodMs?.let { "periodMs=${it}" },
+        )
+        profilers.add("loomdbtest.CollapsedStackProfiler:${profilerOptions.joinToString(";")}")
+    }
+}
+
+tasks.jmh.configure {
+    finalizedBy("storeResults")
+}
+
+tasks.register<JavaExec>("storeResults") {
+    classpath = files(tasks.jmhJar)
+    mainClass.set("loomdbtest.ResultsStore")
+    // Finalizers also run if JMH failed (or was up-to-date), when the JSON is left over from an earlier run.
+    onlyIf {
+        val jmhState = tasks.jmh.get().state
+        jmhState.didWork && jmhState.failure == null && jmhResultsFile.isFile
+    }
+
+    systemProperties(testedDbSystemProperties)
+    systemProperty("loomdbtest.jmhResults", jmhResultsFile)
+    systemProperty("loomdbtest.resultsText", layout.buildDirectory.file("results/jmh/results.txt").get().asFile)
+    systemProperty("loomdbtest.resultsStore", resultsStore)
+    providers.gradleProperty("loomdbtest.runLabel").orNull?.let { systemProperty("loomdbtest.runLabel", it) }
+
+    doFirst {
+        val dependencies = configurations["jmhRuntimeClasspath"]
+                .resolvedConfiguration
+                .resolvedArtifacts
+                .map { it.moduleVersion.id.toString() }
+                .distinct()
+                .sorted()
+        systemProperty("loomdbtest.dependencies", dependencies.joinToString(","))
+    }
+}
+
+// Compares two runs of the results store (by default, the last two runs of the tested database).
+tasks.register<JavaExec>("compareResults") {
+    classpath = files(tasks.jmhJar)
+    mainClass.set("loomdbtest.ResultsComparison")
+
+    systemProperties(testedDbSystemProperties)
+    systemProperty("loomdbtest.resultsStore", resultsStore)
+    listOf("compareBaseline", "compareCandidate", "compareConfidence").forEach { name ->
+        providers.gradleProperty("loomdbtest.$name").orNull?.let { systemProperty("loomdbtest.$name", it) }
+    }
+    systemProperty("loomdbtest.comparisonOutput", layout.buildDirectory.file("results/jmh/comparison.txt").get().asFile)
+}
+
+// Runs DbPoolTest over a grid of pool sizes and task counts to locate the knee of the throughput curve.
+tasks.register<JavaExec>("kneeSweep") {
+    classpath = files(tasks.jmhJar)
+    mainClass.set("loomdbtest.KneeFinder")
+    jvmArgs(benchmarkJvmArgs + enableLoomJvmArgs)
+
+    listOf("kneePoolSizes", "kneeDbTaskCounts", "kneeTolerancePercent").forEach { name ->
+        providers.gradleProperty("loomdbtest.$name").orNull?.let { systemProperty("loomdbtest.$name", it) }
+    }
+    systemProperty("loomdbtest.kneeOutput", layout.buildDirectory.file("results/jmh/knee.txt").get().asFile)
+
+    args(providers
+            .gradlePropertiesPrefixedBy("benchmark.")
+            .get()
+            .map { (name, value) -> "${name.removePrefix("benchmark.")}=${value}" }
+    )
 }
 
 tasks.withType<JavaCompile>().configureEach {
@@ -80,19 +355,5 @@ dependencies {
     implementation("org.vibur:vibur-dbcp:25.0")
     implementation("org.freemarker:freemarker:2.3.32")
 
-    when (selectedDb) {
-        "H2" -> runtimeOnly("com.h2database:h2:2.2.222")
-        "H2.OLD" -> runtimeOnly("com.h2database:h2:2.1.214")
-        "H2.OLD.SLEEP" -> runtimeOnly("com.github.kelemen.mods.h2.sleep:h2:2.1.214")
-        "H2.OLD.NOSYNC", "H2.OLD.NOSYNC.SLEEP" -> runtimeOnly("com.github.kelemen.mods.h2.nosync:h2:2.1.214")
-        "HSQL" -> runtimeOnly("org.hsqldb:hsqldb:2.7.2")
-        "HSQL.SLEEP" -> runtimeOnly("com.github.kelemen.mods.hsqldb.sleep:hsqldb:2.7.2")
-        "MARIA", "MARIA.SLEEP" -> runtimeOnly("org.mariadb.jdbc:mariadb-java-client:3.1.4")
-        "POSTGRES", "POSTGRES.SLEEP" -> runtimeOnly("org.postgresql:postgresql:42.6.0")
-        "POSTGRES.OLD", "POSTGRES.OLD.SLEEP" -> runtimeOnly("org.postgresql:postgresql:42.4.3")
-        "DERBY", "DERBY.SLEEP" -> runtimeOnly("org.apache.derby:derby:10.16.1.1")
-        "MSSQL", "MSSQL.SLEEP" -> runtimeOnly("com.microsoft.sqlserver:mssql-jdbc:12.2.0.jre11")
-        "ORACLE.OLD", "ORACLE.OLD.SLEEP" -> runtimeOnly("com.oracle.database.jdbc:ojdbc8:19.19.0.0")
-        "ORACLE", "ORACLE.SLEEP" -> runtimeOnly("com.oracle.database.jdbc:ojdbc11:21.9.0.0")
-    }
+    driverDependency(selectedDb)?.let { runtimeOnly(it) }
 }
@@ -6,10 +6,12 @@ shopt -s extglob
 script_dir=$(cd "$(dirname "$0")" && pwd)
 
 jmh_benchmark_args=()
+gradle_task=jmh
+results_name=results
 
 while [[ $# > 0 ]] ; do
   case "$1" in
-    --@(sqlScriptDir|testedDb|poolSize|connectionAction|dbPoolType|forkType|cpuWork|cpuSleepMs|fullConcurrentTasks)?(=*))
+    --@(benchmarks|sqlScriptDir|mockDbOptions|dbStorage|dbSync|processorCount|carrierParallelism|carrierMaxPoolSize|kneePoolSizes|kneeDbTaskCounts|kneeTolerancePercent|jfrEvents|collapsedStacks|profilePeriodMs|runLabel|compareBaseline|compareCandidate|compareConfidence|testedDb|poolSize|connectionAction|dbPoolType|forkType|cpuWork|cpuSleepMs|fullConcurrentTasks|bulkheadSize|taskDeadlineMs|batchTaskPercent|batchHoldMs|reservedConnections|shardCount|workload|connectionValidation|validationIntervalMs|maxLifetimeMs|throughputWindowMs|readPercent|cacheSize|cacheTtlMs|statementsPerTransaction|isolationLevel|hotRowCount|keySkew|maxRetries|lobReadMode|lobSizeKb|lobRowCount|connectionFactory|reconnectConcurrency|acquireTimeoutMs|faultType|faultDelayMs|faultDurationMs|stallPercent|stallMs|globalPoolSize|tenantCount|tenantBudget|tenantReservedConnections|tenantMaxConnections|tenantSkew|concurrentTasks|dbTaskCount|driverVariant|stackDepth|benchmarkModes|profilers|threadLocalAudit|threadLocalAuditInterval|pipelineMode|pipelineParallelism|pipelineQueueDepth|pipelineBatchSize|pipelineRowCount|rowCpuWork)?(=*))
       param_key_name="${1#--}"
       if [[ ${param_key_name} =~ .*=.* ]]; then
         param_value="${param_key_name#*=}"
@@ -21,12 +23,30 @@ while [[ $# > 0 ]] ; do
 
       if [[ ${param_key_name} = testedDb ]]; then
         db_names="${db_names+${db_names}.}${param_value}"
+      elif [[ ${param_key_name} = benchmarks ]]; then
+        jmh_benchmark_args+=("-Ploomdbtest.benchmarks=${param_value}")
       elif [[ ${param_key_name} = sqlScriptDir ]]; then
         jmh_benchmark_args+=("-Ploomdbtest.sqlScriptDir=${param_value}")
+      elif [[ ${param_key_name} = mockDbOptions ]]; then
+        jmh_benchmark_args+=("-Ploomdbtest.mockDbOptions=${param_value}")
+      elif [[ ${param_key_name} =~ ^(processorCount|carrierParallelism|carrierMaxPoolSize|kneePoolSizes|kneeDbTaskCounts|kneeTolerancePercent|jfrEvents|collapsedStacks|profilePeriodMs|runLabel|compareBaseline|compareCandidate|compareConfidence|benchmarkModes|profilers|threadLocalAudit|threadLocalAuditInterval)$ ]]; then
+        jmh_benchmark_args+=("-Ploomdbtest.${param_key_name}=${param_value}")
+      elif [[ ${param_key_name} = dbStorage ]]; then
+        jmh_benchmark_args+=("-Ploomdbtest.dbStorage=${param_value}")
+      elif [[ ${param_key_name} = dbSync ]]; then
+        jmh_benchmark_args+=("-Ploomdbtest.dbSync=${param_value}")
       else
         jmh_benchmark_args+=("-Pbenchmark.${param_key_name}=${param_value}")
       fi
       ;;
+    --kneeSweep)
+      gradle_task=kneeSweep
+      results_name=knee
+      ;;
+    --compare)
+      gradle_task=compareResults
+      results_name=comparison
+      ;;
     *)
      echo 1>&2 "Unexpected parameter: $1"
      exit 1
@@ -45,26 +65,34 @@ dest_dir="${script_dir}/jmh-results"
 mkdir -p "${dest_dir}"
 
 (
-src_results_file="${script_dir}/build/results/jmh/results.txt"
+src_results_file="${script_dir}/build/results/jmh/${results_name}.txt"
+src_collapsed_dir="${script_dir}/build/results/jmh/collapsed"
 
 IFS=,
 
 for db_name in $(echo "${db_names}"); do
-  dest_file="${dest_dir}/${db_name}.results.txt"
+  dest_file="${dest_dir}/${db_name}.${results_name}.txt"
   rm -f "${dest_file}"
 done
 
 for db_name in $(echo "${db_names}"); do
-  dest_file="${dest_dir}/${db_name}.results.txt"
+  dest_file="${dest_dir}/${db_name}.${results_name}.txt"
+  dest_collapsed_dir="${dest_dir}/${db_name}.collapsed"
   rm -f "${src_results_file}"
+  rm -rf "${src_collapsed_dir}"
 
   jmh_success=Y
-  "${script_dir}/gradlew" "-PtestedDb=${db_name}" "${jmh_benchmark_args[@]}" jmh --rerun || jmh_success=N
+  "${script_dir}/gradlew" "-PtestedDb=${db_name}" "${jmh_benchmark_args[@]}" "${gradle_task}" --rerun || jmh_success=N
   error_code=$?
 
   if [[ ${jmh_success} = Y && -f "${src_results_file}" ]]; then
     cp "${src_results_file}" "${dest_file}"
     echo "Results for ${db_name} are stored in ${dest_file}."
+    if [[ -d "${src_collapsed_dir}" ]]; then
+      rm -rf "${dest_collapsed_dir}"
+      cp -r "${src_collapsed_dir}" "${dest_collapsed_dir}"
+      echo "Collapsed stacks for ${db_name} are stored in ${dest_collapsed_dir}."
+    fi
   else
     echo 1>&2 "Failed for ${db_name}"
     echo "jmh failed (with error ${error_code}) for benchmark parameters:" "${jmh_benchmark_args[@]}" > "${dest_file}"
@@ -77,6 +105,6 @@ for db_name in $(echo "${db_names}"); do
   echo ""
   echo "Results for ${db_name}"
   echo ""
-  cat "${dest_dir}/${db_name}.results.txt"
+  cat "${dest_dir}/${db_name}.${results_name}.txt"
 done
 )
@@ -0,0 +1,4 @@
+CREATE TABLE LOOM_DB_TEST_LOB (
+    ID INT NOT NULL PRIMARY KEY,
+    DATA ${lobType!"BLOB"} NOT NULL
+)
@@ -0,0 +1,4 @@
+CREATE TABLE LOOM_DB_TEST_PIPELINE (
+    ID ${idType!"BIGINT"} NOT NULL PRIMARY KEY,
+    PAYLOAD VARCHAR(64) NOT NULL
+)
@@ -0,0 +1 @@
+DROP TABLE IF EXISTS LOOM_DB_TEST_LOB
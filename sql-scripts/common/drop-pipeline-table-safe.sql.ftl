@@ -0,0 +1,3 @@
+[#if db.hasTable("LOOM_DB_TEST_PIPELINE")]
+DROP TABLE LOOM_DB_TEST_PIPELINE
+[/#if]
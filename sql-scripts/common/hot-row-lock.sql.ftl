@@ -0,0 +1 @@
+SELECT COL1 FROM LOOM_DB_TEST_TABLE WHERE COL1 = '@ROW_KEY@' FOR UPDATE
@@ -0,0 +1 @@
+UPDATE LOOM_DB_TEST_TABLE SET COL1 = COL1 WHERE COL1 = '@ROW_KEY@'
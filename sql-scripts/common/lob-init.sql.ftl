@@ -0,0 +1,2 @@
+[#include "/common/drop-lob-table.sql.ftl"];
+[#include "/common/create-lob-table.sql.ftl"];
@@ -0,0 +1,2 @@
+[#include "/common/drop-pipeline-table-safe.sql.ftl"];
+[#include "/common/create-pipeline-table.sql.ftl"];
@@ -0,0 +1,2 @@
+[#assign lobType = "BLOB(1G)"]
+[#include "/common/lob-init.sql.ftl"]
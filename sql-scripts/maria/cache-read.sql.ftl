@@ -0,0 +1 @@
+[#include "/common/query2.sql.ftl"]
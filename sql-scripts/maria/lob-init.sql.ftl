@@ -0,0 +1,2 @@
+[#assign lobType = "LONGBLOB"]
+[#include "/common/lob-init.sql.ftl"]
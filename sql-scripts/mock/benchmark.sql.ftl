@@ -0,0 +1,5 @@
+[#if sleep]
+[#include "/common/sleep.sql.ftl"]
+[#else]
+[#include "/common/query1.sql.ftl"]
+[/#if]
@@ -0,0 +1 @@
+[#include "/common/query1.sql.ftl"]
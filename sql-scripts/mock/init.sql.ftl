@@ -0,0 +1,3 @@
+[#include "/common/drop-table.sql.ftl"];
+[#include "/common/create-table.sql.ftl"];
+[#include "/common/insert.sql.ftl"];
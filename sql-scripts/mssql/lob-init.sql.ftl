@@ -0,0 +1,3 @@
+[#assign lobType = "VARBINARY(MAX)"]
+[#include "/common/drop-lob-table-safe.sql.ftl"];
+[#include "/common/create-lob-table.sql.ftl"];
@@ -0,0 +1 @@
+[#include "/common/query-oracle.sql.ftl"]
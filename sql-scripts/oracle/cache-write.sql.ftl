@@ -0,0 +1 @@
+[#include "/common/insert-delete.sql.ftl"]
@@ -0,0 +1,2 @@
+[#assign idType = "NUMBER(19)"]
+[#include "/common/pipeline-init.sql.ftl"]
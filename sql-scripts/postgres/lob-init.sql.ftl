@@ -0,0 +1,2 @@
+[#assign lobType = "BYTEA"]
+[#include "/common/lob-init.sql.ftl"]
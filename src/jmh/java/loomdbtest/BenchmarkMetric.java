@@ -0,0 +1,102 @@
+package loomdbtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A single metric (the primary, or a secondary one) of a benchmark configuration, as read from
+ * the JSON results of JMH.
+ *
+ * @param name the name of the benchmark method, followed by {@code ":<METRIC>"} for secondary metrics
+ * @param mode the short name of the benchmark mode (e.g., {@code "thrpt"})
+ * @param params the benchmark parameters
+ * @param score the score of the metric
+ * @param scoreError the error of the score reported by JMH (at 99.9% confidence), or {@code NaN}
+ * @param unit the unit of the score
+ * @param rawData the score of each measurement iteration (of all forks)
+ */
+public record BenchmarkMetric(
+        String name,
+        String mode,
+        Map<String, String> params,
+        double score,
+        double scoreError,
+        String unit,
+        double[] rawData
+) {
+    public BenchmarkMetric {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(mode, "mode");
+        params = Collections.unmodifiableMap(new TreeMap<>(params));
+        Objects.requireNonNull(unit, "unit");
+        rawData = rawData.clone();
+    }
+
+    public static List<BenchmarkMetric> fromJmhResults(List<Object> benchmarks) {
+        List<BenchmarkMetric> result = new ArrayList<>();
+        for (Object benchmarkObj : benchmarks) {
+            Map<String, Object> benchmark = Json.asObject(benchmarkObj);
+            String name = shortBenchmarkName(benchmark.get("benchmark").toString());
+            String mode = benchmark.get("mode").toString();
+
+            Map<String, String> params = new TreeMap<>();
+            Json.asObject(benchmark.get("params")).forEach((key, value) -> params.put(key, value.toString()));
+
+            result.add(fromJmhMetric(name, mode, params, Json.asObject(benchmark.get("primaryMetric"))));
+            Json.asObject(benchmark.get("secondaryMetrics")).forEach((metricName, metric) -> {
+                result.add(fromJmhMetric(name + ":" + metricName, mode, params, Json.asObject(metric)));
+            });
+        }
+        return result;
+    }
+
+    private static String shortBenchmarkName(String benchmark) {
+        String packagePrefix = BenchmarkMetric.class.getPackageName() + ".";
+        return benchmark.startsWith(packagePrefix) ? benchmark.substring(packagePrefix.length()) : benchmark;
+    }
+
+    private static BenchmarkMetric fromJmhMetric(
+            String name,
+            String mode,
+            Map<String, String> params,
+            Map<String, Object> metric
+    ) {
+        List<Double> rawData = new ArrayList<>();
+        for (Object forkData : Json.asArray(metric.get("rawData"))) {
+            for (Object value : Json.asArray(forkData)) {
+                rawData.add(Json.toDouble(value));
+            }
+        }
+
+        Object unit = metric.get("scoreUnit");
+        return new BenchmarkMetric(
+                name,
+                mode,
+                params,
+                Json.toDouble(metric.get("score")),
+                Json.toDouble(metric.get("scoreError")),
+                unit != null ? unit.toString() : "",
+                rawData.stream().mapToDouble(Double::doubleValue).toArray()
+        );
+    }
+
+    public boolean isSecondary() {
+        return name.indexOf(':') >= 0;
+    }
+
+    /**
+     * Returns the key identifying the same configuration of the same metric across runs.
+     */
+    public String configurationKey() {
+        return name + " " + mode + " " + params;
+    }
+
+    @Override
+    public double[] rawData() {
+        return rawData.clone();
+    }
+}
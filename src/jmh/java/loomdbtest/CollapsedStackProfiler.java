@@ -0,0 +1,303 @@
+package loomdbtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordedThreadGroup;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.profile.ProfilerException;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * A JMH profiler recording the JFR execution samples of each benchmark fork, and writing them into
+ * a flame graph compatible collapsed stack file (one line per distinct stack: the frames from the root
+ * separated by semicolons, then the number of samples) named by the benchmark and its parameters.
+ * The samples of the forks of the same trial are merged into the same file.
+ * <P>
+ * The root frame of each stack is the kind of the sampled thread: {@code [virtual]}, {@code [carrier]}
+ * (a carrier thread of virtual threads, not running a virtual thread at the time of the sample) or
+ * {@code [platform]}. Only the samples taken during the measurement iterations are kept by default.
+ * <P>
+ * The profiler is enabled by {@code -prof loomdbtest.CollapsedStackProfiler:<OPTIONS>}, where the options
+ * are separated by semicolons:
+ * <ul>
+ *  <li>{@code dir=<PATH>}: The directory to write the collapsed stacks (and the JFR recordings) into.</li>
+ *  <li>{@code periodMs=<MILLIS>}: The sampling period of the execution samples. The default is 10.</li>
+ *  <li>{@code stackDepth=<DEPTH>}: The maximum number of frames recorded. The default is 256.</li>
+ *  <li>{@code warmup=<true|false>}: Whether the samples of the warmup iterations are kept as well.</li>
+ * </ul>
+ */
+public final class CollapsedStackProfiler implements ExternalProfiler, InternalProfiler {
+    private static final String EXECUTION_SAMPLE_EVENT = "jdk.ExecutionSample";
+    private static final String MEASUREMENT_EVENT = "loomdbtest.MeasurementIteration";
+    private static final String VIRTUAL_THREAD_GROUP = "VirtualThreads";
+    private static final String CARRIER_THREAD_GROUP = "CarrierThreads";
+    // The names of hidden classes (lambdas) contain their address, which differs between forks.
+    private static final Pattern HIDDEN_CLASS_SUFFIX = Pattern.compile("\\+0x[0-9a-fA-F]+[./][0-9]+$");
+    private static final Pattern UNSAFE_FILE_NAME_CHARS = Pattern.compile("[^A-Za-z0-9._=,-]");
+
+    private final Path outputDir;
+    private final long periodMs;
+    private final int stackDepth;
+    private final boolean includeWarmup;
+
+    private final Map<String, Map<String, Long>> trialStacks;
+    private MeasurementIterationEvent measurementEvent;
+
+    public CollapsedStackProfiler() throws ProfilerException {
+        this("");
+    }
+
+    public CollapsedStackProfiler(String initLine) throws ProfilerException {
+        Map<String, String> options = parseOptions(initLine);
+
+        this.outputDir = Path.of(options.getOrDefault("dir", "collapsed-stacks")).toAbsolutePath();
+        this.includeWarmup = Boolean.parseBoolean(options.getOrDefault("warmup", "false"));
+        try {
+            this.periodMs = Long.parseLong(options.getOrDefault("periodMs", "10"));
+            this.stackDepth = Integer.parseInt(options.getOrDefault("stackDepth", "256"));
+        } catch (NumberFormatException e) {
+            throw new ProfilerException(e);
+        }
+        if (periodMs <= 0 || stackDepth <= 0) {
+            throw new ProfilerException("periodMs and stackDepth must be positive: " + initLine);
+        }
+
+        this.trialStacks = new HashMap<>();
+        this.measurementEvent = null;
+    }
+
+    private static Map<String, String> parseOptions(String initLine) throws ProfilerException {
+        Map<String, String> result = new HashMap<>();
+        for (String option : initLine.split(";")) {
+            if (option.isBlank()) {
+                continue;
+            }
+            int separatorIndex = option.indexOf('=');
+            if (separatorIndex < 0) {
+                throw new ProfilerException("Options must be in <NAME>=<VALUE> format: " + option);
+            }
+            result.put(option.substring(0, separatorIndex).trim(), option.substring(separatorIndex + 1).trim());
+        }
+        return result;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Writes the JFR execution samples of each trial as collapsed stacks";
+    }
+
+    @Override
+    public Collection<String> addJVMInvokeOptions(BenchmarkParams params) {
+        return List.of();
+    }
+
+    @Override
+    public Collection<String> addJVMOptions(BenchmarkParams params) {
+        return List.of(
+                "-XX:FlightRecorderOptions:stackdepth=" + stackDepth,
+                "-XX:StartFlightRecording=dumponexit=true"
+                        + ",filename=" + recordingFile("%p")
+                        + "," + EXECUTION_SAMPLE_EVENT + "#enabled=true"
+                        + "," + EXECUTION_SAMPLE_EVENT + "#period=" + periodMs + "ms"
+        );
+    }
+
+    private Path recordingFile(String pid) {
+        return outputDir.resolve("jfr").resolve("trial-" + pid + ".jfr");
+    }
+
+    @Override
+    public void beforeTrial(BenchmarkParams benchmarkParams) {
+        try {
+            Files.createDirectories(outputDir.resolve("jfr"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterTrial(BenchmarkResult br, long pid, File stdOut, File stdErr) {
+        Path recording = recordingFile(Long.toString(pid));
+        if (!Files.isRegularFile(recording)) {
+            System.err.println("No JFR recording was found for the trial: " + recording);
+            return List.of();
+        }
+
+        String trialName = trialName(br.getParams());
+        Map<String, Long> stacks = trialStacks.computeIfAbsent(trialName, key -> new TreeMap<>());
+        try {
+            collectStacks(recording, stacks);
+            writeStacks(outputDir.resolve(trialName + ".collapsed"), stacks);
+            Files.delete(recording);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.of();
+    }
+
+    private static String trialName(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        String packagePrefix = CollapsedStackProfiler.class.getPackageName() + ".";
+        if (benchmark.startsWith(packagePrefix)) {
+            benchmark = benchmark.substring(packagePrefix.length());
+        }
+
+        StringBuilder result = new StringBuilder(benchmark);
+        for (String key : params.getParamsKeys()) {
+            result.append('-').append(key).append('=').append(params.getParam(key));
+        }
+        return UNSAFE_FILE_NAME_CHARS.matcher(result).replaceAll("_");
+    }
+
+    private void collectStacks(Path recording, Map<String, Long> stacks) throws IOException {
+        List<RecordedEvent> samples = new ArrayList<>();
+        List<RecordedEvent> measurements = new ArrayList<>();
+        try (RecordingFile recordingFile = new RecordingFile(recording)) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                String eventName = event.getEventType().getName();
+                if (eventName.equals(EXECUTION_SAMPLE_EVENT)) {
+                    samples.add(event);
+                } else if (eventName.equals(MEASUREMENT_EVENT)) {
+                    measurements.add(event);
+                }
+            }
+        }
+
+        for (RecordedEvent sample : samples) {
+            if (includeWarmup || isDuringAny(sample.getStartTime(), measurements)) {
+                String stack = collapsedStack(sample);
+                if (stack != null) {
+                    stacks.merge(stack, 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    private static boolean isDuringAny(Instant time, List<RecordedEvent> periods) {
+        for (RecordedEvent period : periods) {
+            if (!time.isBefore(period.getStartTime()) && !time.isAfter(period.getEndTime())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String collapsedStack(RecordedEvent sample) {
+        RecordedStackTrace stackTrace = sample.getStackTrace();
+        if (stackTrace == null) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder(threadKind(sample.getThread("sampledThread")));
+        if (stackTrace.isTruncated()) {
+            result.append(";[truncated]");
+        }
+
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            RecordedFrame frame = frames.get(i);
+            if (!frame.isJavaFrame()) {
+                continue;
+            }
+            String className = frame.getMethod().getType().getName();
+            result.append(';')
+                    .append(HIDDEN_CLASS_SUFFIX.matcher(className).replaceFirst(""))
+                    .append('.')
+                    .append(frame.getMethod().getName());
+        }
+        return result.toString();
+    }
+
+    private static String threadKind(RecordedThread thread) {
+        RecordedThreadGroup threadGroup = thread != null ? thread.getThreadGroup() : null;
+        String groupName = threadGroup != null ? threadGroup.getName() : "";
+        if (VIRTUAL_THREAD_GROUP.equals(groupName)) {
+            return "[virtual]";
+        }
+        if (CARRIER_THREAD_GROUP.equals(groupName)) {
+            return "[carrier]";
+        }
+        return "[platform]";
+    }
+
+    private static void writeStacks(Path file, Map<String, Long> stacks) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(entry.getValue().toString());
+                writer.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public boolean allowPrintOut() {
+        return true;
+    }
+
+    @Override
+    public boolean allowPrintErr() {
+        return true;
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        if (iterationParams.getType() == IterationType.MEASUREMENT) {
+            measurementEvent = new MeasurementIterationEvent();
+            measurementEvent.begin();
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(
+            BenchmarkParams benchmarkParams,
+            IterationParams iterationParams,
+            IterationResult result
+    ) {
+        if (measurementEvent != null) {
+            measurementEvent.commit();
+            measurementEvent = null;
+        }
+        return List.of();
+    }
+
+    /**
+     * Marks the measurement iterations in the recording of the fork, so that the samples of the
+     * warmup iterations (and of the setup of the fork) can be excluded.
+     */
+    @Name(MEASUREMENT_EVENT)
+    @Label("Measurement Iteration")
+    @Category("Loom DB Test")
+    @StackTrace(false)
+    static final class MeasurementIterationEvent extends jdk.jfr.Event {
+    }
+}
@@ -0,0 +1,144 @@
+package loomdbtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of the pools while their connections are steadily replaced
+ * due to their max lifetime. Besides the average throughput, the throughput of short
+ * time windows and the latency of the reconnects are printed after each iteration, so
+ * the dips caused by the reconnects can be seen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConnectionChurnTest {
+    /**
+     * The maximum number of concurrent connections. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*1")
+    private String poolSize;
+
+    @Param("EXECUTE_SCRIPT")
+    private DbPoolTest.ConnectionActionType connectionAction;
+
+    @Param("SEMAPHORE")
+    private DbPoolType dbPoolType;
+
+    @Param("ON_BORROW")
+    private ConnectionValidation connectionValidation;
+
+    @Param("1000")
+    private long validationIntervalMs;
+
+    /**
+     * The age (in ms) after which connections are replaced. If non-positive, then
+     * connections are only replaced if they are found to be invalid.
+     */
+    @Param("2000")
+    private long maxLifetimeMs;
+
+    /**
+     * The length of the time windows (in ms) in which the throughput is measured
+     * separately to detect throughput dips.
+     */
+    @Param("100")
+    private long throughputWindowMs;
+
+    private BenchmarkConnectionAction benchmarkConnectionAction;
+    private ScopedDataSource dataSource;
+    private DbKeepAliveReference keepAliveReference;
+
+    private final LongAdder completedActions = new LongAdder();
+    private ThroughputSampler throughputSampler;
+
+    @Setup
+    public void setup() throws Exception {
+        int actualPoolSize = DbPoolTest.normalizePoolSize(poolSize);
+        var testedDb = TestedDb.selectedTestedDb();
+
+        DbPoolSettings poolSettings = DbPoolSettings.ofPoolSize(actualPoolSize)
+                .withConnectionInfo(testedDb.connectionInfo().instrumented())
+                .withValidation(connectionValidation, Duration.ofMillis(validationIntervalMs))
+                .withMaxLifetime(maxLifetimeMs > 0 ? Duration.ofMillis(maxLifetimeMs) : null);
+        dataSource = dbPoolType.newDataSource(poolSettings);
+
+        keepAliveReference = testedDb.keepAliveDb();
+
+        benchmarkConnectionAction = connectionAction.createAction(
+                actualPoolSize,
+                dataSource.withConnectionAndGet(testedDb::initDb)
+        );
+        DbPoolTest.preopenConnections(actualPoolSize, dataSource);
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, dataSource);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        InstrumentedDriver.connectLatencies().reset();
+        completedActions.reset();
+        throughputSampler = new ThroughputSampler("churn-throughput-sampler", completedActions, throughputWindowMs);
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() throws InterruptedException {
+        long[] windowCounts = throughputSampler.stop();
+
+        System.out.println();
+        System.out.println("## Connection churn");
+        if (windowCounts.length > 0) {
+            long[] sortedCounts = windowCounts.clone();
+            Arrays.sort(sortedCounts);
+            long medianCount = sortedCounts[sortedCounts.length / 2];
+            long dipCount = Arrays.stream(windowCounts)
+                    .filter(count -> 2 * count < medianCount)
+                    .count();
+
+            double windowsPerSec = TimeUnit.SECONDS.toMillis(1) / (double) throughputWindowMs;
+            System.out.printf(Locale.ROOT,
+                    "Throughput of %d ms windows (ops/s): min=%.1f, median=%.1f, max=%.1f;"
+                            + " windows below half of the median: %d / %d%n",
+                    throughputWindowMs,
+                    sortedCounts[0] * windowsPerSec,
+                    medianCount * windowsPerSec,
+                    sortedCounts[sortedCounts.length - 1] * windowsPerSec,
+                    dipCount,
+                    windowCounts.length
+            );
+        }
+        System.out.println("Reconnects: " + InstrumentedDriver.connectLatencies().toSummaryString());
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void churnConnections(Blackhole blackhole) throws Exception {
+        dataSource.withConnection(connection -> {
+            benchmarkConnectionAction.run(connection, blackhole);
+        });
+        completedActions.increment();
+    }
+}
@@ -0,0 +1,111 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.dbcp2.ConnectionFactory;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how quickly connections can be opened (and closed) without a pool, when many
+ * virtual threads reconnect at once (e.g., after the database was restarted). Each invocation
+ * of the benchmark is a "reconnect storm", where each of the concurrently started virtual
+ * threads opens and closes a single connection. The number of connections per second,
+ * and the latencies of opening them are printed after each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class ConnectionCreationTest {
+    @Param("DRIVER_DIRECT")
+    private ConnectionFactoryType connectionFactory;
+
+    /**
+     * The number of virtual threads connecting concurrently. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*16")
+    private String reconnectConcurrency;
+
+    private DbKeepAliveReference keepAliveReference;
+    private ConnectionFactory factory;
+    private int actualReconnectConcurrency;
+
+    private final LatencyHistogram connectLatencies = new LatencyHistogram();
+    private final LongAdder connectionCount = new LongAdder();
+    private volatile long iterationStartNanos;
+
+    @Setup
+    public void setup() throws Exception {
+        actualReconnectConcurrency = DbPoolTest.normalizePoolSize(reconnectConcurrency);
+
+        var testedDb = TestedDb.selectedTestedDb();
+        keepAliveReference = testedDb.keepAliveDb();
+        factory = connectionFactory.newConnectionFactory(testedDb.connectionInfo());
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        connectLatencies.reset();
+        connectionCount.reset();
+        iterationStartNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        double elapsedSec = (System.nanoTime() - iterationStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        long connections = connectionCount.sum();
+
+        System.out.println();
+        System.out.println("## Reconnect storms");
+        System.out.printf(Locale.ROOT, "connections=%d (%.1f/s)%n", connections, connections / elapsedSec);
+        LatencyHistogram.printSummaries("Connect latencies", Map.of(connectionFactory, connectLatencies));
+    }
+
+    private void reconnect(AtomicReference<Throwable> failureRef) {
+        try {
+            long startNanos = System.nanoTime();
+            Connection connection = factory.createConnection();
+            connectLatencies.record(System.nanoTime() - startNanos);
+            connection.close();
+            connectionCount.increment();
+        } catch (Throwable e) {
+            failureRef.compareAndSet(null, e);
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void reconnectStorm() throws Exception {
+        AtomicReference<Throwable> failureRef = new AtomicReference<>();
+        Thread[] threads = new Thread[actualReconnectConcurrency];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = Thread.startVirtualThread(() -> reconnect(failureRef));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ExceptionHelper.rethrowCheckedIfNotNull(failureRef.get(), Exception.class);
+    }
+}
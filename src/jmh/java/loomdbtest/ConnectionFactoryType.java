@@ -0,0 +1,29 @@
+package loomdbtest;
+
+import org.apache.commons.dbcp2.ConnectionFactory;
+
+/**
+ * Defines how new connections are opened by {@link ConnectionCreationTest}.
+ */
+public enum ConnectionFactoryType {
+    /**
+     * Opens each connection via {@link java.sql.DriverManager#getConnection(String, String, String)}.
+     */
+    DRIVER_MANAGER {
+        @Override
+        public ConnectionFactory newConnectionFactory(JdbcConnectionInfo connectionInfo) {
+            return connectionInfo::newConnection;
+        }
+    },
+    /**
+     * Opens each connection via {@link DriverConnectionFactory}.
+     */
+    DRIVER_DIRECT {
+        @Override
+        public ConnectionFactory newConnectionFactory(JdbcConnectionInfo connectionInfo) {
+            return new DriverConnectionFactory(connectionInfo);
+        }
+    };
+
+    public abstract ConnectionFactory newConnectionFactory(JdbcConnectionInfo connectionInfo);
+}
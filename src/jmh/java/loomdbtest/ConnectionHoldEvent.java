@@ -0,0 +1,34 @@
+package loomdbtest;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The time a connection action held its connection.
+ */
+@Name("loomdbtest.ConnectionHold")
+@Label("Connection Hold")
+@Category({"Loom DB Test", "Pool"})
+@Description("The time a connection action held its connection")
+@Enabled(false)
+@StackTrace(false)
+final class ConnectionHoldEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(ConnectionHoldEvent.class);
+
+    @Label("Correlation Id")
+    @Description("Identifies the connection action across the pool, connection and statement events")
+    long correlationId;
+
+    @Label("Pool Type")
+    String poolType;
+
+    @Label("Connection Id")
+    @Description("The identity hash code of the connection given to the action")
+    int connectionId;
+}
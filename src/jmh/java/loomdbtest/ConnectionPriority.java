@@ -0,0 +1,17 @@
+package loomdbtest;
+
+/**
+ * The priority classes of tasks requesting a connection in the order of
+ * decreasing priority. Only {@link DbPoolType#PRIORITY} prefers higher priority
+ * tasks, other pools ignore the priority.
+ */
+public enum ConnectionPriority {
+    /**
+     * Short, latency sensitive actions (e.g., serving a user request).
+     */
+    INTERACTIVE,
+    /**
+     * Long running actions, where latency is not a concern (e.g., batch jobs).
+     */
+    BATCH
+}
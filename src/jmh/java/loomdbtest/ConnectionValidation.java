@@ -0,0 +1,28 @@
+package loomdbtest;
+
+/**
+ * Defines when a connection pool checks (via {@link java.sql.Connection#isValid(int) isValid})
+ * that its idle connections are still usable.
+ */
+public enum ConnectionValidation {
+    /**
+     * Keeps the default validation behavior of the pool. The pools implemented in this
+     * project do not validate connections by default.
+     */
+    DEFAULT,
+    /**
+     * Connections are never validated by the pool (though some pools cannot be
+     * configured to completely skip validation).
+     */
+    NONE,
+    /**
+     * Connections are validated each time they are borrowed from the pool,
+     * adding the round trip to the latency of acquiring a connection.
+     */
+    ON_BORROW,
+    /**
+     * Idle connections are validated periodically by a background task, so that
+     * borrowing a connection does not have to wait for the validation.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,122 @@
+package loomdbtest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * The configuration of a connection pool created by {@link DbPoolType}.
+ *
+ * @param poolSize the maximum number of connections the pool may open
+ * @param connectionInfo the database the pool is connecting to
+ * @param acquireTimeout the maximum time to wait for a connection, or {@code null}
+ *   to wait forever
+ * @param reservedConnections the number of connections reserved for each priority class.
+ *   Only honored by {@link DbPoolType#PRIORITY}.
+ * @param validation when the pool checks that its connections are still usable
+ * @param validationInterval the period of the validation of idle connections if
+ *   {@code validation} is {@link ConnectionValidation#BACKGROUND}
+ * @param maxLifetime the age after which connections are replaced by new ones, or {@code null}
+ *   if connections are to be kept for as long as possible
+ */
+public record DbPoolSettings(
+        int poolSize,
+        JdbcConnectionInfo connectionInfo,
+        Duration acquireTimeout,
+        Map<ConnectionPriority, Integer> reservedConnections,
+        ConnectionValidation validation,
+        Duration validationInterval,
+        Duration maxLifetime
+) {
+    private static final Duration DEFAULT_VALIDATION_INTERVAL = Duration.ofSeconds(30);
+
+    public DbPoolSettings {
+        ExceptionHelper.checkArgumentInRange(poolSize, 1, Integer.MAX_VALUE, "poolSize");
+        Objects.requireNonNull(connectionInfo, "connectionInfo");
+        checkPositive(acquireTimeout, "acquireTimeout");
+        reservedConnections = Map.copyOf(reservedConnections);
+        Objects.requireNonNull(validation, "validation");
+        Objects.requireNonNull(validationInterval, "validationInterval");
+        checkPositive(validationInterval, "validationInterval");
+        checkPositive(maxLifetime, "maxLifetime");
+    }
+
+    private static void checkPositive(Duration duration, String name) {
+        if (duration != null && (duration.isNegative() || duration.isZero())) {
+            throw new IllegalArgumentException(name + " must be positive: " + duration);
+        }
+    }
+
+    public static DbPoolSettings ofPoolSize(int poolSize) {
+        return new DbPoolSettings(
+                poolSize,
+                TestedDb.selectedTestedDb().connectionInfo(),
+                null,
+                Map.of(),
+                ConnectionValidation.DEFAULT,
+                DEFAULT_VALIDATION_INTERVAL,
+                null
+        );
+    }
+
+    public DbPoolSettings withConnectionInfo(JdbcConnectionInfo newConnectionInfo) {
+        return new DbPoolSettings(
+                poolSize,
+                newConnectionInfo,
+                acquireTimeout,
+                reservedConnections,
+                validation,
+                validationInterval,
+                maxLifetime
+        );
+    }
+
+    public DbPoolSettings withAcquireTimeout(Duration newAcquireTimeout) {
+        return new DbPoolSettings(
+                poolSize,
+                connectionInfo,
+                newAcquireTimeout,
+                reservedConnections,
+                validation,
+                validationInterval,
+                maxLifetime
+        );
+    }
+
+    public DbPoolSettings withReservedConnections(Map<ConnectionPriority, Integer> newReservedConnections) {
+        return new DbPoolSettings(
+                poolSize,
+                connectionInfo,
+                acquireTimeout,
+                newReservedConnections,
+                validation,
+                validationInterval,
+                maxLifetime
+        );
+    }
+
+    public DbPoolSettings withValidation(ConnectionValidation newValidation, Duration newValidationInterval) {
+        return new DbPoolSettings(
+                poolSize,
+                connectionInfo,
+                acquireTimeout,
+                reservedConnections,
+                newValidation,
+                newValidationInterval,
+                maxLifetime
+        );
+    }
+
+    public DbPoolSettings withMaxLifetime(Duration newMaxLifetime) {
+        return new DbPoolSettings(
+                poolSize,
+                connectionInfo,
+                acquireTimeout,
+                reservedConnections,
+                validation,
+                validationInterval,
+                newMaxLifetime
+        );
+    }
+}
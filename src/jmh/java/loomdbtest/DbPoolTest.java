@@ -1,18 +1,20 @@
 package loomdbtest;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import org.jtrim2.cancel.Cancellation;
-import org.jtrim2.concurrent.Tasks;
-import org.jtrim2.concurrent.WaitableSignal;
+import java.util.regex.Pattern;
 import org.jtrim2.utils.ExceptionHelper;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
 import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Param;
@@ -21,7 +23,10 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
 import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
 
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
@@ -29,7 +34,10 @@ import org.openjdk.jmh.infra.Blackhole;
 @Fork(1)
 public class DbPoolTest {
     private static final int PROCESSOR_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int DB_TASKS_PER_PROCESSOR = 4;
+    private static final String NO_BULKHEAD = "NONE";
+    private static final String NO_RESERVED_CONNECTIONS = "NONE";
+    private static final String NO_WORKLOAD = "NONE";
+    private static final String DRIVER_VARIANT_SEPARATOR = "+";
 
     /**
      * The maximum number of concurrent connections. If non-positive, then
@@ -58,12 +66,105 @@ public class DbPoolTest {
     @Param("true")
     private boolean fullConcurrentTasks;
 
+    /**
+     * The number of connection actions (offered concurrency) forked by a single benchmark
+     * invocation. The value is interpreted the same way as {@link #poolSize}, and rounded up
+     * to an even number.
+     */
+    @Param("*4")
+    private String dbTaskCount;
+
+    /**
+     * The number of platform threads executing the connection actions on behalf
+     * of the tasks. The value is interpreted the same way as {@link #poolSize}, except
+     * that "NONE" means that connection actions are executed directly by the tasks.
+     */
+    @Param(NO_BULKHEAD)
+    private String bulkheadSize;
+
+    /**
+     * The time budget of the connection actions (including the wait for the connection)
+     * in milliseconds. Tasks expected to miss their deadline are rejected immediately,
+     * and the statements still executing at the deadline are canceled. If non-positive,
+     * then the tasks have no deadline. Deadlines can only be measured by the
+     * {@link #testDeadlines(Blackhole, TaskOutcomes) testDeadlines} benchmark.
+     */
+    @Param("0")
+    private long taskDeadlineMs;
+
+    /**
+     * The percentage of the connection actions which are long running batch actions
+     * acquiring their connection with {@link ConnectionPriority#BATCH} priority. The rest
+     * of the connection actions are interactive. If positive, then the latency distribution
+     * of each priority class is printed after each iteration.
+     */
+    @Param("0")
+    private int batchTaskPercent;
+
+    /**
+     * The time (in ms) a batch connection action holds its connection.
+     */
+    @Param("60")
+    private long batchHoldMs;
+
+    /**
+     * The number of connections reserved for each priority class in the
+     * "PRIORITY1:COUNT1;PRIORITY2:COUNT2" format (e.g., "INTERACTIVE:4;BATCH:1"), or "NONE".
+     * Only honored by the {@code PRIORITY} pool type.
+     */
+    @Param(NO_RESERVED_CONNECTIONS)
+    private String reservedConnections;
+
+    /**
+     * The number of independent database instances the connection actions are spread between.
+     * Each instance has its own pool, and the connections of {@link #poolSize} are divided evenly
+     * between them. Only supported by the databases running within the JVM.
+     */
+    @Param("1")
+    private int shardCount;
+
+    /**
+     * The name of the workload definition (without the ".workload" extension) in the script directory
+     * defining a weighted mix of scripts to execute instead of the benchmark script, or "NONE".
+     * Requires the {@code EXECUTE_SCRIPT} connection action. See {@link Workload} for the format.
+     */
+    @Param(NO_WORKLOAD)
+    private String workload;
+
+    /**
+     * The version of the driver to connect through: "DEFAULT" for the driver of the tested database, or the
+     * name of a variant of the tested database (e.g., "H2.OLD") whose driver is loaded into its own class loader.
+     * See {@link IsolatedDriver}.
+     * <P>
+     * Multiple variants separated by "+" (e.g., "DEFAULT+H2.OLD") are run within the same trial: Each variant
+     * has its own pool, and the variants take turns for each invocation, so they are measured in the same JVM
+     * (with the same JIT state and machine load). The primary score is then the average of the variants,
+     * and the time of each variant is reported by {@link DriverVariantProfiler}.
+     */
+    @Param(IsolatedDriver.DEFAULT_VARIANT)
+    private String driverVariant;
+
+    /**
+     * The number of additional (non-inlined) frames on the stack of the tasks when they execute the
+     * connection action. Each frame keeps some locals alive across the call, so that the frames are
+     * not trivial to freeze and thaw when a virtual thread is unmounted and mounted again.
+     */
+    @Param("0")
+    private int stackDepth;
+
     private BenchmarkConnectionAction benchmarkConnectionAction;
     private ScopedDataSource dataSource;
+    private ScopedDataSource[] variantDataSources;
+    private DriverVariantProfiler.Recorder[] variantRecorders;
+    private int nextVariantIndex;
     private DbKeepAliveReference keepAliveReference;
     private ForkScope globalForkScope;
+    private Map<ConnectionPriority, LatencyHistogram> actionLatencies;
+    private Workload selectedWorkload;
+    private ThreadLocalAuditor threadLocalAuditor;
+    private int forkLoopCount;
 
-    private static int normalizePoolSize(String paramPoolSize) {
+    static int normalizePoolSize(String paramPoolSize) {
         if (paramPoolSize.startsWith("*")) {
             int multiplier = Integer.parseInt(paramPoolSize.substring(1));
             return PROCESSOR_COUNT * multiplier;
@@ -83,7 +184,25 @@ public class DbPoolTest {
         }
     }
 
-    private static void preopenConnections(int count, ScopedDataSource dataSource) throws Exception {
+    private static Map<ConnectionPriority, Integer> parseReservedConnections(String paramReservedConnections) {
+        if (NO_RESERVED_CONNECTIONS.equals(paramReservedConnections)) {
+            return Map.of();
+        }
+
+        Map<ConnectionPriority, Integer> result = new EnumMap<>(ConnectionPriority.class);
+        for (String entry : paramReservedConnections.split(";")) {
+            int separatorIndex = entry.indexOf(':');
+            if (separatorIndex < 0) {
+                throw new IllegalArgumentException("Invalid reserved connection entry: " + entry);
+            }
+            ConnectionPriority priority = ConnectionPriority.valueOf(entry.substring(0, separatorIndex).trim());
+            int count = Integer.parseInt(entry.substring(separatorIndex + 1).trim());
+            result.put(priority, count);
+        }
+        return result;
+    }
+
+    static void preopenConnections(int count, ScopedDataSource dataSource) throws Exception {
         if (count <= 0) {
             return;
         }
@@ -94,28 +213,149 @@ public class DbPoolTest {
     }
 
     @Setup
-    public void setup() throws Exception {
+    public void setup(BenchmarkParams benchmarkParams) throws Exception {
+        boolean deadlineBenchmark = benchmarkParams.getBenchmark().endsWith(".testDeadlines");
+        if (deadlineBenchmark != taskDeadlineMs > 0) {
+            throw new IllegalArgumentException(deadlineBenchmark
+                    ? "The testDeadlines benchmark requires a positive taskDeadlineMs."
+                    : "A positive taskDeadlineMs requires the testDeadlines benchmark."
+            );
+        }
+
         int actualPoolSize = normalizePoolSize(poolSize);
-        dataSource = dbPoolType.newDataSource(actualPoolSize);
+        ExceptionHelper.checkArgumentInRange(shardCount, 1, actualPoolSize, "shardCount");
+        ExceptionHelper.checkArgumentInRange(stackDepth, 0, Integer.MAX_VALUE, "stackDepth");
+        if (!NO_WORKLOAD.equals(workload) && connectionAction != ConnectionActionType.EXECUTE_SCRIPT) {
+            throw new IllegalArgumentException("Workloads require the EXECUTE_SCRIPT connection action.");
+        }
 
         var testedDb = TestedDb.selectedTestedDb();
-        keepAliveReference = testedDb.keepAliveDb();
+        String[] driverVariants = driverVariant.split(Pattern.quote(DRIVER_VARIANT_SEPARATOR));
+        variantDataSources = new ScopedDataSource[driverVariants.length];
+        List<DbKeepAliveReference> variantKeepAliveReferences = new ArrayList<>(driverVariants.length);
+        BenchmarkConnectionAction executeScriptAction = null;
+        for (int i = 0; i < driverVariants.length; i++) {
+            VariantPool variantPool = openVariantPool(testedDb, driverVariants[i].trim(), actualPoolSize);
+            variantDataSources[i] = variantPool.dataSource();
+            variantKeepAliveReferences.add(variantPool.keepAliveReference());
+            if (executeScriptAction == null) {
+                executeScriptAction = variantPool.executeScriptAction();
+            }
+        }
+        dataSource = variantDataSources[0];
+        keepAliveReference = () -> closeAll(variantKeepAliveReferences.toArray(AutoCloseable[]::new));
+        if (driverVariants.length > 1) {
+            variantRecorders = new DriverVariantProfiler.Recorder[driverVariants.length];
+            for (int i = 0; i < driverVariants.length; i++) {
+                variantRecorders[i] = DriverVariantProfiler.recorder(driverVariants[i].trim());
+            }
+        }
+        nextVariantIndex = 0;
+
+        benchmarkConnectionAction = connectionAction.createAction(actualPoolSize, executeScriptAction);
 
-        benchmarkConnectionAction = connectionAction.createAction(
-                actualPoolSize,
-                dataSource.withConnectionAndGet(testedDb::initDb)
-        );
-        preopenConnections(actualPoolSize, dataSource);
+        ExceptionHelper.checkArgumentInRange(batchTaskPercent, 0, 100, "batchTaskPercent");
+        if (batchTaskPercent > 0) {
+            actionLatencies = new EnumMap<>(ConnectionPriority.class);
+            for (ConnectionPriority priority : ConnectionPriority.values()) {
+                actionLatencies.put(priority, new LatencyHistogram());
+            }
+        }
 
+        forkLoopCount = (normalizePoolSize(dbTaskCount) + 1) / 2;
         globalForkScope = exceptionTracker(forkType.newForkScope());
+        threadLocalAuditor = ThreadLocalAuditor.tryCreateFromSystemProperties();
+    }
+
+    /**
+     * Opens the pools (one for each shard) connecting through the given driver variant, and
+     * initializes the databases. The workload is loaded through the first pool opened.
+     */
+    private VariantPool openVariantPool(TestedDb testedDb, String variant, int actualPoolSize) throws Exception {
+        List<ScopedDataSource> shardDataSources = new ArrayList<>(shardCount);
+        List<DbKeepAliveReference> shardKeepAliveReferences = new ArrayList<>(shardCount);
+        BenchmarkConnectionAction executeScriptAction = null;
+        for (int shard = 0; shard < shardCount; shard++) {
+            int shardPoolSize = actualPoolSize / shardCount + (shard < actualPoolSize % shardCount ? 1 : 0);
+            DbPoolSettings poolSettings = DbPoolSettings.ofPoolSize(shardPoolSize)
+                    .withConnectionInfo(testedDb.connectionInfo(shard, variant))
+                    .withReservedConnections(parseReservedConnections(reservedConnections));
+            if (taskDeadlineMs > 0) {
+                poolSettings = poolSettings.withAcquireTimeout(Duration.ofMillis(taskDeadlineMs));
+            }
+            ScopedDataSource shardDataSource = dbPoolType.newDataSource(poolSettings);
+            shardDataSources.add(shardDataSource);
+
+            shardKeepAliveReferences.add(testedDb.keepAliveDb(shard, variant));
+
+            BenchmarkConnectionAction shardScriptAction = shardDataSource.withConnectionAndGet(testedDb::initDb);
+            if (executeScriptAction == null) {
+                executeScriptAction = shardScriptAction;
+                if (!NO_WORKLOAD.equals(workload) && selectedWorkload == null) {
+                    selectedWorkload = shardDataSource.withConnectionAndGet(connection -> {
+                        return Workload.load(testedDb, workload, connection);
+                    });
+                }
+            }
+            preopenConnections(shardPoolSize, shardDataSource);
+        }
+
+        ScopedDataSource variantDataSource;
+        DbKeepAliveReference variantKeepAliveReference;
+        if (shardCount == 1) {
+            variantDataSource = shardDataSources.get(0);
+            variantKeepAliveReference = shardKeepAliveReferences.get(0);
+        } else {
+            variantDataSource = new ShardedDataSource(shardDataSources);
+            variantKeepAliveReference = () -> closeAll(shardKeepAliveReferences.toArray(AutoCloseable[]::new));
+        }
+
+        if (!NO_BULKHEAD.equals(bulkheadSize)) {
+            variantDataSource = new PlatformThreadBulkheadDataSource(normalizePoolSize(bulkheadSize), variantDataSource);
+        }
+        if (taskDeadlineMs > 0) {
+            variantDataSource = new DeadlineDataSource(
+                    actualPoolSize,
+                    Duration.ofMillis(taskDeadlineMs),
+                    variantDataSource
+            );
+        }
+        return new VariantPool(variantDataSource, variantKeepAliveReference, executeScriptAction);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        if (selectedWorkload != null) {
+            selectedWorkload.startIteration();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration(IterationParams iterationParams) {
+        if (threadLocalAuditor != null && iterationParams.getType() == IterationType.WARMUP) {
+            // Only the thread locals of the measurement iterations are reported.
+            threadLocalAuditor.reset();
+        }
+        if (actionLatencies != null) {
+            LatencyHistogram.printSummaries("Connection action latencies by priority", actionLatencies);
+            actionLatencies.values().forEach(LatencyHistogram::reset);
+        }
+        if (selectedWorkload != null) {
+            selectedWorkload.printIterationReport();
+        }
     }
 
     @TearDown
     public void tearDown() {
-        closeAll(globalForkScope, keepAliveReference, dataSource);
+        closeAll(globalForkScope, keepAliveReference, () -> closeAll(variantDataSources));
+        if (threadLocalAuditor != null) {
+            threadLocalAuditor.printSummary("Thread locals per virtual thread task ("
+                    + TestedDb.selectedTestedDb() + ", driverVariant=" + driverVariant
+                    + ", dbPoolType=" + dbPoolType + ", connectionAction=" + connectionAction + ")");
+        }
     }
 
-    private static void closeAll(AutoCloseable... resources) {
+    static void closeAll(AutoCloseable... resources) {
         Throwable toThrow = null;
         for (AutoCloseable resource : resources) {
             try {
@@ -131,11 +371,50 @@ public class DbPoolTest {
     }
 
     private void doDbAction(Blackhole blackhole) throws Exception {
-        dataSource.withConnection(connection -> {
-            benchmarkConnectionAction.run(connection, blackhole);
+        if (stackDepth > 0) {
+            blackhole.consume(doDbActionAtDepth(stackDepth, blackhole));
+        } else {
+            dataSource.withConnection(benchmarkConnectionAction, blackhole);
+        }
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private long doDbActionAtDepth(int remainingDepth, Blackhole blackhole) throws Exception {
+        // Locals used after the call, so that they must be kept in the frame.
+        long frameValue = remainingDepth * 0x9E3779B97F4A7C15L;
+        Object frameRef = benchmarkConnectionAction;
+
+        long result;
+        if (remainingDepth <= 1) {
+            dataSource.withConnection(benchmarkConnectionAction, blackhole);
+            result = 0;
+        } else {
+            result = doDbActionAtDepth(remainingDepth - 1, blackhole);
+        }
+
+        blackhole.consume(frameRef);
+        return result ^ frameValue;
+    }
+
+    private void doBatchDbAction() throws Exception {
+        dataSource.withConnection(ConnectionPriority.BATCH, connection -> {
+            Thread.sleep(batchHoldMs);
         });
     }
 
+    private void runWithDeadline(UnsafeTask dbAction, TaskOutcomes taskOutcomes) throws Exception {
+        long startNanos = System.nanoTime();
+        try {
+            dbAction.run();
+        } catch (DeadlineExceededException e) {
+            taskOutcomes.record(e.reason());
+            return;
+        }
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        taskOutcomes.record(elapsedMs > taskDeadlineMs ? TaskOutcomes.Outcome.LATE : TaskOutcomes.Outcome.GOOD);
+    }
+
     private void doCpuWork() throws Exception {
         Blackhole.consumeCPU(cpuWork);
         if (cpuSleepMs > 0) {
@@ -143,29 +422,154 @@ public class DbPoolTest {
         }
     }
 
-    @Benchmark
-    @Warmup(iterations = 3)
-    public void testPools(Blackhole blackhole) {
-        try (ForkScope forkScope = newChildScope(globalForkScope)) {
-            UnsafeTask[] tasks = new UnsafeTask[]{
+    private static void runMeasured(UnsafeTask task, LatencyHistogram latencies) throws Exception {
+        long startNanos = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            latencies.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static void runSampled(UnsafeTask task, ThreadLocalAuditor auditor) throws Exception {
+        try {
+            task.run();
+        } finally {
+            // The connection action is the last thing the task does (except for the think time of workloads),
+            // so the thread locals are the same as when it finishes.
+            auditor.sampleCurrentThread();
+        }
+    }
+
+    private UnsafeTask dbTask(ConnectionPriority priority, Blackhole blackhole, TaskOutcomes taskOutcomes) {
+        if (priority == ConnectionPriority.BATCH) {
+            return wrapDbAction(priority, this::doBatchDbAction, taskOutcomes);
+        }
+        if (selectedWorkload == null) {
+            return wrapDbAction(priority, () -> doDbAction(blackhole), taskOutcomes);
+        }
+
+        List<Workload.ScriptOperation> operations = selectedWorkload.operations();
+        UnsafeTask[] operationTasks = new UnsafeTask[operations.size()];
+        for (int i = 0; i < operationTasks.length; i++) {
+            Workload.ScriptOperation operation = operations.get(i);
+            UnsafeTask operationDbAction = wrapDbAction(
+                    priority,
+                    () -> operation.run(dataSource, blackhole),
+                    taskOutcomes
+            );
+            // The think time is not part of the connection action.
+            operationTasks[i] = () -> {
+                operationDbAction.run();
+                operation.think();
+            };
+        }
+        return () -> operationTasks[selectedWorkload.selectOperationIndex()].run();
+    }
+
+    private UnsafeTask wrapDbAction(ConnectionPriority priority, UnsafeTask dbAction, TaskOutcomes taskOutcomes) {
+        if (taskDeadlineMs > 0) {
+            UnsafeTask unlimitedDbAction = dbAction;
+            dbAction = () -> runWithDeadline(unlimitedDbAction, taskOutcomes);
+        }
+        if (actionLatencies != null) {
+            UnsafeTask unmeasuredDbAction = dbAction;
+            LatencyHistogram latencies = actionLatencies.get(priority);
+            dbAction = () -> runMeasured(unmeasuredDbAction, latencies);
+        }
+        if (threadLocalAuditor != null) {
+            UnsafeTask unsampledDbAction = dbAction;
+            dbAction = () -> runSampled(unsampledDbAction, threadLocalAuditor);
+        }
+        return dbAction;
+    }
+
+    /**
+     * Returns the task lists for each combination of the two DB tasks of a loop being
+     * interactive or batch. Bit 0 of the index selects the first DB task, bit 1 the second.
+     */
+    private UnsafeTask[][] newTaskGroups(UnsafeTask interactiveTask, UnsafeTask batchTask) {
+        UnsafeTask[][] result = new UnsafeTask[4][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new UnsafeTask[]{
                     this::doCpuWork,
-                    () -> doDbAction(blackhole),
+                    (i & 1) != 0 ? batchTask : interactiveTask,
                     this::doCpuWork,
-                    () -> doDbAction(blackhole),
+                    (i & 2) != 0 ? batchTask : interactiveTask,
             };
-            int loopCount = PROCESSOR_COUNT * DB_TASKS_PER_PROCESSOR / 2;
-            for (int i = 0; i < loopCount; i++) {
-                if (fullConcurrentTasks) {
-                    for (UnsafeTask task : tasks) {
-                        forkScope.fork(task);
-                    }
-                } else {
-                    forkInSequence(forkScope, tasks);
-                }
+        }
+        return result;
+    }
+
+    private boolean isBatchTask(int dbTaskIndex) {
+        // Spreads the batch tasks evenly between the interactive tasks.
+        return (dbTaskIndex + 1) * batchTaskPercent / 100 != dbTaskIndex * batchTaskPercent / 100;
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void testPools(Blackhole blackhole) {
+        runTasks(blackhole, null);
+    }
+
+    /**
+     * Runs the same tasks as {@link #testPools(Blackhole) testPools}, and also reports the outcomes
+     * of the connection actions relative to their {@link #taskDeadlineMs deadline}.
+     */
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void testDeadlines(Blackhole blackhole, TaskOutcomes taskOutcomes) {
+        try {
+            runTasks(blackhole, taskOutcomes);
+        } finally {
+            taskOutcomes.publish();
+        }
+    }
+
+    private void runTasks(Blackhole blackhole, TaskOutcomes taskOutcomes) {
+        if (variantRecorders == null) {
+            runTasksOfCurrentVariant(blackhole, taskOutcomes);
+            return;
+        }
+
+        int variantIndex = nextVariantIndex;
+        nextVariantIndex = (variantIndex + 1) % variantDataSources.length;
+        // The tasks of the previous invocation were all joined, and the tasks forked from now on see this change.
+        dataSource = variantDataSources[variantIndex];
+        long startNanos = System.nanoTime();
+        try {
+            runTasksOfCurrentVariant(blackhole, taskOutcomes);
+        } finally {
+            variantRecorders[variantIndex].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void runTasksOfCurrentVariant(Blackhole blackhole, TaskOutcomes taskOutcomes) {
+        try (ForkScope forkScope = new JoiningForkScope(globalForkScope)) {
+            UnsafeTask interactiveTask = dbTask(ConnectionPriority.INTERACTIVE, blackhole, taskOutcomes);
+            UnsafeTask batchTask = batchTaskPercent > 0
+                    ? dbTask(ConnectionPriority.BATCH, blackhole, taskOutcomes)
+                    : interactiveTask;
+            UnsafeTask[][] taskGroups = newTaskGroups(interactiveTask, batchTask);
+            for (int i = 0; i < forkLoopCount; i++) {
+                int dbTaskIndex = 2 * i;
+                int taskGroupIndex = (isBatchTask(dbTaskIndex) ? 1 : 0) | (isBatchTask(dbTaskIndex + 1) ? 2 : 0);
+                UnsafeTask[] tasks = taskGroups[taskGroupIndex];
+                forkTasks(forkScope, tasks, fullConcurrentTasks);
             }
         }
     }
 
+    static void forkTasks(ForkScope forkScope, UnsafeTask[] tasks, boolean fullConcurrentTasks) {
+        if (fullConcurrentTasks) {
+            for (UnsafeTask task : tasks) {
+                forkScope.fork(task);
+            }
+        } else {
+            forkInSequence(forkScope, tasks);
+        }
+    }
+
     private static void forkInSequence(ForkScope forkScope, UnsafeTask[] tasks) {
         forkInSequence(forkScope, 0, tasks);
     }
@@ -181,7 +585,7 @@ public class DbPoolTest {
         });
     }
 
-    private static ForkScope exceptionTracker(ForkScope scope) {
+    static ForkScope exceptionTracker(ForkScope scope) {
         AtomicReference<Throwable> firstErrorRef = new AtomicReference<>();
         return new ForkScope() {
             @Override
@@ -201,93 +605,11 @@ public class DbPoolTest {
         };
     }
 
-    private static ForkScope newChildScope(ForkScope scope) {
-        WaitableSignal doneSignal = new WaitableSignal();
-        AtomicInteger outstandingTasks = new AtomicInteger(1);
-        Runnable decTask = () -> {
-            if (outstandingTasks.decrementAndGet() == 0) {
-                doneSignal.signal();
-            }
-        };
-        Runnable closeDecTask = Tasks.runOnceTask(decTask);
-        AtomicInteger completedCount = new AtomicInteger(0);
-
-        return new ForkScope() {
-            @Override
-            public void fork(UnsafeTask task) {
-                outstandingTasks.incrementAndGet();
-                scope.fork(() -> {
-                    try {
-                        task.run();
-                    } finally {
-                        completedCount.incrementAndGet();
-                        decTask.run();
-                    }
-                });
-            }
-
-            @Override
-            public void close() {
-                closeDecTask.run();
-                doneSignal.waitSignal(Cancellation.UNCANCELABLE_TOKEN);
-            }
-        };
-    }
-
-    private static ForkScope newVirtualThreadForkScope() {
-        return new ForkScope() {
-            @Override
-            public void fork(UnsafeTask task) {
-                Thread.startVirtualThread(task.toRunnable());
-            }
-
-            @Override
-            public void close() {
-            }
-        };
-    }
-
-    private static ForkScope newExecutorForkScope(int threadCount) {
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        return new ForkScope() {
-            @Override
-            public void fork(UnsafeTask task) {
-                executor.execute(task.toRunnable());
-            }
-
-            @Override
-            public void close() {
-                try {
-                    executor.shutdown();
-                    if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
-                        throw new IllegalStateException("Executor did not terminate in a reasonable time.");
-                    }
-                } catch (InterruptedException e) {
-                    throw ExceptionHelper.throwUnchecked(e);
-                }
-            }
-        };
-    }
-
-    private interface ForkScope extends AutoCloseable {
-        void fork(UnsafeTask task);
-
-        @Override
-        void close();
-    }
-
-    private interface UnsafeTask {
-        void run() throws Exception;
-
-        default Runnable toRunnable() {
-            return () -> {
-                try {
-                    run();
-                } catch (Exception e) {
-                    throw ExceptionHelper.throwUnchecked(e);
-                }
-            };
-        }
+    private record VariantPool(
+            ScopedDataSource dataSource,
+            DbKeepAliveReference keepAliveReference,
+            BenchmarkConnectionAction executeScriptAction
+    ) {
     }
 
     public enum ConnectionActionType {
@@ -335,21 +657,4 @@ public class DbPoolTest {
 
         public abstract BenchmarkConnectionAction createAction(int poolSize, BenchmarkConnectionAction executeScriptAction);
     }
-
-    public enum ForkType {
-        LIMITED_EXECUTOR {
-            @Override
-            public ForkScope newForkScope() {
-                return newExecutorForkScope(PROCESSOR_COUNT);
-            }
-        },
-        VIRTUAL_THREADS {
-            @Override
-            public ForkScope newForkScope() {
-                return newVirtualThreadForkScope();
-            }
-        };
-
-        public abstract ForkScope newForkScope();
-    }
 }
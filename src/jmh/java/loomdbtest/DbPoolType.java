@@ -5,19 +5,23 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
 import java.util.Objects;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.infra.Blackhole;
 import org.vibur.dbcp.ViburDBCPDataSource;
 
 public enum DbPoolType {
     DBCP2 {
         @Override
-        public ScopedDataSource newDataSource(int poolSize) {
+        protected ScopedDataSource newPoolDataSource(DbPoolSettings settings) {
             var dataSource = new BasicDataSource();
-            JdbcConnectionInfo connectionInfo = TestedDb.selectedTestedDb().connectionInfo();
+            JdbcConnectionInfo connectionInfo = settings.connectionInfo();
             dataSource.setUrl(connectionInfo.jdbcUrl());
             JdbcCredential credential = connectionInfo.credential();
             if (credential != null) {
@@ -25,16 +29,33 @@ public enum DbPoolType {
                 dataSource.setPassword(credential.password());
             }
 
-            dataSource.setMaxIdle(poolSize);
-            dataSource.setMaxTotal(poolSize);
+            dataSource.setMaxIdle(settings.poolSize());
+            dataSource.setMaxTotal(settings.poolSize());
+            if (settings.acquireTimeout() != null) {
+                dataSource.setMaxWaitMillis(settings.acquireTimeout().toMillis());
+            }
+            switch (settings.validation()) {
+                case DEFAULT -> { }
+                case NONE -> dataSource.setTestOnBorrow(false);
+                case ON_BORROW -> dataSource.setTestOnBorrow(true);
+                case BACKGROUND -> {
+                    dataSource.setTestOnBorrow(false);
+                    dataSource.setTestWhileIdle(true);
+                    dataSource.setTimeBetweenEvictionRunsMillis(settings.validationInterval().toMillis());
+                    dataSource.setNumTestsPerEvictionRun(settings.poolSize());
+                }
+            }
+            if (settings.maxLifetime() != null) {
+                dataSource.setMaxConnLifetimeMillis(settings.maxLifetime().toMillis());
+            }
             return fromDataSource(dataSource);
         }
     },
     HIKARI {
         @Override
-        public ScopedDataSource newDataSource(int poolSize) {
+        protected ScopedDataSource newPoolDataSource(DbPoolSettings settings) {
             var config = new HikariConfig();
-            JdbcConnectionInfo connectionInfo = TestedDb.selectedTestedDb().connectionInfo();
+            JdbcConnectionInfo connectionInfo = settings.connectionInfo();
             config.setJdbcUrl(connectionInfo.jdbcUrl());
             JdbcCredential credential = connectionInfo.credential();
             if (credential != null) {
@@ -42,16 +63,29 @@ public enum DbPoolType {
                 config.setPassword(credential.password());
             }
 
-            config.setMaximumPoolSize(poolSize);
-            config.setConnectionTimeout(Long.MAX_VALUE);
+            config.setMaximumPoolSize(settings.poolSize());
+            config.setConnectionTimeout(settings.acquireTimeout() != null
+                    ? Math.max(HIKARI_MIN_CONNECTION_TIMEOUT_MS, settings.acquireTimeout().toMillis())
+                    : Long.MAX_VALUE
+            );
+            // HikariCP always validates connections on borrow, if they were idle for more than 500 ms.
+            if (settings.validation() == ConnectionValidation.BACKGROUND) {
+                config.setKeepaliveTime(Math.max(
+                        HIKARI_MIN_MAINTENANCE_PERIOD_MS,
+                        settings.validationInterval().toMillis()
+                ));
+            }
+            if (settings.maxLifetime() != null) {
+                config.setMaxLifetime(Math.max(HIKARI_MIN_MAINTENANCE_PERIOD_MS, settings.maxLifetime().toMillis()));
+            }
             return fromDataSource(new HikariDataSource(config));
         }
     },
     C3P0 {
         @Override
-        public ScopedDataSource newDataSource(int poolSize) {
+        protected ScopedDataSource newPoolDataSource(DbPoolSettings settings) {
             var dataSource = new ComboPooledDataSource();
-            JdbcConnectionInfo connectionInfo = TestedDb.selectedTestedDb().connectionInfo();
+            JdbcConnectionInfo connectionInfo = settings.connectionInfo();
             dataSource.setJdbcUrl(connectionInfo.jdbcUrl());
             JdbcCredential credential = connectionInfo.credential();
             if (credential != null) {
@@ -59,16 +93,35 @@ public enum DbPoolType {
                 dataSource.setPassword(credential.password());
             }
 
-            dataSource.setMaxIdleTime(poolSize);
-            dataSource.setMaxPoolSize(poolSize);
+            dataSource.setMaxIdleTime(settings.poolSize());
+            dataSource.setMaxPoolSize(settings.poolSize());
+            if (settings.acquireTimeout() != null) {
+                dataSource.setCheckoutTimeout(toIntMillis(settings.acquireTimeout()));
+            }
+            switch (settings.validation()) {
+                case DEFAULT -> { }
+                case NONE -> dataSource.setTestConnectionOnCheckout(false);
+                case ON_BORROW -> dataSource.setTestConnectionOnCheckout(true);
+                case BACKGROUND -> {
+                    dataSource.setTestConnectionOnCheckout(false);
+                    dataSource.setIdleConnectionTestPeriod(toIntSeconds(settings.validationInterval()));
+                }
+            }
+            if (settings.maxLifetime() != null) {
+                dataSource.setMaxConnectionAge(toIntSeconds(settings.maxLifetime()));
+            }
             return fromDataSource(dataSource, dataSource::close);
         }
     },
     VIBUR {
         @Override
-        public ScopedDataSource newDataSource(int poolSize) {
+        protected ScopedDataSource newPoolDataSource(DbPoolSettings settings) {
+            if (settings.maxLifetime() != null) {
+                throw new IllegalArgumentException("VIBUR does not support replacing connections after maxLifetime.");
+            }
+
             var dataSource = new ViburDBCPDataSource();
-            JdbcConnectionInfo connectionInfo = TestedDb.selectedTestedDb().connectionInfo();
+            JdbcConnectionInfo connectionInfo = settings.connectionInfo();
             dataSource.setJdbcUrl(connectionInfo.jdbcUrl());
             JdbcCredential credential = connectionInfo.credential();
             if (credential != null) {
@@ -79,40 +132,128 @@ public enum DbPoolType {
                 dataSource.setPassword("");
             }
 
-            dataSource.setPoolMaxSize(poolSize);
-
+            dataSource.setPoolMaxSize(settings.poolSize());
+            if (settings.acquireTimeout() != null) {
+                dataSource.setConnectionTimeoutInMs(settings.acquireTimeout().toMillis());
+            }
+            // Vibur validates connections only on borrow, if they were idle for longer than the limit.
+            // So, the closest to background validation is to only validate the connections idle
+            // for longer than the validation interval.
+            switch (settings.validation()) {
+                case DEFAULT -> { }
+                case NONE -> dataSource.setConnectionIdleLimitInSeconds(-1);
+                case ON_BORROW -> dataSource.setConnectionIdleLimitInSeconds(0);
+                case BACKGROUND -> dataSource.setConnectionIdleLimitInSeconds(
+                        toIntSeconds(settings.validationInterval())
+                );
+            }
             dataSource.start();
             return fromDataSource(dataSource);
         }
     },
     SEMAPHORE {
         @Override
-        public ScopedDataSource newDataSource(int poolSize) {
-            var dbLimiter = new Semaphore(poolSize);
-            var dataSource = new FixedDataSource(poolSize, TestedDb.selectedTestedDb()::newConnection);
-            return new ScopedDataSource() {
+        protected ScopedDataSource newPoolDataSource(DbPoolSettings settings) {
+            var dbLimiter = new Semaphore(settings.poolSize());
+            var dataSource = newFixedDataSource(settings);
+            Duration acquireTimeout = settings.acquireTimeout();
+            return new PoolAdapter(dataSource) {
                 @Override
-                public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
-                    dbLimiter.acquire();
-                    try (Connection connection = dataSource.getConnection()) {
-                        return function.run(connection);
-                    } finally {
-                        dbLimiter.release();
-                    }
+                protected void acquire(ConnectionPriority priority) throws Exception {
+                    acquirePermit(dbLimiter, acquireTimeout);
+                }
+
+                @Override
+                protected void release(ConnectionPriority priority) {
+                    dbLimiter.release();
+                }
+
+                @Override
+                protected void actionFailed(Connection connection) {
+                    dataSource.reportFailure(connection);
                 }
 
                 @Override
                 public void close() {
-                    try {
-                        dataSource.close();
-                    } catch (SQLException e) {
-                        throw new RuntimeException(e);
+                    closeFixedDataSource(dataSource);
+                }
+            };
+        }
+    },
+    PRIORITY {
+        @Override
+        protected ScopedDataSource newPoolDataSource(DbPoolSettings settings) {
+            var dbLimiter = new PriorityConnectionLimiter(settings.poolSize(), settings.reservedConnections());
+            var dataSource = newFixedDataSource(settings);
+            Duration acquireTimeout = settings.acquireTimeout();
+            return new PoolAdapter(dataSource) {
+                @Override
+                protected void acquire(ConnectionPriority priority) throws Exception {
+                    if (!dbLimiter.acquire(priority, acquireTimeout)) {
+                        throw new SQLTransientConnectionException("Timed out waiting for a connection after "
+                                + acquireTimeout);
                     }
                 }
+
+                @Override
+                protected void release(ConnectionPriority priority) {
+                    dbLimiter.release(priority);
+                }
+
+                @Override
+                protected void actionFailed(Connection connection) {
+                    dataSource.reportFailure(connection);
+                }
+
+                @Override
+                public void close() {
+                    closeFixedDataSource(dataSource);
+                }
             };
         }
     };
 
+    // HikariCP refuses connection timeouts below this limit.
+    private static final long HIKARI_MIN_CONNECTION_TIMEOUT_MS = 250;
+    // HikariCP refuses keepalive times and max lifetimes below this limit.
+    private static final long HIKARI_MIN_MAINTENANCE_PERIOD_MS = 30_000;
+
+    private static int toIntMillis(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, duration.toMillis()));
+    }
+
+    private static int toIntSeconds(Duration duration) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(duration.toMillis() + 999);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, seconds));
+    }
+
+    private static FixedDataSource newFixedDataSource(DbPoolSettings settings) {
+        JdbcConnectionInfo connectionInfo = settings.connectionInfo();
+        return new FixedDataSource(
+                settings.poolSize(),
+                new DriverConnectionFactory(connectionInfo),
+                settings.validation(),
+                settings.validationInterval(),
+                settings.maxLifetime()
+        );
+    }
+
+    private static void closeFixedDataSource(FixedDataSource dataSource) {
+        try {
+            dataSource.close();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void acquirePermit(Semaphore semaphore, Duration timeout) throws InterruptedException, SQLException {
+        if (timeout == null) {
+            semaphore.acquire();
+        } else if (!semaphore.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+            throw new SQLTransientConnectionException("Timed out waiting for a connection after " + timeout);
+        }
+    }
+
     private static <T extends DataSource & AutoCloseable> ScopedDataSource fromDataSource(
             T dataSource
     ) {
@@ -126,14 +267,7 @@ public enum DbPoolType {
         Objects.requireNonNull(dataSource, "dataSource");
         Objects.requireNonNull(closeMethod, "closeMethod");
 
-        return new ScopedDataSource() {
-            @Override
-            public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
-                try (Connection connection = dataSource.getConnection()) {
-                    return function.run(connection);
-                }
-            }
-
+        return new PoolAdapter(dataSource) {
             @Override
             public void close() {
                 try {
@@ -145,5 +279,86 @@ public enum DbPoolType {
         };
     }
 
-    public abstract ScopedDataSource newDataSource(int poolSize);
+    /**
+     * Adapts a {@code DataSource} to {@link ScopedDataSource}. Subclasses may limit the number of
+     * concurrent borrowers by overriding {@link #acquire(ConnectionPriority) acquire}
+     * and {@link #release(ConnectionPriority) release}, and may learn about the failed actions
+     * by overriding {@link #actionFailed(Connection) actionFailed}.
+     */
+    private abstract static class PoolAdapter implements ScopedDataSource {
+        private final DataSource dataSource;
+
+        protected PoolAdapter(DataSource dataSource) {
+            this.dataSource = Objects.requireNonNull(dataSource, "dataSource");
+        }
+
+        /**
+         * Waits until a connection may be borrowed with the given priority. The default
+         * implementation returns immediately.
+         */
+        protected void acquire(ConnectionPriority priority) throws Exception {
+        }
+
+        /**
+         * Called after a connection acquired by {@link #acquire(ConnectionPriority) acquire} was closed.
+         */
+        protected void release(ConnectionPriority priority) {
+        }
+
+        /**
+         * Called before closing a connection, if the action using it failed. The default
+         * implementation does nothing.
+         */
+        protected void actionFailed(Connection connection) {
+        }
+
+        @Override
+        public final <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+            return withConnectionAndGet(ConnectionPriority.INTERACTIVE, function);
+        }
+
+        @Override
+        public final <V> V withConnectionAndGet(
+                ConnectionPriority priority,
+                ConnectionFunction<V> function
+        ) throws Exception {
+            acquire(priority);
+            try (Connection connection = dataSource.getConnection()) {
+                try {
+                    return function.run(connection);
+                } catch (Throwable e) {
+                    actionFailed(connection);
+                    throw e;
+                }
+            } finally {
+                release(priority);
+            }
+        }
+
+        @Override
+        public final void withConnection(BenchmarkConnectionAction action, Blackhole blackhole) throws Exception {
+            ConnectionPriority priority = ConnectionPriority.INTERACTIVE;
+            acquire(priority);
+            try (Connection connection = dataSource.getConnection()) {
+                try {
+                    action.run(connection, blackhole);
+                } catch (Throwable e) {
+                    actionFailed(connection);
+                    throw e;
+                }
+            } finally {
+                release(priority);
+            }
+        }
+    }
+
+    /**
+     * Creates a new pool with the given settings. The returned data source emits JFR events
+     * for the connection actions (see {@link JfrTracingDataSource}), if they are enabled.
+     */
+    public final ScopedDataSource newDataSource(DbPoolSettings settings) {
+        return new JfrTracingDataSource(name(), newPoolDataSource(settings));
+    }
+
+    protected abstract ScopedDataSource newPoolDataSource(DbPoolSettings settings);
 }
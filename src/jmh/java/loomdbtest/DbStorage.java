@@ -0,0 +1,118 @@
+package loomdbtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The storage settings of the databases running within the JVM as selected by the
+ * {@code loomdbtest.dbStorage} and {@code loomdbtest.dbSync} system properties.
+ * <P>
+ * Persistent databases are stored in a separate directory for each database under
+ * the directory specified by the {@code loomdbtest.dbStorageDir} system property
+ * (a directory unique to the process in the temporary directory by default).
+ */
+public final class DbStorage {
+    private static final DbStorageMode STORAGE_MODE
+            = parseEnumProperty("loomdbtest.dbStorage", DbStorageMode.class, DbStorageMode.MEMORY);
+    private static final DbSyncPolicy SYNC_POLICY
+            = parseEnumProperty("loomdbtest.dbSync", DbSyncPolicy.class, DbSyncPolicy.DEFAULT);
+    private static final Path ROOT_DIR = rootDir();
+
+    private DbStorage() {
+        throw new AssertionError();
+    }
+
+    private static <E extends Enum<E>> E parseEnumProperty(String propertyName, Class<E> enumType, E defaultValue) {
+        String value = System.getProperty(propertyName, "").trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Enum.valueOf(enumType, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Invalid " + propertyName + ": " + value
+                            + ". Supported values are: " + Arrays.toString(enumType.getEnumConstants()),
+                    e
+            );
+        }
+    }
+
+    private static Path rootDir() {
+        String dir = System.getProperty("loomdbtest.dbStorageDir", "").trim();
+        if (!dir.isEmpty()) {
+            return Path.of(dir).toAbsolutePath();
+        }
+        return Path
+                .of(System.getProperty("java.io.tmpdir"), "loomdbtest-db-" + ProcessHandle.current().pid())
+                .toAbsolutePath();
+    }
+
+    public static DbStorageMode storageMode() {
+        return STORAGE_MODE;
+    }
+
+    public static DbSyncPolicy syncPolicy() {
+        return SYNC_POLICY;
+    }
+
+    /**
+     * Returns the path (without any extension) of the files of the given database.
+     * The returned path is within the directory returned by {@link #dbDirectory(String) dbDirectory}.
+     */
+    public static String dbFilePath(String dbName) {
+        return dbDirectory(dbName).resolve(dbName).toString();
+    }
+
+    public static Path dbDirectory(String dbName) {
+        return ROOT_DIR.resolve(dbName);
+    }
+
+    /**
+     * Deletes the directory of the given database with all the files in it, and also
+     * the root directory of the databases if there are no other databases left in it.
+     * The database must already be closed.
+     */
+    public static void deleteDbDirectory(String dbName) {
+        try {
+            deleteRecursively(dbDirectory(dbName));
+            Files.deleteIfExists(ROOT_DIR);
+        } catch (DirectoryNotEmptyException e) {
+            // Another database is still stored in the root directory.
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path subDir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.delete(subDir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
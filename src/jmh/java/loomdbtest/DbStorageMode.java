@@ -0,0 +1,33 @@
+package loomdbtest;
+
+/**
+ * Defines where the databases running within the JVM store their data.
+ */
+public enum DbStorageMode {
+    /**
+     * Keeps all data in memory, so the database never waits for the disk.
+     */
+    MEMORY(false),
+    /**
+     * Stores the data in files using the default file access of the database.
+     */
+    FILE(true),
+    /**
+     * Stores the data in files accessed through a {@code FileChannel} (H2 only).
+     */
+    NIO(true),
+    /**
+     * Stores the data in memory mapped files.
+     */
+    NIO_MAPPED(true);
+
+    private final boolean persistent;
+
+    DbStorageMode(boolean persistent) {
+        this.persistent = persistent;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+}
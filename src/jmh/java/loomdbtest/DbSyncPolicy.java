@@ -0,0 +1,23 @@
+package loomdbtest;
+
+/**
+ * Defines when the databases running within the JVM persisting their data to disk
+ * write (and flush) the changes of committed transactions.
+ */
+public enum DbSyncPolicy {
+    /**
+     * Keeps the default behavior of the database.
+     */
+    DEFAULT,
+    /**
+     * Changes are written to disk before the commit returns. HSQL and Derby also
+     * force the log to the storage device, while H2 only writes the changes
+     * without an fsync.
+     */
+    COMMIT,
+    /**
+     * Changes are written to disk asynchronously after the commit returns, so a crash
+     * might lose the most recently committed transactions.
+     */
+    ASYNC
+}
@@ -0,0 +1,287 @@
+package loomdbtest;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * Limits the time a connection action (including waiting for the connection) may take.
+ * <P>
+ * Tasks are rejected immediately (shed), if the expected wait for a connection is already
+ * longer than the time budget. The expected wait is estimated from the number of tasks
+ * waiting for a connection and the average time connections are held. Once the task gets
+ * a connection, the statements it creates will have their query timeout set to the remaining
+ * time, and they are canceled when the deadline passes. Deadlines are checked periodically
+ * by a single sweeper for all connections in use (instead of scheduling a timer for each action),
+ * so statements might be canceled a little later than the deadline (at most by the sweep period).
+ * <P>
+ * All failures caused by the deadline are reported via {@link DeadlineExceededException}.
+ * Note that the wrapped pool should also be configured to give up waiting for a connection
+ * after the time budget, because this data source cannot interrupt the waiting itself.
+ */
+public final class DeadlineDataSource implements ScopedDataSource {
+    private static final int HOLD_TIME_SMOOTHING_SHIFT = 3;
+    private static final int SWEEPS_PER_BUDGET = 8;
+    private static final long MIN_SWEEP_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ScopedDataSource wrapped;
+    private final int poolSize;
+    private final long budgetNanos;
+    private final ScheduledExecutorService cancelTimer;
+    private final Set<DeadlineConnection> inFlightConnections;
+    private final AtomicInteger pendingCount;
+    private volatile long averageHoldNanos;
+
+    public DeadlineDataSource(int poolSize, Duration budget, ScopedDataSource wrapped) {
+        ExceptionHelper.checkArgumentInRange(poolSize, 1, Integer.MAX_VALUE, "poolSize");
+        if (budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("budget must be positive: " + budget);
+        }
+
+        this.wrapped = Objects.requireNonNull(wrapped, "wrapped");
+        this.poolSize = poolSize;
+        this.budgetNanos = budget.toNanos();
+        this.cancelTimer = Executors.newSingleThreadScheduledExecutor(Thread
+                .ofPlatform()
+                .name("db-deadline-timer")
+                .daemon(true)
+                .factory()
+        );
+        this.inFlightConnections = ConcurrentHashMap.newKeySet();
+        this.pendingCount = new AtomicInteger(0);
+        this.averageHoldNanos = 0;
+
+        long sweepPeriodNanos = Math.max(MIN_SWEEP_PERIOD_NANOS, budgetNanos / SWEEPS_PER_BUDGET);
+        cancelTimer.scheduleWithFixedDelay(this::cancelExpired, sweepPeriodNanos, sweepPeriodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+        return withConnectionAndGet(ConnectionPriority.INTERACTIVE, function);
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionPriority priority, ConnectionFunction<V> function) throws Exception {
+        long deadlineNanos = System.nanoTime() + budgetNanos;
+        if (isExpectedToMissDeadline()) {
+            throw new DeadlineExceededException(DeadlineExceededException.Reason.SHED, null);
+        }
+
+        var deadlineFunction = new DeadlineFunction<>(deadlineNanos, function);
+        pendingCount.incrementAndGet();
+        try {
+            return wrapped.withConnectionAndGet(priority, deadlineFunction);
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            boolean deadlinePassed = System.nanoTime() - deadlineNanos >= 0;
+            if (deadlinePassed || isTimeoutException(e)) {
+                throw new DeadlineExceededException(
+                        deadlineFunction.acquired
+                                ? DeadlineExceededException.Reason.EXECUTION_TIMEOUT
+                                : DeadlineExceededException.Reason.ACQUIRE_TIMEOUT,
+                        e
+                );
+            }
+            throw e;
+        } finally {
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    private boolean isExpectedToMissDeadline() {
+        int queuedCount = pendingCount.get() - poolSize;
+        if (queuedCount < 0) {
+            return false;
+        }
+        long expectedWaitNanos = (queuedCount + 1) * averageHoldNanos / poolSize;
+        return expectedWaitNanos >= budgetNanos;
+    }
+
+    private void cancelExpired() {
+        long nowNanos = System.nanoTime();
+        for (DeadlineConnection connection : inFlightConnections) {
+            if (nowNanos - connection.deadlineNanos >= 0 && inFlightConnections.remove(connection)) {
+                connection.cancelStatements();
+            }
+        }
+    }
+
+    private static boolean isTimeoutException(Exception e) {
+        return e instanceof SQLTimeoutException || e instanceof SQLTransientConnectionException;
+    }
+
+    private void recordHoldTime(long holdNanos) {
+        // Concurrent updates might get lost, but that is fine for an estimate,
+        // and this way the recording does not contend.
+        long currentAverage = averageHoldNanos;
+        averageHoldNanos = currentAverage + ((holdNanos - currentAverage) >> HOLD_TIME_SMOOTHING_SHIFT);
+    }
+
+    @Override
+    public void close() {
+        try {
+            cancelTimer.shutdownNow();
+        } finally {
+            wrapped.close();
+        }
+    }
+
+    private final class DeadlineFunction<V> implements ConnectionFunction<V> {
+        private final long deadlineNanos;
+        private final ConnectionFunction<V> function;
+        private volatile boolean acquired;
+
+        public DeadlineFunction(long deadlineNanos, ConnectionFunction<V> function) {
+            this.deadlineNanos = deadlineNanos;
+            this.function = Objects.requireNonNull(function, "function");
+            this.acquired = false;
+        }
+
+        @Override
+        public V run(Connection connection) throws Exception {
+            acquired = true;
+            long startNanos = System.nanoTime();
+            long remainingNanos = deadlineNanos - startNanos;
+            if (remainingNanos <= 0) {
+                throw new DeadlineExceededException(DeadlineExceededException.Reason.ACQUIRE_TIMEOUT, null);
+            }
+
+            var deadlineConnection = new DeadlineConnection(connection, deadlineNanos);
+            inFlightConnections.add(deadlineConnection);
+            try {
+                return function.run(deadlineConnection);
+            } finally {
+                inFlightConnections.remove(deadlineConnection);
+                recordHoldTime(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private static final class DeadlineConnection extends DelegatingConnection {
+        private final long deadlineNanos;
+        private final Queue<Statement> statements;
+
+        public DeadlineConnection(Connection wrapped, long deadlineNanos) {
+            super(wrapped);
+            this.deadlineNanos = deadlineNanos;
+            this.statements = new ConcurrentLinkedQueue<>();
+        }
+
+        private <S extends Statement> S track(S statement) throws SQLException {
+            try {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw new DeadlineExceededException(DeadlineExceededException.Reason.EXECUTION_TIMEOUT, null);
+                }
+
+                long timeoutSeconds = (remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+                statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, timeoutSeconds));
+                statements.add(statement);
+                return statement;
+            } catch (Throwable e) {
+                statement.close();
+                throw e;
+            }
+        }
+
+        public void cancelStatements() {
+            for (Statement statement : statements) {
+                try {
+                    if (!statement.isClosed()) {
+                        statement.cancel();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    // The statement might have been closed concurrently, and there is
+                    // nothing else we could do with a statement we cannot cancel anyway.
+                    // Also, the sweeper must not die because of a misbehaving driver.
+                }
+            }
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return track(wrapped.createStatement());
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+            return track(wrapped.createStatement(resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            return track(wrapped.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return track(wrapped.prepareStatement(sql));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            return track(wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            return track(wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            return track(wrapped.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+            return track(wrapped.prepareStatement(sql, columnIndexes));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+            return track(wrapped.prepareStatement(sql, columnNames));
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql) throws SQLException {
+            return track(wrapped.prepareCall(sql));
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            return track(wrapped.prepareCall(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            return track(wrapped.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public void close() {
+            // The connection is owned by the wrapped data source.
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return wrapped.isClosed();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package loomdbtest;
+
+import java.sql.SQLTimeoutException;
+import java.util.Objects;
+
+/**
+ * Thrown by {@link DeadlineDataSource} when a task could not complete its
+ * connection action within its time budget.
+ */
+public final class DeadlineExceededException extends SQLTimeoutException {
+    private static final long serialVersionUID = 1L;
+
+    private final Reason reason;
+
+    public DeadlineExceededException(Reason reason, Throwable cause) {
+        super("Deadline exceeded: " + reason, cause);
+        this.reason = Objects.requireNonNull(reason, "reason");
+    }
+
+    public Reason reason() {
+        return reason;
+    }
+
+    public enum Reason {
+        /**
+         * The task was rejected without even trying to get a connection, because
+         * the expected wait for a connection was longer than its time budget.
+         */
+        SHED,
+        /**
+         * The task did not get a connection before its deadline.
+         */
+        ACQUIRE_TIMEOUT,
+        /**
+         * The deadline passed while the task was using the connection.
+         */
+        EXECUTION_TIMEOUT
+    }
+}
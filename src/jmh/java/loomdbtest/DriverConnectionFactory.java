@@ -0,0 +1,55 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.apache.commons.dbcp2.ConnectionFactory;
+
+/**
+ * Opens connections directly through the {@link Driver} accepting the URL, instead of
+ * going through {@link DriverManager} for each connection (which iterates over all the
+ * registered drivers, and creates new connection properties every time). The properties
+ * (containing the credentials) are created once, and the driver is looked up when the
+ * first connection is opened.
+ */
+public final class DriverConnectionFactory implements ConnectionFactory {
+    private final String jdbcUrl;
+    private final Properties properties;
+    private volatile Driver driver;
+
+    public DriverConnectionFactory(JdbcConnectionInfo connectionInfo) {
+        this.jdbcUrl = connectionInfo.jdbcUrl();
+        this.properties = toProperties(connectionInfo.credential());
+        this.driver = null;
+    }
+
+    private static Properties toProperties(JdbcCredential credential) {
+        Properties result = new Properties();
+        if (credential != null) {
+            result.setProperty("user", credential.username());
+            result.setProperty("password", credential.password());
+        }
+        return result;
+    }
+
+    private Driver getDriver() throws SQLException {
+        Driver result = driver;
+        if (result == null) {
+            // Concurrent lookups are harmless, since they find the same driver.
+            result = DriverManager.getDriver(jdbcUrl);
+            driver = result;
+        }
+        return result;
+    }
+
+    @Override
+    public Connection createConnection() throws SQLException {
+        Connection connection = getDriver().connect(jdbcUrl, properties);
+        if (connection == null) {
+            throw new SQLException("The driver did not accept the URL: " + jdbcUrl);
+        }
+        return connection;
+    }
+}
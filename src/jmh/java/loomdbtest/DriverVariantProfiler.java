@@ -0,0 +1,120 @@
+package loomdbtest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * A JMH profiler reporting the average time of the invocations of each driver variant as a separate
+ * secondary result ({@code ·driverVariant.<VARIANT>}), when multiple driver variants are run within the
+ * same trial (see {@link DbPoolTest#driverVariant}). The benchmark records the time of its invocations
+ * through the {@link Recorder} of the variant it used for the invocation.
+ * <P>
+ * The profiler is enabled by {@code -prof loomdbtest.DriverVariantProfiler}.
+ */
+public final class DriverVariantProfiler implements InternalProfiler {
+    private static final Map<String, Recorder> RECORDERS = new ConcurrentHashMap<>();
+
+    private Map<String, Snapshot> iterationStartSnapshots = Map.of();
+
+    /**
+     * Returns the recorder of the given driver variant, which is the same for every call with the same variant.
+     */
+    public static Recorder recorder(String driverVariant) {
+        return RECORDERS.computeIfAbsent(driverVariant, key -> new Recorder());
+    }
+
+    private static Map<String, Snapshot> snapshotAll() {
+        Map<String, Snapshot> result = new ConcurrentHashMap<>();
+        RECORDERS.forEach((variant, recorder) -> result.put(variant, recorder.snapshot()));
+        return result;
+    }
+
+    private static String shortName(TimeUnit timeUnit) {
+        return switch (timeUnit) {
+            case NANOSECONDS -> "ns";
+            case MICROSECONDS -> "us";
+            case MILLISECONDS -> "ms";
+            case SECONDS -> "s";
+            case MINUTES -> "min";
+            case HOURS -> "hr";
+            case DAYS -> "day";
+        };
+    }
+
+    @Override
+    public String getDescription() {
+        return "Reports the average invocation time of each driver variant run within the same trial";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        // The recorders are never reset, because the benchmark might start recording before this call.
+        iterationStartSnapshots = snapshotAll();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(
+            BenchmarkParams benchmarkParams,
+            IterationParams iterationParams,
+            IterationResult result
+    ) {
+        TimeUnit timeUnit = benchmarkParams.getTimeUnit();
+        String unit = shortName(timeUnit) + "/op";
+
+        List<Result> results = new ArrayList<>();
+        snapshotAll().forEach((variant, endSnapshot) -> {
+            Snapshot startSnapshot = iterationStartSnapshots.getOrDefault(variant, Snapshot.EMPTY);
+            long count = endSnapshot.count() - startSnapshot.count();
+            if (count <= 0) {
+                return;
+            }
+
+            double averageNanos = (endSnapshot.nanos() - startSnapshot.nanos()) / (double) count;
+            results.add(new ScalarResult(
+                    "driverVariant." + variant,
+                    averageNanos / timeUnit.toNanos(1),
+                    unit,
+                    AggregationPolicy.AVG
+            ));
+        });
+        return results;
+    }
+
+    /**
+     * Accumulates the number and the total time of the invocations of a single driver variant.
+     */
+    public static final class Recorder {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Recorder() {
+        }
+
+        public void record(long elapsedNanos) {
+            nanos.add(elapsedNanos);
+            count.increment();
+        }
+
+        private Snapshot snapshot() {
+            // The count is read first, so that the time includes at least the counted invocations.
+            long currentCount = count.sum();
+            return new Snapshot(currentCount, nanos.sum());
+        }
+    }
+
+    private record Snapshot(long count, long nanos) {
+        public static final Snapshot EMPTY = new Snapshot(0, 0);
+    }
+}
@@ -0,0 +1,215 @@
+package loomdbtest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+/**
+ * A connection injecting the faults configured via {@link FaultInjector}. The statements
+ * created by this connection are wrapped as well, so that executing them can fail or stall.
+ * Once a call fails due to the connection being broken, the connection reports itself as
+ * closed (like drivers do after losing their connection to the database).
+ */
+final class FaultInjectingConnection extends DelegatingConnection {
+    private final long generation;
+    private volatile boolean lost;
+
+    public FaultInjectingConnection(Connection wrapped, long generation) {
+        super(wrapped);
+        this.generation = generation;
+        this.lost = false;
+    }
+
+    private void beforeCall() throws SQLException {
+        try {
+            FaultInjector.beforeCall(generation);
+        } catch (SQLException e) {
+            lost = FaultInjector.isBroken(generation);
+            throw e;
+        }
+    }
+
+    private void afterCall() throws SQLException {
+        if (FaultInjector.isBroken(generation)) {
+            // The connection was broken while the call was executing.
+            lost = true;
+            throw FaultInjector.brokenConnectionException();
+        }
+    }
+
+    private <S extends Statement> S wrapStatement(Class<S> statementType, S statement) {
+        Object result = Proxy.newProxyInstance(
+                FaultInjectingConnection.class.getClassLoader(),
+                new Class<?>[] {statementType},
+                (proxy, method, args) -> invokeStatement(proxy, statement, method, args)
+        );
+        return statementType.cast(result);
+    }
+
+    private Object invokeStatement(Object proxy, Statement statement, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+        if (methodName.equals("getConnection") && method.getParameterCount() == 0) {
+            return this;
+        }
+        if (methodName.equals("equals") && method.getParameterCount() == 1) {
+            return proxy == args[0];
+        }
+        if (!methodName.startsWith("execute")) {
+            return invoke(statement, method, args);
+        }
+
+        beforeCall();
+        Object result = invoke(statement, method, args);
+        afterCall();
+        return result;
+    }
+
+    private static Object invoke(Statement statement, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        beforeCall();
+        return wrapStatement(Statement.class, wrapped.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        beforeCall();
+        return wrapStatement(Statement.class, wrapped.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(
+            int resultSetType,
+            int resultSetConcurrency,
+            int resultSetHoldability
+    ) throws SQLException {
+        beforeCall();
+        return wrapStatement(
+                Statement.class,
+                wrapped.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability)
+        );
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        beforeCall();
+        return wrapStatement(PreparedStatement.class, wrapped.prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql,
+            int resultSetType,
+            int resultSetConcurrency
+    ) throws SQLException {
+        beforeCall();
+        return wrapStatement(
+                PreparedStatement.class,
+                wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency)
+        );
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql,
+            int resultSetType,
+            int resultSetConcurrency,
+            int resultSetHoldability
+    ) throws SQLException {
+        beforeCall();
+        return wrapStatement(
+                PreparedStatement.class,
+                wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability)
+        );
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        beforeCall();
+        return wrapStatement(PreparedStatement.class, wrapped.prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        beforeCall();
+        return wrapStatement(PreparedStatement.class, wrapped.prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        beforeCall();
+        return wrapStatement(PreparedStatement.class, wrapped.prepareStatement(sql, columnNames));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        beforeCall();
+        return wrapStatement(CallableStatement.class, wrapped.prepareCall(sql));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        beforeCall();
+        return wrapStatement(CallableStatement.class, wrapped.prepareCall(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public CallableStatement prepareCall(
+            String sql,
+            int resultSetType,
+            int resultSetConcurrency,
+            int resultSetHoldability
+    ) throws SQLException {
+        beforeCall();
+        return wrapStatement(
+                CallableStatement.class,
+                wrapped.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability)
+        );
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        beforeCall();
+        wrapped.commit();
+        afterCall();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        beforeCall();
+        wrapped.rollback();
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        beforeCall();
+        wrapped.rollback(savepoint);
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        if (lost || FaultInjector.isBroken(generation)) {
+            lost = true;
+            return false;
+        }
+        return wrapped.isValid(timeout);
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return lost || wrapped.isClosed();
+    }
+}
@@ -0,0 +1,74 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver forwarding to the driver of the URL following {@link #URL_PREFIX}, and
+ * injecting the faults configured via {@link FaultInjector} into the connects and into the
+ * returned connections. Since connection pools look up drivers by their URL, the faults
+ * are seen by the pools the same way as the faults of a real database.
+ */
+public final class FaultInjectingDriver implements Driver {
+    public static final String URL_PREFIX = "jdbc:loomdbtest:faulty:";
+
+    static {
+        try {
+            DriverManager.registerDriver(new FaultInjectingDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        FaultInjector.beforeConnect();
+        long generation = FaultInjector.currentBreakGeneration();
+        Connection connection = DriverManager.getConnection(url.substring(URL_PREFIX.length()), info);
+        return new FaultInjectingConnection(connection, generation);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return new DriverPropertyInfo[0];
+        }
+        String wrappedUrl = url.substring(URL_PREFIX.length());
+        return DriverManager.getDriver(wrappedUrl).getPropertyInfo(wrappedUrl, info);
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,106 @@
+package loomdbtest;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * The faults currently injected into the connections opened through {@link FaultInjectingDriver}.
+ * The faults are global (since the driver is looked up by the pools through {@code DriverManager}),
+ * and can be injected concurrently with the benchmark.
+ */
+public final class FaultInjector {
+    // The SQL state of "connection failure", so that pools recognize the errors as fatal.
+    private static final String CONNECTION_FAILURE_SQL_STATE = "08006";
+    private static final String CONNECTION_REJECTED_SQL_STATE = "08004";
+
+    private static final AtomicLong BREAK_GENERATION = new AtomicLong(0);
+    private static volatile long connectFailuresEndNanos = System.nanoTime();
+    private static volatile StallSettings stallSettings = null;
+
+    private FaultInjector() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Breaks every connection opened before this call: Calls already executing fail when they
+     * complete (as if the connection was lost mid-statement), and later calls fail immediately.
+     */
+    public static void breakConnections() {
+        BREAK_GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Makes every attempt to open a new connection fail for the given amount of time.
+     */
+    public static void failConnectsFor(Duration duration) {
+        connectFailuresEndNanos = System.nanoTime() + duration.toNanos();
+    }
+
+    /**
+     * Makes the given percentage of the calls (connects and statement executions) wait for the given
+     * stall time before they are executed for the given amount of time.
+     */
+    public static void stallCallsFor(Duration duration, int stallPercent, Duration stallTime) {
+        ExceptionHelper.checkArgumentInRange(stallPercent, 0, 100, "stallPercent");
+        stallSettings = new StallSettings(System.nanoTime() + duration.toNanos(), stallPercent, stallTime.toNanos());
+    }
+
+    /**
+     * Stops failing connects and stalling calls. Already broken connections remain broken.
+     */
+    public static void reset() {
+        connectFailuresEndNanos = System.nanoTime();
+        stallSettings = null;
+    }
+
+    static long currentBreakGeneration() {
+        return BREAK_GENERATION.get();
+    }
+
+    static boolean isBroken(long connectionGeneration) {
+        return connectionGeneration != BREAK_GENERATION.get();
+    }
+
+    static SQLException brokenConnectionException() {
+        return new SQLNonTransientConnectionException("Simulated connection failure.", CONNECTION_FAILURE_SQL_STATE);
+    }
+
+    static void beforeConnect() throws SQLException {
+        if (System.nanoTime() - connectFailuresEndNanos < 0) {
+            throw new SQLNonTransientConnectionException("Simulated connect failure.", CONNECTION_REJECTED_SQL_STATE);
+        }
+        stallIfNeeded();
+    }
+
+    static void beforeCall(long connectionGeneration) throws SQLException {
+        if (isBroken(connectionGeneration)) {
+            throw brokenConnectionException();
+        }
+        stallIfNeeded();
+    }
+
+    private static void stallIfNeeded() throws SQLException {
+        StallSettings currentStall = stallSettings;
+        if (currentStall == null || System.nanoTime() - currentStall.endNanos() >= 0) {
+            return;
+        }
+        if (ThreadLocalRandom.current().nextInt(100) >= currentStall.stallPercent()) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(currentStall.stallNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while stalling.", e);
+        }
+    }
+
+    private record StallSettings(long endNanos, int stallPercent, long stallNanos) {
+    }
+}
@@ -0,0 +1,25 @@
+package loomdbtest;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the completed and the failed connection actions of {@link FaultRecoveryTest} separately,
+ * so that they can be reported as secondary results of the benchmark. The primary score of the
+ * benchmark counts both, so a pool failing fast would otherwise look like a fast pool.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class FaultOutcomes {
+    public long completedOps;
+    public long failedOps;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        completedOps = 0;
+        failedOps = 0;
+    }
+}
@@ -0,0 +1,257 @@
+package loomdbtest;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Injects a fault (via {@link FaultInjectingDriver}) into the connections of the pool in each
+ * iteration, and measures how the throughput recovers after the fault. The throughput is
+ * sampled in short time windows, and the following are printed after each iteration:
+ * <ul>
+ *  <li>The baseline throughput: The average throughput before the fault.</li>
+ *  <li>
+ *   The time to recover: The time from the end of the fault until the throughput of a window
+ *   reaches the given ratio of the baseline again.
+ *  </li>
+ *  <li>
+ *   The lost throughput: The number of actions which would have been completed at the baseline
+ *   throughput, but were not completed from the start of the fault until the recovery.
+ *  </li>
+ * </ul>
+ * Failed actions are counted, but do not fail the benchmark. Since the failed actions return
+ * normally, the primary score (which counts every invocation) is meaningless here: The throughput
+ * is to be read from the {@code completedOps} secondary result (see {@link FaultOutcomes}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+@Fork(1)
+public class FaultRecoveryTest {
+    // The throughput is considered recovered when it reaches this ratio of the baseline throughput.
+    private static final double RECOVERED_THROUGHPUT_RATIO = 0.9;
+
+    /**
+     * The maximum number of concurrent connections. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*1")
+    private String poolSize;
+
+    @Param("EXECUTE_SCRIPT")
+    private DbPoolTest.ConnectionActionType connectionAction;
+
+    @Param("SEMAPHORE")
+    private DbPoolType dbPoolType;
+
+    @Param("ON_BORROW")
+    private ConnectionValidation connectionValidation;
+
+    @Param("1000")
+    private long validationIntervalMs;
+
+    /**
+     * The maximum time (in ms) to wait for a connection from the pool, so that the benchmark
+     * threads do not wait for the default timeouts of the pools while connects are failing.
+     */
+    @Param("1000")
+    private long acquireTimeoutMs;
+
+    @Param("FAILOVER")
+    private FaultType faultType;
+
+    /**
+     * The time (in ms) from the start of the iteration until the fault is injected.
+     */
+    @Param("3000")
+    private long faultDelayMs;
+
+    /**
+     * The duration (in ms) of the fault, if the fault lasts for a while.
+     */
+    @Param("2000")
+    private long faultDurationMs;
+
+    /**
+     * The percentage of the calls stalled by the {@code STALL_CALLS} fault.
+     */
+    @Param("10")
+    private int stallPercent;
+
+    /**
+     * The time (in ms) each stalled call waits due to the {@code STALL_CALLS} fault.
+     */
+    @Param("1000")
+    private long stallMs;
+
+    /**
+     * The length of the time windows (in ms) in which the throughput is measured separately.
+     */
+    @Param("100")
+    private long throughputWindowMs;
+
+    private BenchmarkConnectionAction benchmarkConnectionAction;
+    private ScopedDataSource dataSource;
+    private DbKeepAliveReference keepAliveReference;
+
+    private final LongAdder completedActions = new LongAdder();
+    private final LongAdder failedActions = new LongAdder();
+    private ThroughputSampler throughputSampler;
+    private Thread faultInjectorThread;
+    private volatile long faultStartNanos;
+    private volatile boolean faultInjected;
+
+    @Setup
+    public void setup() throws Exception {
+        ExceptionHelper.checkArgumentInRange(stallPercent, 0, 100, "stallPercent");
+
+        int actualPoolSize = DbPoolTest.normalizePoolSize(poolSize);
+        var testedDb = TestedDb.selectedTestedDb();
+
+        DbPoolSettings poolSettings = DbPoolSettings.ofPoolSize(actualPoolSize)
+                .withConnectionInfo(testedDb.connectionInfo().faultInjected())
+                .withAcquireTimeout(Duration.ofMillis(acquireTimeoutMs))
+                .withValidation(connectionValidation, Duration.ofMillis(validationIntervalMs));
+        dataSource = dbPoolType.newDataSource(poolSettings);
+
+        keepAliveReference = testedDb.keepAliveDb();
+
+        benchmarkConnectionAction = connectionAction.createAction(
+                actualPoolSize,
+                dataSource.withConnectionAndGet(testedDb::initDb)
+        );
+        DbPoolTest.preopenConnections(actualPoolSize, dataSource);
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, dataSource);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        FaultInjector.reset();
+        completedActions.reset();
+        failedActions.reset();
+        faultInjected = false;
+
+        throughputSampler = new ThroughputSampler("fault-throughput-sampler", completedActions, throughputWindowMs);
+        faultInjectorThread = Thread.ofPlatform()
+                .name("fault-injector")
+                .daemon(true)
+                .start(this::injectFault);
+    }
+
+    private void injectFault() {
+        try {
+            Thread.sleep(faultDelayMs);
+        } catch (InterruptedException e) {
+            // The iteration was shorter than the delay.
+            return;
+        }
+
+        faultStartNanos = System.nanoTime();
+        faultType.inject(Duration.ofMillis(faultDurationMs), stallPercent, Duration.ofMillis(stallMs));
+        faultInjected = true;
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() throws InterruptedException {
+        faultInjectorThread.interrupt();
+        faultInjectorThread.join();
+        FaultInjector.reset();
+
+        long[] windowCounts = throughputSampler.stop();
+
+        System.out.println();
+        System.out.println("## Fault recovery (" + faultType + ")");
+        System.out.println("Failed actions: " + failedActions.sum());
+        if (!faultInjected) {
+            System.out.println("The fault was not injected, because the iteration was too short.");
+            return;
+        }
+
+        int faultStartWindow = throughputSampler.windowIndexAt(faultStartNanos);
+        if (faultStartWindow <= 0 || faultStartWindow >= windowCounts.length) {
+            System.out.println("Not enough throughput windows before or after the fault.");
+            return;
+        }
+
+        long faultEndNanos = faultStartNanos
+                + (faultType.isLasting() ? TimeUnit.MILLISECONDS.toNanos(faultDurationMs) : 0);
+        int faultEndWindow = throughputSampler.windowIndexAt(faultEndNanos);
+
+        long baselineSum = 0;
+        for (int i = 0; i < faultStartWindow; i++) {
+            baselineSum += windowCounts[i];
+        }
+        double baselineCount = baselineSum / (double) faultStartWindow;
+        double recoveredCount = RECOVERED_THROUGHPUT_RATIO * baselineCount;
+
+        int recoveredWindow = -1;
+        for (int i = faultEndWindow; i < windowCounts.length; i++) {
+            if (windowCounts[i] >= recoveredCount) {
+                recoveredWindow = i;
+                break;
+            }
+        }
+
+        int lostEndWindow = recoveredWindow >= 0 ? recoveredWindow : windowCounts.length;
+        double lostCount = 0;
+        for (int i = faultStartWindow; i < lostEndWindow; i++) {
+            lostCount += Math.max(0.0, baselineCount - windowCounts[i]);
+        }
+
+        double windowsPerSec = TimeUnit.SECONDS.toMillis(1) / (double) throughputWindowMs;
+        System.out.printf(Locale.ROOT,
+                "Baseline throughput: %.1f ops/s, lost actions: %.0f (%.1f s of baseline throughput)%n",
+                baselineCount * windowsPerSec,
+                lostCount,
+                baselineCount > 0 ? lostCount / baselineCount / windowsPerSec : 0.0
+        );
+        if (recoveredWindow >= 0) {
+            System.out.printf(Locale.ROOT,
+                    "Time to recover: %d ms (%.0f%% of the baseline throughput)%n",
+                    (recoveredWindow - faultEndWindow) * throughputWindowMs,
+                    100.0 * RECOVERED_THROUGHPUT_RATIO
+            );
+        } else {
+            System.out.println("Did not recover until the end of the iteration.");
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void runWithFaults(Blackhole blackhole, FaultOutcomes outcomes) throws Exception {
+        try {
+            dataSource.withConnection(connection -> {
+                benchmarkConnectionAction.run(connection, blackhole);
+            });
+            completedActions.increment();
+            outcomes.completedOps++;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            // The pools might wrap the injected failures into any kind of exception.
+            failedActions.increment();
+            outcomes.failedOps++;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package loomdbtest;
+
+import java.time.Duration;
+
+/**
+ * Defines the fault injected by {@link FaultRecoveryTest} via {@link FaultInjector}.
+ */
+public enum FaultType {
+    /**
+     * No fault is injected, useful as a baseline.
+     */
+    NONE(false) {
+        @Override
+        public void inject(Duration duration, int stallPercent, Duration stallTime) {
+        }
+    },
+    /**
+     * Breaks every open connection (including the ones in the middle of a statement),
+     * but new connections can be opened right away.
+     */
+    BREAK_CONNECTIONS(false) {
+        @Override
+        public void inject(Duration duration, int stallPercent, Duration stallTime) {
+            FaultInjector.breakConnections();
+        }
+    },
+    /**
+     * Makes the attempts to open new connections fail for the duration of the fault,
+     * but leaves the open connections intact.
+     */
+    FAIL_CONNECTS(true) {
+        @Override
+        public void inject(Duration duration, int stallPercent, Duration stallTime) {
+            FaultInjector.failConnectsFor(duration);
+        }
+    },
+    /**
+     * Simulates a database failover: Breaks every open connection, and makes the attempts
+     * to open new connections fail for the duration of the fault.
+     */
+    FAILOVER(true) {
+        @Override
+        public void inject(Duration duration, int stallPercent, Duration stallTime) {
+            FaultInjector.failConnectsFor(duration);
+            FaultInjector.breakConnections();
+        }
+    },
+    /**
+     * Stalls a percentage of the connects and statement executions for the duration of the fault.
+     */
+    STALL_CALLS(true) {
+        @Override
+        public void inject(Duration duration, int stallPercent, Duration stallTime) {
+            FaultInjector.stallCallsFor(duration, stallPercent, stallTime);
+        }
+    };
+
+    private final boolean lasting;
+
+    FaultType(boolean lasting) {
+        this.lasting = lasting;
+    }
+
+    /**
+     * Returns {@code true} if the fault lasts for the duration passed to {@link #inject(Duration, int, Duration) inject},
+     * {@code false} if the fault is instantaneous.
+     */
+    public boolean isLasting() {
+        return lasting;
+    }
+
+    public abstract void inject(Duration duration, int stallPercent, Duration stallTime);
+}
@@ -1,30 +1,16 @@
 package loomdbtest;
 
 import java.io.PrintWriter;
-import java.sql.Array;
-import java.sql.Blob;
-import java.sql.CallableStatement;
-import java.sql.Clob;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.NClob;
-import java.sql.PreparedStatement;
-import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
-import java.sql.SQLWarning;
-import java.sql.SQLXML;
-import java.sql.Savepoint;
-import java.sql.ShardingKey;
-import java.sql.Statement;
-import java.sql.Struct;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Properties;
-import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
@@ -32,31 +18,208 @@ import javax.sql.DataSource;
 import org.apache.commons.dbcp2.ConnectionFactory;
 import org.jtrim2.utils.ExceptionHelper;
 
+/**
+ * A data source with a fixed number of connections, which must not be borrowed by more
+ * than that many threads at a time (the caller is expected to limit the concurrent borrowers).
+ * <P>
+ * Each borrower gets its own small view of the pooled connection, which can only return the
+ * connection to the pool once. After that, closing the view again does nothing, and other
+ * calls fail, even if the same physical connection was borrowed again meanwhile. Borrowing
+ * a connection allocates only this view (unless a new physical connection must be opened):
+ * The view is what tells the borrows of the same physical connection apart, so it cannot be
+ * reused without letting a stale close return the connection of a later borrower.
+ */
 public final class FixedDataSource implements DataSource, AutoCloseable {
     private static final int CLOSED_CONNECTION_INDEX = -2;
+    private static final int VALIDATION_TIMEOUT_SEC = 5;
+    // The lifetime of each connection is reduced by a random amount up to this ratio,
+    // so that the connections opened together are not all replaced at the same time.
+    private static final double MAX_LIFETIME_JITTER = 0.1;
 
     private final ConnectionFactory connectionFactory;
+    private final boolean validateOnBorrow;
+    private final long maxLifetimeNanos;
     private final Lock connectionsLock;
-    private final Connection[] connections;
+    private final PooledConnection[] connections;
     private int nextConnectionIndex;
+    private final Thread validatorThread;
 
     private volatile PrintWriter logWriter;
 
     public FixedDataSource(
             int connectionCount,
             ConnectionFactory connectionFactory
+    ) {
+        this(connectionCount, connectionFactory, ConnectionValidation.NONE, null, null);
+    }
+
+    /**
+     * Creates a data source validating and replacing its connections as configured.
+     *
+     * @param validation when the connections are to be validated
+     * @param validationInterval the period of validating the idle connections, only used
+     *   if {@code validation} is {@link ConnectionValidation#BACKGROUND}
+     * @param maxLifetime the age after which a connection is closed (instead of being returned to the pool),
+     *   or {@code null} if connections are only closed when they are found to be invalid
+     */
+    public FixedDataSource(
+            int connectionCount,
+            ConnectionFactory connectionFactory,
+            ConnectionValidation validation,
+            Duration validationInterval,
+            Duration maxLifetime
     ) {
         ExceptionHelper.checkArgumentInRange(connectionCount, 1, Integer.MAX_VALUE, "connectionCount");
+        Objects.requireNonNull(validation, "validation");
 
         this.connectionsLock = new ReentrantLock();
-        this.connections = new Connection[connectionCount];
+        this.connections = new PooledConnection[connectionCount];
         this.connectionFactory = Objects.requireNonNull(connectionFactory, "connectionFactory");
+        this.validateOnBorrow = validation == ConnectionValidation.ON_BORROW;
+        this.maxLifetimeNanos = maxLifetime != null ? maxLifetime.toNanos() : 0;
         this.nextConnectionIndex = 0;
 
         this.logWriter = null;
+
+        if (validation == ConnectionValidation.BACKGROUND) {
+            long validationIntervalNanos = Objects.requireNonNull(validationInterval, "validationInterval").toNanos();
+            validatorThread = Thread.ofVirtual()
+                    .name("fixed-data-source-validator")
+                    .start(() -> runValidator(validationIntervalNanos));
+        } else {
+            validatorThread = null;
+        }
+    }
+
+    private long newExpireTimeNanos() {
+        if (maxLifetimeNanos <= 0) {
+            return 0;
+        }
+        double jitter = ThreadLocalRandom.current().nextDouble(MAX_LIFETIME_JITTER);
+        return System.nanoTime() + (long) (maxLifetimeNanos * (1.0 - jitter));
+    }
+
+    private boolean isExpired(long expireTimeNanos) {
+        return maxLifetimeNanos > 0 && System.nanoTime() - expireTimeNanos >= 0;
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        return new PooledConnection(this, connectionFactory.createConnection(), newExpireTimeNanos());
+    }
+
+    private boolean isUsable(PooledConnection connection, boolean validate) {
+        if (isExpired(connection.expireTimeNanos)) {
+            return false;
+        }
+        try {
+            return !validate || connection.wrapped.isValid(VALIDATION_TIMEOUT_SEC);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(PooledConnection connection) {
+        try {
+            connection.wrapped.close();
+        } catch (SQLException e) {
+            // The connection is discarded anyway.
+        }
+    }
+
+    private void runValidator(long validationIntervalNanos) {
+        try {
+            while (true) {
+                TimeUnit.NANOSECONDS.sleep(validationIntervalNanos);
+                for (int i = 0; i < connections.length; i++) {
+                    validateIdleConnection(i);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The data source was closed.
+        }
     }
 
-    private void returnConnection(Connection connection) throws SQLException {
+    /**
+     * Takes the idle connection at the given index out of the pool, and puts it back if it is still
+     * usable (or replaces it with a new one otherwise). While the connection is taken out, the
+     * pool might open a new connection in its place, so there might be one more connection than
+     * the configured count for a brief time.
+     */
+    private void validateIdleConnection(int index) throws InterruptedException {
+        PooledConnection connection;
+        connectionsLock.lock();
+        try {
+            if (index < nextConnectionIndex || connections[index] == null) {
+                return;
+            }
+            connection = connections[index];
+            connections[index] = null;
+        } finally {
+            connectionsLock.unlock();
+        }
+
+        if (!isUsable(connection, true)) {
+            closeQuietly(connection);
+            try {
+                connection = openConnection();
+            } catch (Exception e) {
+                // Leave the slot empty, the next borrower will try to connect again.
+                return;
+            }
+        }
+
+        boolean stopped = Thread.interrupted();
+        if (!stopped) {
+            connectionsLock.lock();
+            try {
+                for (int i = Math.max(index, nextConnectionIndex); i < connections.length; i++) {
+                    if (connections[i] == null) {
+                        connections[i] = connection;
+                        return;
+                    }
+                }
+            } finally {
+                connectionsLock.unlock();
+            }
+        }
+
+        // Either the data source is being closed, or the slot was reused for a new connection meanwhile.
+        closeQuietly(connection);
+        if (stopped) {
+            throw new InterruptedException();
+        }
+    }
+
+    private static boolean isClosedQuietly(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Marks the given connection (borrowed from this data source) as possibly broken, because an action
+     * using it failed. Such connections are checked when they are returned to the pool, and are discarded
+     * if the driver reports them closed. Connections of actions completing normally are not checked,
+     * so that returning them does not call the driver. Does nothing for connections of other data sources.
+     */
+    public void reportFailure(Connection connection) {
+        if (connection instanceof BorrowedConnection borrowed
+                && borrowed.pooled.owner == this
+                && !borrowed.isClosed()) {
+            borrowed.pooled.failed = true;
+        }
+    }
+
+    private void returnConnection(PooledConnection connection, boolean failed) throws SQLException {
+        // Drivers report their connection closed after a fatal error (e.g., the database was restarted).
+        if (connection != null
+                && (isExpired(connection.expireTimeNanos) || failed && isClosedQuietly(connection.wrapped))) {
+            closeQuietly(connection);
+            connection = null;
+        }
+
         String errorMessage = null;
         connectionsLock.lock();
         try {
@@ -76,14 +239,14 @@ public final class FixedDataSource implements DataSource, AutoCloseable {
 
         if (errorMessage != null) {
             if (connection != null) {
-                connection.close();
+                connection.wrapped.close();
             }
             throw new IllegalStateException(errorMessage);
         }
     }
 
     public Connection getConnection() throws SQLException {
-        Connection result;
+        PooledConnection result;
         connectionsLock.lock();
         try {
             int currentIndex = nextConnectionIndex;
@@ -101,12 +264,17 @@ public final class FixedDataSource implements DataSource, AutoCloseable {
         }
 
         try {
+            if (result != null && !isUsable(result, validateOnBorrow)) {
+                PooledConnection discarded = result;
+                result = null;
+                closeQuietly(discarded);
+            }
             if (result == null) {
-                result = connectionFactory.createConnection();
+                result = openConnection();
             }
-            return new PooledConnection(result);
+            return new BorrowedConnection(result, result.borrow());
         } catch (Throwable e) {
-            returnConnection(result);
+            returnConnection(result, false);
             throw e;
         }
     }
@@ -118,14 +286,24 @@ public final class FixedDataSource implements DataSource, AutoCloseable {
 
     @Override
     public void close() throws SQLException {
-        List<Connection> toClose = new ArrayList<>();
+        if (validatorThread != null) {
+            validatorThread.interrupt();
+            try {
+                validatorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while stopping the validator.", e);
+            }
+        }
+
+        List<PooledConnection> toClose = new ArrayList<>();
         connectionsLock.lock();
         try {
             if (nextConnectionIndex == CLOSED_CONNECTION_INDEX) {
                 return;
             }
             for (int i = 0; i < connections.length; i++) {
-                Connection connection = connections[i];
+                PooledConnection connection = connections[i];
                 connections[i] = null;
                 if (connection != null) {
                     toClose.add(connection);
@@ -134,8 +312,8 @@ public final class FixedDataSource implements DataSource, AutoCloseable {
         } finally {
             connectionsLock.unlock();
         }
-        for (Connection connection : toClose) {
-            connection.close();
+        for (PooledConnection connection : toClose) {
+            connection.wrapped.close();
         }
     }
 
@@ -177,315 +355,70 @@ public final class FixedDataSource implements DataSource, AutoCloseable {
         return iface.isAssignableFrom(getClass());
     }
 
-    private final class PooledConnection implements Connection {
+    /**
+     * A physical connection of the pool. The generation is incremented when the connection is borrowed
+     * and when it is returned, so an odd generation means that the connection is borrowed, and each
+     * borrow has its own generation.
+     */
+    private static final class PooledConnection {
+        private final FixedDataSource owner;
         private final Connection wrapped;
-        private final AtomicBoolean closed;
+        private final long expireTimeNanos;
+        private final AtomicLong generation;
+        // Whether an action failed during the current borrow.
+        private volatile boolean failed;
 
-        public PooledConnection(Connection wrapped) {
+        public PooledConnection(FixedDataSource owner, Connection wrapped, long expireTimeNanos) {
+            this.owner = owner;
             this.wrapped = Objects.requireNonNull(wrapped, "wrapped");
-            this.closed = new AtomicBoolean(false);
-        }
-
-        @Override
-        public Statement createStatement() throws SQLException {
-            return wrapped.createStatement();
+            this.expireTimeNanos = expireTimeNanos;
+            this.generation = new AtomicLong(0);
+            this.failed = false;
         }
 
-        @Override
-        public PreparedStatement prepareStatement(String sql) throws SQLException {
-            return wrapped.prepareStatement(sql);
-        }
-
-        @Override
-        public CallableStatement prepareCall(String sql) throws SQLException {
-            return wrapped.prepareCall(sql);
-        }
-
-        @Override
-        public String nativeSQL(String sql) throws SQLException {
-            return wrapped.nativeSQL(sql);
-        }
-
-        @Override
-        public void setAutoCommit(boolean autoCommit) throws SQLException {
-            wrapped.setAutoCommit(autoCommit);
+        /**
+         * Marks the connection borrowed, and returns the generation of the new borrow.
+         */
+        public long borrow() {
+            failed = false;
+            return generation.incrementAndGet();
         }
+    }
 
-        @Override
-        public boolean getAutoCommit() throws SQLException {
-            return wrapped.getAutoCommit();
-        }
+    /**
+     * The connection given to a single borrower, which is only usable while the generation of
+     * the pooled connection is the same as it was when this borrow started. Everything else is
+     * kept by the pooled connection, so that this view is as small as possible.
+     */
+    private static final class BorrowedConnection extends DelegatingConnection {
+        private final PooledConnection pooled;
+        private final long borrowGeneration;
 
-        @Override
-        public void commit() throws SQLException {
-            wrapped.commit();
+        public BorrowedConnection(PooledConnection pooled, long borrowGeneration) {
+            super(pooled.wrapped);
+            this.pooled = pooled;
+            this.borrowGeneration = borrowGeneration;
         }
 
         @Override
-        public void rollback() throws SQLException {
-            wrapped.rollback();
+        protected Connection delegate() throws SQLException {
+            if (isClosed()) {
+                throw new SQLException("The connection is closed.", "08003");
+            }
+            return wrapped;
         }
 
         @Override
         public void close() throws SQLException {
-            if (closed.compareAndSet(false, true)) {
-                returnConnection(wrapped);
+            // Fails if this borrow has already ended, even if the connection was borrowed again.
+            if (pooled.generation.compareAndSet(borrowGeneration, borrowGeneration + 1)) {
+                pooled.owner.returnConnection(pooled, pooled.failed);
             }
         }
 
         @Override
         public boolean isClosed() {
-            return closed.get();
-        }
-
-        @Override
-        public DatabaseMetaData getMetaData() throws SQLException {
-            return wrapped.getMetaData();
-        }
-
-        @Override
-        public void setReadOnly(boolean readOnly) throws SQLException {
-            wrapped.setReadOnly(readOnly);
-        }
-
-        @Override
-        public boolean isReadOnly() throws SQLException {
-            return wrapped.isReadOnly();
-        }
-
-        @Override
-        public void setCatalog(String catalog) throws SQLException {
-            wrapped.setCatalog(catalog);
-        }
-
-        @Override
-        public String getCatalog() throws SQLException {
-            return wrapped.getCatalog();
-        }
-
-        @Override
-        public void setTransactionIsolation(int level) throws SQLException {
-            wrapped.setTransactionIsolation(level);
-        }
-
-        @Override
-        public int getTransactionIsolation() throws SQLException {
-            return wrapped.getTransactionIsolation();
-        }
-
-        @Override
-        public SQLWarning getWarnings() throws SQLException {
-            return wrapped.getWarnings();
-        }
-
-        @Override
-        public void clearWarnings() throws SQLException {
-            wrapped.clearWarnings();
-        }
-
-        @Override
-        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-            return wrapped.createStatement(resultSetType, resultSetConcurrency);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-            return wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency);
-        }
-
-        @Override
-        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-            return wrapped.prepareCall(sql, resultSetType, resultSetConcurrency);
-        }
-
-        @Override
-        public Map<String, Class<?>> getTypeMap() throws SQLException {
-            return wrapped.getTypeMap();
-        }
-
-        @Override
-        public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
-            wrapped.setTypeMap(map);
-        }
-
-        @Override
-        public void setHoldability(int holdability) throws SQLException {
-            wrapped.setHoldability(holdability);
-        }
-
-        @Override
-        public int getHoldability() throws SQLException {
-            return wrapped.getHoldability();
-        }
-
-        @Override
-        public Savepoint setSavepoint() throws SQLException {
-            return wrapped.setSavepoint();
-        }
-
-        @Override
-        public Savepoint setSavepoint(String name) throws SQLException {
-            return wrapped.setSavepoint(name);
-        }
-
-        @Override
-        public void rollback(Savepoint savepoint) throws SQLException {
-            wrapped.rollback(savepoint);
-        }
-
-        @Override
-        public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-            wrapped.releaseSavepoint(savepoint);
-        }
-
-        @Override
-        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-            return wrapped.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-            return wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-        }
-
-        @Override
-        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-            return wrapped.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-            return wrapped.prepareStatement(sql, autoGeneratedKeys);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-            return wrapped.prepareStatement(sql, columnIndexes);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-            return wrapped.prepareStatement(sql, columnNames);
-        }
-
-        @Override
-        public Clob createClob() throws SQLException {
-            return wrapped.createClob();
-        }
-
-        @Override
-        public Blob createBlob() throws SQLException {
-            return wrapped.createBlob();
-        }
-
-        @Override
-        public NClob createNClob() throws SQLException {
-            return wrapped.createNClob();
-        }
-
-        @Override
-        public SQLXML createSQLXML() throws SQLException {
-            return wrapped.createSQLXML();
-        }
-
-        @Override
-        public boolean isValid(int timeout) throws SQLException {
-            return wrapped.isValid(timeout);
-        }
-
-        @Override
-        public void setClientInfo(String name, String value) throws SQLClientInfoException {
-            wrapped.setClientInfo(name, value);
-        }
-
-        @Override
-        public void setClientInfo(Properties properties) throws SQLClientInfoException {
-            wrapped.setClientInfo(properties);
-        }
-
-        @Override
-        public String getClientInfo(String name) throws SQLException {
-            return wrapped.getClientInfo(name);
-        }
-
-        @Override
-        public Properties getClientInfo() throws SQLException {
-            return wrapped.getClientInfo();
-        }
-
-        @Override
-        public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
-            return wrapped.createArrayOf(typeName, elements);
-        }
-
-        @Override
-        public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
-            return wrapped.createStruct(typeName, attributes);
-        }
-
-        @Override
-        public void setSchema(String schema) throws SQLException {
-            wrapped.setSchema(schema);
-        }
-
-        @Override
-        public String getSchema() throws SQLException {
-            return wrapped.getSchema();
-        }
-
-        @Override
-        public void abort(Executor executor) throws SQLException {
-            wrapped.abort(executor);
-        }
-
-        @Override
-        public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
-            wrapped.setNetworkTimeout(executor, milliseconds);
-        }
-
-        @Override
-        public int getNetworkTimeout() throws SQLException {
-            return wrapped.getNetworkTimeout();
-        }
-
-        @Override
-        public void beginRequest() throws SQLException {
-            wrapped.beginRequest();
-        }
-
-        @Override
-        public void endRequest() throws SQLException {
-            wrapped.endRequest();
-        }
-
-        @Override
-        public boolean setShardingKeyIfValid(ShardingKey shardingKey, ShardingKey superShardingKey, int timeout) throws SQLException {
-            return wrapped.setShardingKeyIfValid(shardingKey, superShardingKey, timeout);
-        }
-
-        @Override
-        public boolean setShardingKeyIfValid(ShardingKey shardingKey, int timeout) throws SQLException {
-            return wrapped.setShardingKeyIfValid(shardingKey, timeout);
-        }
-
-        @Override
-        public void setShardingKey(ShardingKey shardingKey, ShardingKey superShardingKey) throws SQLException {
-            wrapped.setShardingKey(shardingKey, superShardingKey);
-        }
-
-        @Override
-        public void setShardingKey(ShardingKey shardingKey) throws SQLException {
-            wrapped.setShardingKey(shardingKey);
-        }
-
-        @Override
-        public <T> T unwrap(Class<T> iface) throws SQLException {
-            return wrapped.unwrap(iface);
-        }
-
-        @Override
-        public boolean isWrapperFor(Class<?> iface) throws SQLException {
-            return wrapped.isWrapperFor(iface);
+            return pooled.generation.get() != borrowGeneration;
         }
     }
 }
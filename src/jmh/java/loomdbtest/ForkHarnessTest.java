@@ -0,0 +1,86 @@
+package loomdbtest;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Calibrates {@link DbPoolTest}: Forks and joins the same tasks as {@link DbPoolTest#testPools(Blackhole)}
+ * does, except that the connection actions do nothing (there is no pool, and no database). That is, the score is
+ * the cost of the fork/join harness itself, which can be subtracted from the score of {@code DbPoolTest} with the
+ * same parameters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+public class ForkHarnessTest {
+    @Param("VIRTUAL_THREADS")
+    private ForkType forkType;
+
+    @Param("0")
+    private long cpuWork;
+
+    @Param("0")
+    private long cpuSleepMs;
+
+    @Param("true")
+    private boolean fullConcurrentTasks;
+
+    /**
+     * The same as {@link DbPoolTest#dbTaskCount}.
+     */
+    @Param("*4")
+    private String dbTaskCount;
+
+    private ForkScope globalForkScope;
+    private UnsafeTask[] tasks;
+    private int forkLoopCount;
+
+    @Setup
+    public void setup() {
+        forkLoopCount = (DbPoolTest.normalizePoolSize(dbTaskCount) + 1) / 2;
+        tasks = new UnsafeTask[]{
+                this::doCpuWork,
+                ForkHarnessTest::doNothing,
+                this::doCpuWork,
+                ForkHarnessTest::doNothing,
+        };
+        globalForkScope = DbPoolTest.exceptionTracker(forkType.newForkScope());
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(globalForkScope);
+    }
+
+    private void doCpuWork() throws Exception {
+        Blackhole.consumeCPU(cpuWork);
+        if (cpuSleepMs > 0) {
+            Thread.sleep(cpuSleepMs);
+        }
+    }
+
+    private static void doNothing() {
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void forkTasks() {
+        try (ForkScope forkScope = new JoiningForkScope(globalForkScope)) {
+            for (int i = 0; i < forkLoopCount; i++) {
+                DbPoolTest.forkTasks(forkScope, tasks, fullConcurrentTasks);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package loomdbtest;
+
+/**
+ * Runs the forked tasks asynchronously. Closing the scope waits for the completion
+ * of the tasks forked by it (if the implementation tracks them at all).
+ */
+public interface ForkScope extends AutoCloseable {
+    void fork(UnsafeTask task);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,58 @@
+package loomdbtest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jtrim2.utils.ExceptionHelper;
+
+public enum ForkType {
+    LIMITED_EXECUTOR {
+        @Override
+        public ForkScope newForkScope() {
+            return newExecutorForkScope(Runtime.getRuntime().availableProcessors());
+        }
+    },
+    VIRTUAL_THREADS {
+        @Override
+        public ForkScope newForkScope() {
+            return newVirtualThreadForkScope();
+        }
+    };
+
+    public abstract ForkScope newForkScope();
+
+    private static ForkScope newVirtualThreadForkScope() {
+        return new ForkScope() {
+            @Override
+            public void fork(UnsafeTask task) {
+                Thread.startVirtualThread(task.toRunnable());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static ForkScope newExecutorForkScope(int threadCount) {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        return new ForkScope() {
+            @Override
+            public void fork(UnsafeTask task) {
+                executor.execute(task.toRunnable());
+            }
+
+            @Override
+            public void close() {
+                try {
+                    executor.shutdown();
+                    if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+                        throw new IllegalStateException("Executor did not terminate in a reasonable time.");
+                    }
+                } catch (InterruptedException e) {
+                    throw ExceptionHelper.throwUnchecked(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver forwarding to the driver of the URL following {@link #URL_PREFIX}, and
+ * recording how long it took to open the connections. Since connection pools look up
+ * drivers by their URL, this works regardless of the pool implementation.
+ */
+public final class InstrumentedDriver implements Driver {
+    public static final String URL_PREFIX = "jdbc:loomdbtest:instrumented:";
+
+    private static final LatencyHistogram CONNECT_LATENCIES = new LatencyHistogram();
+
+    static {
+        try {
+            DriverManager.registerDriver(new InstrumentedDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Returns the latencies of the successful connects since the last
+     * {@link LatencyHistogram#reset() reset}.
+     */
+    public static LatencyHistogram connectLatencies() {
+        return CONNECT_LATENCIES;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        String wrappedUrl = url.substring(URL_PREFIX.length());
+        long startNanos = System.nanoTime();
+        Connection result = DriverManager.getConnection(wrappedUrl, info);
+        CONNECT_LATENCIES.record(System.nanoTime() - startNanos);
+        return result;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return new DriverPropertyInfo[0];
+        }
+        String wrappedUrl = url.substring(URL_PREFIX.length());
+        return DriverManager.getDriver(wrappedUrl).getPropertyInfo(wrappedUrl, info);
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,170 @@
+package loomdbtest;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver forwarding to another version of the driver of the tested database, loaded into its
+ * own class loader. This allows benchmarking multiple versions of the same driver in a single run.
+ * The URLs of this driver are in the {@code <URL_PREFIX><VARIANT>:<URL>} format, where the classpath of
+ * the variant is given by the {@code loomdbtest.driverVariantClasspath.<VARIANT>} system property.
+ * <P>
+ * The class loaders of the variants only see the classes of the JDK (and not the classes of the
+ * benchmark, or the driver on its classpath). Note that databases running within the JVM are loaded
+ * along with their driver, so each variant also has its own instance of such databases.
+ */
+public final class IsolatedDriver implements Driver {
+    public static final String URL_PREFIX = "jdbc:loomdbtest:variant:";
+
+    /**
+     * The variant selecting the driver on the classpath of the benchmark.
+     */
+    public static final String DEFAULT_VARIANT = "DEFAULT";
+
+    private static final String CLASSPATH_PROPERTY_PREFIX = "loomdbtest.driverVariantClasspath.";
+
+    private static final ConcurrentMap<String, List<Driver>> VARIANT_DRIVERS = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new IsolatedDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Returns the URL connecting to the given URL through the given driver variant.
+     */
+    public static String variantUrl(String driverVariant, String jdbcUrl) {
+        String normalizedVariant = normalizeVariant(driverVariant);
+        if (normalizedVariant.equals(DEFAULT_VARIANT)) {
+            return jdbcUrl;
+        }
+        // Fail early, if the classpath of the variant is not configured.
+        variantDrivers(normalizedVariant);
+        return URL_PREFIX + normalizedVariant + ":" + jdbcUrl;
+    }
+
+    private static String normalizeVariant(String driverVariant) {
+        return driverVariant.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static List<Driver> variantDrivers(String driverVariant) {
+        return VARIANT_DRIVERS.computeIfAbsent(driverVariant, IsolatedDriver::loadDrivers);
+    }
+
+    private static List<Driver> loadDrivers(String driverVariant) {
+        String classpath = System.getProperty(CLASSPATH_PROPERTY_PREFIX + driverVariant, "").trim();
+        if (classpath.isEmpty()) {
+            throw new IllegalArgumentException("The classpath of driver variant " + driverVariant
+                    + " is not configured (system property " + CLASSPATH_PROPERTY_PREFIX + driverVariant + ").");
+        }
+
+        List<URL> urls = new ArrayList<>();
+        for (String path : classpath.split(File.pathSeparator)) {
+            try {
+                urls.add(new File(path).toURI().toURL());
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid classpath entry of driver variant " + driverVariant, e);
+            }
+        }
+
+        var classLoader = new URLClassLoader(
+                "driver-" + driverVariant,
+                urls.toArray(URL[]::new),
+                ClassLoader.getPlatformClassLoader()
+        );
+
+        List<Driver> result = new ArrayList<>();
+        for (Driver driver : ServiceLoader.load(Driver.class, classLoader)) {
+            if (driver.getClass().getClassLoader() == classLoader) {
+                result.add(driver);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("There is no JDBC driver on the classpath of driver variant "
+                    + driverVariant + ": " + classpath);
+        }
+        return List.copyOf(result);
+    }
+
+    private static Driver findDriver(String url) throws SQLException {
+        String variantAndUrl = url.substring(URL_PREFIX.length());
+        int separatorIndex = variantAndUrl.indexOf(':');
+        if (separatorIndex < 0) {
+            throw new SQLException("Missing driver variant in URL: " + url);
+        }
+
+        String wrappedUrl = variantAndUrl.substring(separatorIndex + 1);
+        for (Driver driver : variantDrivers(variantAndUrl.substring(0, separatorIndex))) {
+            if (driver.acceptsURL(wrappedUrl)) {
+                return driver;
+            }
+        }
+        throw new SQLException("No driver of the variant accepts the URL: " + url);
+    }
+
+    private static String wrappedUrl(String url) {
+        String variantAndUrl = url.substring(URL_PREFIX.length());
+        return variantAndUrl.substring(variantAndUrl.indexOf(':') + 1);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        // Not going through DriverManager, because it ignores the drivers not visible to the caller.
+        return findDriver(url).connect(wrappedUrl(url), info);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return new DriverPropertyInfo[0];
+        }
+        return findDriver(url).getPropertyInfo(wrappedUrl(url), info);
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -1,5 +1,8 @@
 package loomdbtest;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Objects;
 
 public record JdbcConnectionInfo(
@@ -13,4 +16,47 @@ public record JdbcConnectionInfo(
     public JdbcConnectionInfo(String jdbcUrl) {
         this(jdbcUrl, null);
     }
+
+    /**
+     * Returns the same connection info, except that the connections are opened through
+     * {@link InstrumentedDriver}, so that their connect latency is recorded.
+     */
+    public JdbcConnectionInfo instrumented() {
+        if (jdbcUrl.startsWith(InstrumentedDriver.URL_PREFIX)) {
+            return this;
+        }
+        return new JdbcConnectionInfo(InstrumentedDriver.URL_PREFIX + jdbcUrl, credential);
+    }
+
+    /**
+     * Returns the same connection info, except that the connections are opened through
+     * {@link FaultInjectingDriver}, so that faults can be injected via {@link FaultInjector}.
+     */
+    public JdbcConnectionInfo faultInjected() {
+        if (jdbcUrl.startsWith(FaultInjectingDriver.URL_PREFIX)) {
+            return this;
+        }
+        return new JdbcConnectionInfo(FaultInjectingDriver.URL_PREFIX + jdbcUrl, credential);
+    }
+
+    /**
+     * Returns the same connection info, except that the connections are opened through the
+     * given variant of the driver (see {@link IsolatedDriver}).
+     */
+    public JdbcConnectionInfo withDriverVariant(String driverVariant) {
+        String variantUrl = IsolatedDriver.variantUrl(driverVariant, jdbcUrl);
+        return variantUrl.equals(jdbcUrl) ? this : new JdbcConnectionInfo(variantUrl, credential);
+    }
+
+    public Connection newConnection() throws SQLException {
+        if (credential != null) {
+            return DriverManager.getConnection(
+                    jdbcUrl,
+                    credential.username(),
+                    credential.password()
+            );
+        } else {
+            return DriverManager.getConnection(jdbcUrl);
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Emits {@link PoolAcquireEvent} and {@link ConnectionHoldEvent} for the connection actions of
+ * a data source. The events of a connection action (including the {@link StatementExecuteEvent}s
+ * of the statements it executes) share the same correlation id. The events are disabled by default,
+ * in which case the calls are forwarded without any additional work (and allocation).
+ */
+final class JfrTracingDataSource implements ScopedDataSource {
+    private static final AtomicLong NEXT_CORRELATION_ID = new AtomicLong(0);
+    private static final ThreadLocal<long[]> CURRENT_CORRELATION_ID = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final String poolType;
+    private final ScopedDataSource wrapped;
+    private final AtomicInteger waitingCount;
+
+    public JfrTracingDataSource(String poolType, ScopedDataSource wrapped) {
+        this.poolType = Objects.requireNonNull(poolType, "poolType");
+        this.wrapped = Objects.requireNonNull(wrapped, "wrapped");
+        this.waitingCount = new AtomicInteger(0);
+    }
+
+    private static boolean isTraced() {
+        return PoolAcquireEvent.TYPE.isEnabled() || ConnectionHoldEvent.TYPE.isEnabled();
+    }
+
+    /**
+     * Returns the correlation id of the connection action running on the current thread,
+     * or zero if there is no such action (or it is not traced).
+     */
+    static long currentCorrelationId() {
+        return CURRENT_CORRELATION_ID.get()[0];
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+        if (!isTraced()) {
+            return wrapped.withConnectionAndGet(function);
+        }
+        return new TracedAction<>(function).acquireAndRun(null);
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionPriority priority, ConnectionFunction<V> function) throws Exception {
+        if (!isTraced()) {
+            return wrapped.withConnectionAndGet(priority, function);
+        }
+        return new TracedAction<>(function).acquireAndRun(priority);
+    }
+
+    @Override
+    public void withConnection(BenchmarkConnectionAction action, Blackhole blackhole) throws Exception {
+        if (!isTraced()) {
+            wrapped.withConnection(action, blackhole);
+            return;
+        }
+        new TracedAction<>(connection -> {
+            action.run(connection, blackhole);
+            return null;
+        }).acquireAndRun(null);
+    }
+
+    @Override
+    public void close() {
+        wrapped.close();
+    }
+
+    private final class TracedAction<V> implements ConnectionFunction<V> {
+        private final ConnectionFunction<V> function;
+        private final long correlationId;
+        private final PoolAcquireEvent acquireEvent;
+        private boolean acquireEnded;
+
+        public TracedAction(ConnectionFunction<V> function) {
+            this.function = function;
+            this.correlationId = NEXT_CORRELATION_ID.incrementAndGet();
+            this.acquireEvent = new PoolAcquireEvent();
+            this.acquireEnded = false;
+        }
+
+        public V acquireAndRun(ConnectionPriority priority) throws Exception {
+            acquireEvent.correlationId = correlationId;
+            acquireEvent.poolType = poolType;
+            acquireEvent.queueDepth = waitingCount.getAndIncrement();
+            acquireEvent.begin();
+            try {
+                return priority != null
+                        ? wrapped.withConnectionAndGet(priority, this)
+                        : wrapped.withConnectionAndGet(this);
+            } finally {
+                // Only not ended yet, if the connection could not be acquired.
+                endAcquire(false);
+            }
+        }
+
+        private void endAcquire(boolean succeeded) {
+            if (acquireEnded) {
+                return;
+            }
+            acquireEnded = true;
+
+            waitingCount.decrementAndGet();
+            acquireEvent.succeeded = succeeded;
+            acquireEvent.commit();
+        }
+
+        @Override
+        public V run(Connection connection) throws Exception {
+            int connectionId = System.identityHashCode(connection);
+            acquireEvent.connectionId = connectionId;
+            endAcquire(true);
+
+            long[] currentCorrelationId = CURRENT_CORRELATION_ID.get();
+            long prevCorrelationId = currentCorrelationId[0];
+            currentCorrelationId[0] = correlationId;
+
+            ConnectionHoldEvent holdEvent = new ConnectionHoldEvent();
+            holdEvent.correlationId = correlationId;
+            holdEvent.poolType = poolType;
+            holdEvent.connectionId = connectionId;
+            holdEvent.begin();
+            try {
+                return function.run(connection);
+            } finally {
+                holdEvent.commit();
+                currentCorrelationId[0] = prevCorrelationId;
+            }
+        }
+    }
+}
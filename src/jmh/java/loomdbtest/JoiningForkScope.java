@@ -0,0 +1,133 @@
+package loomdbtest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.jtrim2.cancel.Cancellation;
+import org.jtrim2.concurrent.WaitableSignal;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * A {@link ForkScope} forking its tasks into a parent scope, and waiting for all of them
+ * to complete when closed. Tasks must only be forked by the thread owning the scope, or by the
+ * tasks of the scope (possibly while the owner is waiting for them in {@link #close()}).
+ * <P>
+ * To avoid all the tasks contending on a single counter, the outstanding tasks are counted
+ * in stripes (each on its own cache line) assigned to the tasks in round-robin order. Each stripe
+ * holds an extra count until the scope is closed, so a stripe cannot reach zero before that. The last
+ * task of a stripe then decrements the shared count of the outstanding stripes. That is, the shared
+ * counter is only touched once per stripe (unless tasks fork new tasks after the scope was closed).
+ */
+public final class JoiningForkScope implements ForkScope {
+    // Ints per stripe: 128 bytes, so that adjacent cache lines are not shared either.
+    private static final int STRIPE_STRIDE = 32;
+    private static final int DEFAULT_STRIPE_COUNT = stripeCountFor(Runtime.getRuntime().availableProcessors());
+
+    private final ForkScope parent;
+    private final int stripeMask;
+    private final AtomicIntegerArray stripeCounts;
+    private final AtomicInteger outstandingStripes;
+    private final WaitableSignal doneSignal;
+
+    private int nextStripe;
+    private boolean closed;
+
+    public JoiningForkScope(ForkScope parent) {
+        this(parent, DEFAULT_STRIPE_COUNT);
+    }
+
+    public JoiningForkScope(ForkScope parent, int stripeCount) {
+        ExceptionHelper.checkArgumentInRange(stripeCount, 1, 1 << 16, "stripeCount");
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("stripeCount must be a power of two: " + stripeCount);
+        }
+
+        this.parent = parent;
+        this.stripeMask = stripeCount - 1;
+        this.stripeCounts = new AtomicIntegerArray(stripeCount * STRIPE_STRIDE);
+        this.outstandingStripes = new AtomicInteger(stripeCount);
+        this.doneSignal = new WaitableSignal();
+        this.nextStripe = 0;
+        this.closed = false;
+
+        for (int i = 0; i < stripeCount; i++) {
+            stripeCounts.setPlain(i * STRIPE_STRIDE, 1);
+        }
+    }
+
+    private static int stripeCountFor(int processorCount) {
+        return Integer.highestOneBit(Math.max(processorCount, 1) * 2 - 1);
+    }
+
+    @Override
+    public void fork(UnsafeTask task) {
+        // Concurrent forks might select the same stripe, but that only affects the contention,
+        // because the stripe counters are updated atomically.
+        int stripeIndex = nextStripe * STRIPE_STRIDE;
+        nextStripe = (nextStripe + 1) & stripeMask;
+
+        if (stripeCounts.getAndIncrement(stripeIndex) == 0) {
+            // A task forked into a stripe already completed after closing the scope. The forking
+            // task itself is still outstanding, so the scope cannot have completed yet.
+            outstandingStripes.incrementAndGet();
+        }
+        try {
+            parent.fork(new ForkedTask(this, stripeIndex, task));
+        } catch (Throwable e) {
+            completeStripeTask(stripeIndex);
+            throw e;
+        }
+    }
+
+    private void completeStripeTask(int stripeIndex) {
+        if (stripeCounts.decrementAndGet(stripeIndex) == 0) {
+            if (outstandingStripes.decrementAndGet() == 0) {
+                doneSignal.signal();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (int i = 0; i <= stripeMask; i++) {
+            completeStripeTask(i * STRIPE_STRIDE);
+        }
+        doneSignal.waitSignal(Cancellation.UNCANCELABLE_TOKEN);
+    }
+
+    /**
+     * The only object allocated per forked task. It is also its own {@code Runnable}, so that
+     * the parent scope does not have to wrap it again.
+     */
+    private static final class ForkedTask implements UnsafeTask, Runnable {
+        private final JoiningForkScope scope;
+        private final int stripeIndex;
+        private final UnsafeTask task;
+
+        public ForkedTask(JoiningForkScope scope, int stripeIndex, UnsafeTask task) {
+            this.scope = scope;
+            this.stripeIndex = stripeIndex;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (Exception e) {
+                throw ExceptionHelper.throwUnchecked(e);
+            } finally {
+                scope.completeStripeTask(stripeIndex);
+            }
+        }
+
+        @Override
+        public Runnable toRunnable() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package loomdbtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON reader and writer for the results of JMH. Objects are read into {@code LinkedHashMap}
+ * (keeping the order of the properties), arrays into {@code List}, numbers into {@code Double}.
+ */
+final class Json {
+    private final String text;
+    private int position;
+
+    private Json(String text) {
+        this.text = text;
+        this.position = 0;
+    }
+
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        Object result = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw parser.error("Unexpected content after the JSON value");
+        }
+        return result;
+    }
+
+    public static String write(Object value) {
+        StringBuilder result = new StringBuilder();
+        write(value, result);
+        return result.toString();
+    }
+
+    /**
+     * Returns the given JSON value as a number. JMH writes non-finite numbers as strings
+     * (e.g., {@code "NaN"}), so such strings are accepted as well.
+     */
+    public static double toDouble(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String str) {
+            return Double.parseDouble(str);
+        }
+        return Double.NaN;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> asObject(Object value) {
+        return value instanceof Map<?, ?> ? (Map<String, Object>) value : Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> asArray(Object value) {
+        return value instanceof List<?> ? (List<Object>) value : List.of();
+    }
+
+    private static void write(Object value, StringBuilder result) {
+        if (value == null) {
+            result.append("null");
+        } else if (value instanceof String str) {
+            writeString(str, result);
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isFinite(number)) {
+                result.append(number == Math.rint(number) && Math.abs(number) < 1e15 ? Long.toString((long) number) : value);
+            } else {
+                writeString(Double.toString(number), result);
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            result.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            result.append('{');
+            String separator = "";
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                result.append(separator);
+                writeString(entry.getKey().toString(), result);
+                result.append(':');
+                write(entry.getValue(), result);
+                separator = ",";
+            }
+            result.append('}');
+        } else if (value instanceof List<?> list) {
+            result.append('[');
+            String separator = "";
+            for (Object element : list) {
+                result.append(separator);
+                write(element, result);
+                separator = ",";
+            }
+            result.append(']');
+        } else {
+            writeString(value.toString(), result);
+        }
+    }
+
+    private static void writeString(String str, StringBuilder result) {
+        result.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            switch (ch) {
+                case '"' -> result.append("\\\"");
+                case '\\' -> result.append("\\\\");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                case '\t' -> result.append("\\t");
+                default -> {
+                    if (ch < 0x20) {
+                        result.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        result.append(ch);
+                    }
+                }
+            }
+        }
+        result.append('"');
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("Unexpected end of JSON");
+        }
+
+        char ch = text.charAt(position);
+        return switch (ch) {
+            case '{' -> readObject();
+            case '[' -> readArray();
+            case '"' -> readString();
+            case 't' -> readLiteral("true", Boolean.TRUE);
+            case 'f' -> readLiteral("false", Boolean.FALSE);
+            case 'n' -> readLiteral("null", null);
+            default -> readNumber();
+        };
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (tryConsume('}')) {
+            return result;
+        }
+        do {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            result.put(key, readValue());
+            skipWhitespace();
+        } while (tryConsume(','));
+        expect('}');
+        return result;
+    }
+
+    private List<Object> readArray() {
+        List<Object> result = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (tryConsume(']')) {
+            return result;
+        }
+        do {
+            result.add(readValue());
+            skipWhitespace();
+        } while (tryConsume(','));
+        expect(']');
+        return result;
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder result = new StringBuilder();
+        while (true) {
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char ch = text.charAt(position++);
+            if (ch == '"') {
+                return result.toString();
+            }
+            if (ch != '\\') {
+                result.append(ch);
+                continue;
+            }
+
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'b' -> result.append('\b');
+                case 'f' -> result.append('\f');
+                case 'n' -> result.append('\n');
+                case 'r' -> result.append('\r');
+                case 't' -> result.append('\t');
+                case 'u' -> {
+                    if (position + 4 > text.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    position += 4;
+                }
+                default -> result.append(escaped);
+            }
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("Invalid literal");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private Double readNumber() {
+        int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Unexpected character: " + text.charAt(position));
+        }
+        try {
+            return Double.valueOf(text.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number: " + text.substring(start, position));
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean tryConsume(char ch) {
+        if (position < text.length() && text.charAt(position) == ch) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char ch) {
+        if (!tryConsume(ch)) {
+            throw error("Expected '" + ch + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
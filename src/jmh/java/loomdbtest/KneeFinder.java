@@ -0,0 +1,313 @@
+package loomdbtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link DbPoolTest} over a grid of pool sizes and offered concurrency (the {@code dbTaskCount}
+ * parameter), and locates the knee of the throughput curve for each pool type (and for every other
+ * combination of the benchmark parameters passed as {@code <NAME>=<VALUE>,<VALUE>...} arguments).
+ * <P>
+ * After the grid, the pool sizes and concurrency levels next to the highest throughput are refined
+ * by their geometric means. The knee pool size is the smallest pool size reaching the peak throughput
+ * within the configured tolerance. Then the {@link UniversalScalabilityModel} is fitted to the measurements
+ * of the knee pool size, and the concurrency where the latency (the time to complete all the connection
+ * actions of an invocation) rises above its minimum by more than the tolerance is reported.
+ * <P>
+ * The sweep is configured by the following system properties:
+ * <ul>
+ *  <li>{@code loomdbtest.kneePoolSizes}: The pool sizes of the grid (see {@link DbPoolTest#poolSize}).</li>
+ *  <li>{@code loomdbtest.kneeDbTaskCounts}: The concurrency levels of the grid.</li>
+ *  <li>{@code loomdbtest.kneeTolerancePercent}: The tolerance defining "near-peak" throughput and rising latency.</li>
+ *  <li>{@code loomdbtest.kneeOutput}: The file to write the report into, in addition to the standard output.</li>
+ * </ul>
+ */
+public final class KneeFinder {
+    private static final String BENCHMARK_REGEX = "^" + Pattern.quote(DbPoolTest.class.getName() + ".testPools") + "$";
+    private static final String POOL_SIZE_PARAM = "poolSize";
+    private static final String DB_TASK_COUNT_PARAM = "dbTaskCount";
+    private static final String DB_POOL_TYPE_PARAM = "dbPoolType";
+
+    private final Map<String, List<String>> benchmarkParameters;
+    private final double tolerance;
+    private final Map<Map<String, String>, Map<GridPoint, Double>> measurements;
+
+    private KneeFinder(Map<String, List<String>> benchmarkParameters, double tolerancePercent) {
+        if (!(tolerancePercent > 0.0 && tolerancePercent < 100.0)) {
+            throw new IllegalArgumentException("tolerancePercent must be in the range (0, 100): " + tolerancePercent);
+        }
+
+        this.benchmarkParameters = benchmarkParameters;
+        this.tolerance = tolerancePercent / 100.0;
+        this.measurements = new LinkedHashMap<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, List<String>> benchmarkParameters = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separatorIndex = arg.indexOf('=');
+            if (separatorIndex < 0) {
+                throw new IllegalArgumentException("Benchmark parameters must be in <NAME>=<VALUES> format: " + arg);
+            }
+            String name = arg.substring(0, separatorIndex).trim();
+            if (name.equals(POOL_SIZE_PARAM) || name.equals(DB_TASK_COUNT_PARAM)) {
+                throw new IllegalArgumentException(name + " is set by the sweep.");
+            }
+            benchmarkParameters.put(name, splitValues(arg.substring(separatorIndex + 1)));
+        }
+
+        NavigableSet<Integer> poolSizes = parseSizes(
+                System.getProperty("loomdbtest.kneePoolSizes", "*1,*2,*4,*8"),
+                false
+        );
+        NavigableSet<Integer> dbTaskCounts = parseSizes(
+                System.getProperty("loomdbtest.kneeDbTaskCounts", "*1,*2,*4,*8,*16"),
+                true
+        );
+        double tolerancePercent = Double.parseDouble(System.getProperty("loomdbtest.kneeTolerancePercent", "10"));
+
+        String report = new KneeFinder(benchmarkParameters, tolerancePercent).findKnees(poolSizes, dbTaskCounts);
+        System.out.println();
+        System.out.print(report);
+
+        String output = System.getProperty("loomdbtest.kneeOutput", "").trim();
+        if (!output.isEmpty()) {
+            Path outputPath = Path.of(output);
+            Path outputDir = outputPath.toAbsolutePath().getParent();
+            if (outputDir != null) {
+                Files.createDirectories(outputDir);
+            }
+            Files.writeString(outputPath, report);
+        }
+    }
+
+    private static List<String> splitValues(String values) {
+        return List.of(values.split(",")).stream().map(String::trim).toList();
+    }
+
+    private static NavigableSet<Integer> parseSizes(String values, boolean even) {
+        NavigableSet<Integer> result = new TreeSet<>();
+        for (String value : splitValues(values)) {
+            int size = DbPoolTest.normalizePoolSize(value);
+            result.add(even ? roundUpToEven(size) : size);
+        }
+        return result;
+    }
+
+    private static int roundUpToEven(int value) {
+        return (value + 1) & ~1;
+    }
+
+    private String findKnees(NavigableSet<Integer> poolSizes, NavigableSet<Integer> dbTaskCounts) throws RunnerException {
+        runBenchmarks(Map.of(), poolSizes, dbTaskCounts);
+
+        StringBuilder report = new StringBuilder();
+        for (Map<String, String> group : List.copyOf(measurements.keySet())) {
+            GridPoint peak = peakPoint(measurements.get(group));
+            runBenchmarks(group, refine(poolSizes, peak.poolSize(), false), Set.of(peak.dbTaskCount()));
+            runBenchmarks(group, Set.of(peak.poolSize()), refine(dbTaskCounts, peak.dbTaskCount(), true));
+
+            Map<GridPoint, Double> groupMeasurements = measurements.get(group);
+            int kneePoolSize = kneePoolSize(groupMeasurements);
+
+            NavigableSet<Integer> missingDbTaskCounts = new TreeSet<>();
+            groupMeasurements.keySet().forEach(point -> missingDbTaskCounts.add(point.dbTaskCount()));
+            groupMeasurements.keySet().forEach(point -> {
+                if (point.poolSize() == kneePoolSize) {
+                    missingDbTaskCounts.remove(point.dbTaskCount());
+                }
+            });
+            runBenchmarks(group, Set.of(kneePoolSize), missingDbTaskCounts);
+
+            appendReport(report, group, measurements.get(group), kneePoolSize);
+        }
+        return report.toString();
+    }
+
+    private static Set<Integer> refine(NavigableSet<Integer> gridValues, int peakValue, boolean even) {
+        Set<Integer> result = new TreeSet<>();
+        for (Integer neighbour : new Integer[] {gridValues.lower(peakValue), gridValues.higher(peakValue)}) {
+            if (neighbour == null) {
+                continue;
+            }
+
+            int refinedValue = (int) Math.round(Math.sqrt((double) peakValue * neighbour));
+            if (even) {
+                refinedValue = roundUpToEven(refinedValue);
+            }
+            if (refinedValue != peakValue && refinedValue != neighbour) {
+                result.add(refinedValue);
+            }
+        }
+        return result;
+    }
+
+    private void runBenchmarks(
+            Map<String, String> fixedParameters,
+            Collection<Integer> poolSizes,
+            Collection<Integer> dbTaskCounts
+    ) throws RunnerException {
+        if (poolSizes.isEmpty() || dbTaskCounts.isEmpty()) {
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(BENCHMARK_REGEX)
+                .shouldFailOnError(true)
+                .param(POOL_SIZE_PARAM, toParamValues(poolSizes))
+                .param(DB_TASK_COUNT_PARAM, toParamValues(dbTaskCounts));
+        benchmarkParameters.forEach((name, values) -> {
+            if (!fixedParameters.containsKey(name)) {
+                options.param(name, values.toArray(String[]::new));
+            }
+        });
+        fixedParameters.forEach(options::param);
+
+        for (RunResult result : new Runner(options.build()).run()) {
+            BenchmarkParams params = result.getParams();
+
+            Map<String, String> group = new LinkedHashMap<>();
+            for (String name : params.getParamsKeys()) {
+                // Only the parameters varied by the caller distinguish the results.
+                if (name.equals(DB_POOL_TYPE_PARAM) || benchmarkParameters.containsKey(name)) {
+                    group.put(name, params.getParam(name));
+                }
+            }
+
+            GridPoint point = new GridPoint(
+                    Integer.parseInt(params.getParam(POOL_SIZE_PARAM)),
+                    Integer.parseInt(params.getParam(DB_TASK_COUNT_PARAM))
+            );
+            double invocationMillis = result.getPrimaryResult().getScore()
+                    * params.getTimeUnit().toNanos(1) / 1_000_000.0;
+            measurements.computeIfAbsent(group, key -> new LinkedHashMap<>()).put(point, invocationMillis);
+        }
+    }
+
+    private static String[] toParamValues(Collection<Integer> values) {
+        return values.stream().map(String::valueOf).toArray(String[]::new);
+    }
+
+    private static double throughput(GridPoint point, double invocationMillis) {
+        return point.dbTaskCount() * 1000.0 / invocationMillis;
+    }
+
+    private static GridPoint peakPoint(Map<GridPoint, Double> groupMeasurements) {
+        return groupMeasurements.entrySet()
+                .stream()
+                .max(Comparator.comparingDouble(entry -> throughput(entry.getKey(), entry.getValue())))
+                .orElseThrow()
+                .getKey();
+    }
+
+    private int kneePoolSize(Map<GridPoint, Double> groupMeasurements) {
+        GridPoint peak = peakPoint(groupMeasurements);
+        double nearPeakThroughput = (1.0 - tolerance) * throughput(peak, groupMeasurements.get(peak));
+
+        int result = peak.poolSize();
+        for (Map.Entry<GridPoint, Double> entry : groupMeasurements.entrySet()) {
+            GridPoint point = entry.getKey();
+            if (point.poolSize() < result && throughput(point, entry.getValue()) >= nearPeakThroughput) {
+                result = point.poolSize();
+            }
+        }
+        return result;
+    }
+
+    private void appendReport(
+            StringBuilder report,
+            Map<String, String> group,
+            Map<GridPoint, Double> groupMeasurements,
+            int kneePoolSize
+    ) {
+        String testedDbSubtype = System.getProperty("loomdbtest.testedDbSubtype", "").trim();
+        String testedDbName = System.getProperty("loomdbtest.testedDb")
+                + (testedDbSubtype.isEmpty() ? "" : "." + testedDbSubtype);
+
+        report.append("## ").append(testedDbName);
+        group.forEach((name, value) -> report.append(' ').append(name).append('=').append(value));
+        report.append('\n');
+
+        report.append(String.format(Locale.ROOT, "%10s %12s %16s %16s%n",
+                POOL_SIZE_PARAM, DB_TASK_COUNT_PARAM, "latency (ms)", "tasks/s"));
+        List<GridPoint> points = new ArrayList<>(groupMeasurements.keySet());
+        points.sort(Comparator.comparingInt(GridPoint::poolSize).thenComparingInt(GridPoint::dbTaskCount));
+        for (GridPoint point : points) {
+            double invocationMillis = groupMeasurements.get(point);
+            report.append(String.format(Locale.ROOT, "%10d %12d %16.3f %16.1f%n",
+                    point.poolSize(), point.dbTaskCount(), invocationMillis, throughput(point, invocationMillis)));
+        }
+
+        GridPoint peak = peakPoint(groupMeasurements);
+        double peakThroughput = throughput(peak, groupMeasurements.get(peak));
+        report.append(String.format(Locale.ROOT, "Peak throughput: %.1f tasks/s (poolSize=%d, dbTaskCount=%d)%n",
+                peakThroughput, peak.poolSize(), peak.dbTaskCount()));
+
+        List<GridPoint> kneePoints = points
+                .stream()
+                .filter(point -> point.poolSize() == kneePoolSize)
+                .toList();
+        double kneeThroughput = kneePoints
+                .stream()
+                .mapToDouble(point -> throughput(point, groupMeasurements.get(point)))
+                .max()
+                .orElseThrow();
+        report.append(String.format(Locale.ROOT, "Knee pool size: %d (%.1f tasks/s, %.1f%% of the peak)%n",
+                kneePoolSize, kneeThroughput, 100.0 * kneeThroughput / peakThroughput));
+
+        GridPoint minConcurrencyPoint = kneePoints.get(0);
+        double riseLimit = (1.0 + tolerance) * groupMeasurements.get(minConcurrencyPoint);
+        String measuredLatencyKnee = kneePoints
+                .stream()
+                .filter(point -> groupMeasurements.get(point) > riseLimit)
+                .findFirst()
+                .map(point -> Integer.toString(point.dbTaskCount()))
+                .orElse("none");
+
+        double[] concurrencies = kneePoints.stream().mapToDouble(GridPoint::dbTaskCount).toArray();
+        double[] throughputs = kneePoints.stream().mapToDouble(point -> throughput(point, groupMeasurements.get(point))).toArray();
+        UniversalScalabilityModel model = UniversalScalabilityModel.tryFit(concurrencies, throughputs);
+        if (model != null) {
+            int minConcurrency = minConcurrencyPoint.dbTaskCount();
+            int maxConcurrency = kneePoints.get(kneePoints.size() - 1).dbTaskCount();
+            double fittedRiseLimit = (1.0 + tolerance) * model.responseTimeAt(minConcurrency);
+            String fittedLatencyKnee = "none";
+            for (int concurrency = minConcurrency; concurrency <= maxConcurrency; concurrency++) {
+                if (model.responseTimeAt(concurrency) > fittedRiseLimit) {
+                    fittedLatencyKnee = Integer.toString(concurrency);
+                    break;
+                }
+            }
+
+            report.append(String.format(Locale.ROOT,
+                    "USL fit at poolSize=%d: lambda=%.1f tasks/s, sigma=%.4f, kappa=%.6f, peak dbTaskCount=%.1f%n",
+                    kneePoolSize, model.lambda(), model.sigma(), model.kappa(), model.peakConcurrency()));
+            report.append(String.format(Locale.ROOT, "Latency knee: dbTaskCount=%s (fitted), %s (measured)%n",
+                    fittedLatencyKnee, measuredLatencyKnee));
+        } else {
+            report.append(String.format(Locale.ROOT, "Latency knee: dbTaskCount=%s (measured, USL fit failed)%n",
+                    measuredLatencyKnee));
+        }
+        report.append('\n');
+    }
+
+    private record GridPoint(int poolSize, int dbTaskCount) {
+    }
+}
@@ -0,0 +1,117 @@
+package loomdbtest;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of durations (in nanoseconds) with logarithmic buckets.
+ * Each power of two range is divided into 32 buckets, so the reported percentiles
+ * are within about 3% of the exact value.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong maxValue;
+
+    public LatencyHistogram() {
+        this.bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        this.maxValue = new AtomicLong(0);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << shift;
+    }
+
+    public void record(long valueNanos) {
+        long value = Math.max(0, valueNanos);
+        bucketCounts.incrementAndGet(bucketIndex(value));
+        maxValue.accumulateAndGet(value, Math::max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts.set(i, 0);
+        }
+        maxValue.set(0);
+    }
+
+    public long count() {
+        long result = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            result += bucketCounts.get(i);
+        }
+        return result;
+    }
+
+    public long maxNanos() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the (approximate) smallest value not less than the given
+     * percentage of the recorded values, or zero if nothing was recorded.
+     */
+    public long percentileNanos(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += bucketCounts.get(i);
+            if (seen >= rank) {
+                long bucketMax = i + 1 < BUCKET_COUNT ? bucketLowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(bucketMax, maxNanos());
+            }
+        }
+        return maxNanos();
+    }
+
+    public String toSummaryString() {
+        return String.format(Locale.ROOT, "count=%d, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, p99.9=%.3f ms, max=%.3f ms",
+                count(),
+                toMillis(percentileNanos(50.0)),
+                toMillis(percentileNanos(90.0)),
+                toMillis(percentileNanos(99.0)),
+                toMillis(percentileNanos(99.9)),
+                toMillis(maxNanos())
+        );
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public static void printSummaries(String caption, Map<?, LatencyHistogram> histograms) {
+        System.out.println();
+        System.out.println("## " + caption);
+        histograms.forEach((key, histogram) -> {
+            System.out.println(key + ": " + histogram.toSummaryString());
+        });
+    }
+}
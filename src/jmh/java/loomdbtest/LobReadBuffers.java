@@ -0,0 +1,61 @@
+package loomdbtest;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The buffers reused by a benchmark thread of {@link LobStreamingTest} to read payloads.
+ * The destination file of {@link LobReadMode#CHANNEL_TRANSFER} is overwritten by each
+ * transfer, and deleted at the end of the benchmark.
+ */
+@State(Scope.Thread)
+public class LobReadBuffers {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private byte[] buffer;
+    private Path targetFile;
+    private FileChannel targetChannel;
+
+    @Setup
+    public void setup() throws IOException {
+        buffer = new byte[BUFFER_SIZE];
+        targetFile = Files.createTempFile("loomdbtest-lob-", ".bin");
+        targetChannel = FileChannel.open(targetFile, StandardOpenOption.WRITE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            targetChannel.close();
+        } finally {
+            Files.deleteIfExists(targetFile);
+        }
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Transfers all the remaining bytes of the given channel to the beginning of the file
+     * of this thread, and returns the number of bytes transferred.
+     */
+    public long transferToFile(ReadableByteChannel source) throws IOException {
+        long position = 0;
+        while (true) {
+            long transferred = targetChannel.transferFrom(source, position, Long.MAX_VALUE - position);
+            if (transferred <= 0) {
+                return position;
+            }
+            position += transferred;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package loomdbtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Defines how {@link LobStreamingTest} reads the binary payload of a row.
+ */
+public enum LobReadMode {
+    /**
+     * Reads the whole payload into a new array via {@link ResultSet#getBytes(int) getBytes}.
+     */
+    GET_BYTES {
+        @Override
+        public long read(ResultSet row, int columnIndex, LobReadBuffers buffers, Blackhole blackhole)
+                throws SQLException {
+
+            byte[] payload = row.getBytes(columnIndex);
+            blackhole.consume(payload);
+            return payload.length;
+        }
+    },
+    /**
+     * Copies the payload from {@link ResultSet#getBinaryStream(int) getBinaryStream} through
+     * a buffer reused by the benchmark thread.
+     */
+    BUFFERED_STREAM {
+        @Override
+        public long read(ResultSet row, int columnIndex, LobReadBuffers buffers, Blackhole blackhole)
+                throws SQLException, IOException {
+
+            byte[] buffer = buffers.buffer();
+            long readCount = 0;
+            try (InputStream input = row.getBinaryStream(columnIndex)) {
+                int chunkSize;
+                while ((chunkSize = input.read(buffer)) >= 0) {
+                    readCount += chunkSize;
+                }
+            }
+            blackhole.consume(buffer);
+            return readCount;
+        }
+    },
+    /**
+     * Streams the payload into a file with {@link java.nio.channels.FileChannel#transferFrom transferFrom}.
+     * Since drivers only expose the payload as an {@code InputStream}, the source is a channel
+     * adapting the stream, so the copy is done through the temporary direct buffers of the JDK.
+     */
+    CHANNEL_TRANSFER {
+        @Override
+        public long read(ResultSet row, int columnIndex, LobReadBuffers buffers, Blackhole blackhole)
+                throws SQLException, IOException {
+
+            try (ReadableByteChannel source = Channels.newChannel(row.getBinaryStream(columnIndex))) {
+                return buffers.transferToFile(source);
+            }
+        }
+    };
+
+    /**
+     * Reads the payload in the given column of the current row, and returns the number of bytes read.
+     */
+    public abstract long read(ResultSet row, int columnIndex, LobReadBuffers buffers, Blackhole blackhole)
+            throws SQLException, IOException;
+}
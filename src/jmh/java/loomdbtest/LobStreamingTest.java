@@ -0,0 +1,184 @@
+package loomdbtest;
+
+import com.sun.management.ThreadMXBean;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads large binary payloads from the {@code LOOM_DB_TEST_LOB} table (created by the {@code lob-init}
+ * script) in the way selected by {@link LobReadMode}. The read throughput (in MB/s), and the number
+ * of bytes allocated by the benchmark threads per read are printed after each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+@Fork(1)
+public class LobStreamingTest {
+    private static final String INSERT_QUERY = "INSERT INTO LOOM_DB_TEST_LOB (ID, DATA) VALUES (?, ?)";
+    private static final String SELECT_QUERY = "SELECT DATA FROM LOOM_DB_TEST_LOB WHERE ID = ?";
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The maximum number of concurrent connections. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*1")
+    private String poolSize;
+
+    @Param("SEMAPHORE")
+    private DbPoolType dbPoolType;
+
+    @Param("GET_BYTES")
+    private LobReadMode lobReadMode;
+
+    /**
+     * The size of the payload of each row in KiB.
+     */
+    @Param("1024")
+    private int lobSizeKb;
+
+    /**
+     * The number of rows in the table, each read is from a randomly selected row.
+     */
+    @Param("16")
+    private int lobRowCount;
+
+    private ScopedDataSource dataSource;
+    private DbKeepAliveReference keepAliveReference;
+
+    private final LongAdder readCount = new LongAdder();
+    private final LongAdder readBytes = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile long iterationStartNanos;
+
+    @Setup
+    public void setup() throws Exception {
+        ExceptionHelper.checkArgumentInRange(lobSizeKb, 0, Integer.MAX_VALUE / 1024, "lobSizeKb");
+        ExceptionHelper.checkArgumentInRange(lobRowCount, 1, Integer.MAX_VALUE, "lobRowCount");
+        if (!THREAD_MX_BEAN.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("Measuring the allocated memory is not supported by the JVM.");
+        }
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+
+        int actualPoolSize = DbPoolTest.normalizePoolSize(poolSize);
+        dataSource = dbPoolType.newDataSource(DbPoolSettings.ofPoolSize(actualPoolSize));
+
+        var testedDb = TestedDb.selectedTestedDb();
+        keepAliveReference = testedDb.keepAliveDb();
+
+        dataSource.withConnectionAndGet(testedDb::initDb);
+        dataSource.withConnection(connection -> {
+            createTable(connection, testedDb.loadScript(connection, "lob-init"));
+            insertPayloads(connection);
+        });
+        DbPoolTest.preopenConnections(actualPoolSize, dataSource);
+    }
+
+    private static void createTable(Connection connection, List<String> statements) throws SQLException {
+        for (String statementStr : statements) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(statementStr);
+            }
+        }
+    }
+
+    private void insertPayloads(Connection connection) throws SQLException {
+        // Random content, so that compressing drivers or databases cannot cheat.
+        Random random = new Random(lobRowCount);
+        byte[] payload = new byte[lobSizeKb * 1024];
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_QUERY)) {
+            for (int id = 0; id < lobRowCount; id++) {
+                random.nextBytes(payload);
+                statement.setInt(1, id);
+                statement.setBinaryStream(2, new ByteArrayInputStream(payload), payload.length);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, dataSource);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        readCount.reset();
+        readBytes.reset();
+        allocatedBytes.reset();
+        iterationStartNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        long elapsedNanos = System.nanoTime() - iterationStartNanos;
+        long reads = readCount.sum();
+        long bytes = readBytes.sum();
+
+        System.out.println();
+        System.out.println("## LOB reads (" + lobReadMode + ")");
+        System.out.printf(Locale.ROOT,
+                "reads=%d, throughput=%.2f MB/s, allocated=%.0f bytes/op (%.2f bytes/payload byte)%n",
+                reads,
+                elapsedNanos > 0 ? bytes / BYTES_PER_MB / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1)) : 0.0,
+                reads > 0 ? allocatedBytes.sum() / (double) reads : 0.0,
+                bytes > 0 ? allocatedBytes.sum() / (double) bytes : 0.0
+        );
+    }
+
+    private long readPayload(Connection connection, int id, LobReadBuffers buffers, Blackhole blackhole)
+            throws Exception {
+
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_QUERY)) {
+            statement.setInt(1, id);
+            try (ResultSet rows = statement.executeQuery()) {
+                if (!rows.next()) {
+                    throw new IllegalStateException("Missing payload: " + id);
+                }
+                return lobReadMode.read(rows, 1, buffers, blackhole);
+            }
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void readLob(Blackhole blackhole, LobReadBuffers buffers) throws Exception {
+        int id = ThreadLocalRandom.current().nextInt(lobRowCount);
+
+        long allocatedBefore = THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+        long bytes = dataSource.withConnectionAndGet(connection -> readPayload(connection, id, buffers, blackhole));
+        allocatedBytes.add(THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() - allocatedBefore);
+
+        readCount.increment();
+        readBytes.add(bytes);
+    }
+}
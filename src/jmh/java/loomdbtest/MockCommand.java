@@ -0,0 +1,58 @@
+package loomdbtest;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The simulated effect of an SQL statement executed by the {@link MockDriver}.
+ * The SQL text is not really parsed, only its leading keyword matters, except
+ * for {@code SLEEP(<SECONDS>)} calls which override the latency of the statement.
+ */
+public record MockCommand(
+        boolean query,
+        long latencyNanos,
+        int rowCount,
+        int updateCount
+) {
+    private static final String SLEEP_FUNCTION = "SLEEP(";
+
+    public static MockCommand parse(String sql, MockDbSettings settings) throws SQLException {
+        String normalizedSql = sql.trim().toUpperCase(Locale.ROOT);
+
+        int sleepIndex = normalizedSql.indexOf(SLEEP_FUNCTION);
+        if (sleepIndex >= 0) {
+            int argStart = sleepIndex + SLEEP_FUNCTION.length();
+            int argEnd = normalizedSql.indexOf(')', argStart);
+            if (argEnd > argStart) {
+                String secondsStr = normalizedSql.substring(argStart, argEnd).trim();
+                double seconds;
+                try {
+                    seconds = Double.parseDouble(secondsStr);
+                } catch (NumberFormatException e) {
+                    throw new SQLException("Invalid argument of SLEEP: " + secondsStr, "42000", e);
+                }
+                long latencyNanos = Math.round(seconds * TimeUnit.SECONDS.toNanos(1));
+                return new MockCommand(true, latencyNanos, 1, -1);
+            }
+        }
+
+        long latencyNanos = settings.queryLatencyNanos();
+        if (startsWithAny(normalizedSql, "SELECT", "WITH", "VALUES", "{")) {
+            return new MockCommand(true, latencyNanos, settings.rowCount(), -1);
+        }
+        if (startsWithAny(normalizedSql, "INSERT", "UPDATE", "DELETE", "MERGE")) {
+            return new MockCommand(false, latencyNanos, 0, 1);
+        }
+        return new MockCommand(false, latencyNanos, 0, 0);
+    }
+
+    private static boolean startsWithAny(String str, String... prefixes) {
+        for (String prefix : prefixes) {
+            if (str.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
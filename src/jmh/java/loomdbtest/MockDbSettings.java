@@ -0,0 +1,107 @@
+package loomdbtest;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The settings of a mock database as defined by the URL passed to {@link MockDriver}.
+ * The URL has the following format:
+ * {@code jdbc:loomdbtest:mock:<DB_NAME>[;<KEY>=<VALUE>]*}, where the supported keys are:
+ * <ul>
+ *  <li>{@code locking}: The name of a {@link MockLockingType}. The default is {@code LOCK_FREE}.</li>
+ *  <li>
+ *   {@code lockScope}: {@code CONNECTION} to have a separate lock for each connection,
+ *   or {@code DATABASE} to share a single lock between connections to the same database.
+ *   The default is {@code CONNECTION}.
+ *  </li>
+ *  <li>{@code connectLatencyMs}: The time it takes to open a new connection. The default is 5 ms.</li>
+ *  <li>
+ *   {@code queryLatencyMs}: The time it takes to execute a statement (unless it is a
+ *   {@code SLEEP(<SECONDS>)} call). The default is 1 ms.
+ *  </li>
+ *  <li>{@code rowCount}: The number of rows returned by queries. The default is 3.</li>
+ * </ul>
+ */
+public record MockDbSettings(
+        String databaseName,
+        MockLockingType locking,
+        LockScope lockScope,
+        long connectLatencyNanos,
+        long queryLatencyNanos,
+        int rowCount
+) {
+    public MockDbSettings {
+        Objects.requireNonNull(databaseName, "databaseName");
+        Objects.requireNonNull(locking, "locking");
+        Objects.requireNonNull(lockScope, "lockScope");
+        if (connectLatencyNanos < 0) {
+            throw new IllegalArgumentException("connectLatencyNanos must not be negative.");
+        }
+        if (queryLatencyNanos < 0) {
+            throw new IllegalArgumentException("queryLatencyNanos must not be negative.");
+        }
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount must not be negative.");
+        }
+    }
+
+    public static MockDbSettings parseUrl(String url) throws SQLException {
+        if (!url.startsWith(MockDriver.URL_PREFIX)) {
+            throw new SQLException("Not a mock database URL: " + url);
+        }
+
+        String[] parts = url.substring(MockDriver.URL_PREFIX.length()).split(";");
+        String databaseName = parts[0].trim();
+        MockLockingType locking = MockLockingType.LOCK_FREE;
+        LockScope lockScope = LockScope.CONNECTION;
+        long connectLatencyNanos = TimeUnit.MILLISECONDS.toNanos(5);
+        long queryLatencyNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        int rowCount = 3;
+
+        try {
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i].trim();
+                if (part.isEmpty()) {
+                    continue;
+                }
+
+                int separatorIndex = part.indexOf('=');
+                if (separatorIndex < 0) {
+                    throw new SQLException("Missing value for " + part + " in " + url);
+                }
+                String key = part.substring(0, separatorIndex).trim();
+                String value = part.substring(separatorIndex + 1).trim();
+                switch (key) {
+                    case "locking" -> locking = MockLockingType.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "lockScope" -> lockScope = LockScope.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "connectLatencyMs" -> connectLatencyNanos = parseMillisAsNanos(value);
+                    case "queryLatencyMs" -> queryLatencyNanos = parseMillisAsNanos(value);
+                    case "rowCount" -> rowCount = Integer.parseInt(value);
+                    default -> throw new SQLException("Unsupported mock database option " + key + " in " + url);
+                }
+            }
+
+            return new MockDbSettings(
+                    databaseName,
+                    locking,
+                    lockScope,
+                    connectLatencyNanos,
+                    queryLatencyNanos,
+                    rowCount
+            );
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Invalid mock database URL: " + url, e);
+        }
+    }
+
+    private static long parseMillisAsNanos(String value) {
+        return Math.round(Double.parseDouble(value) * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public enum LockScope {
+        CONNECTION,
+        DATABASE
+    }
+}
@@ -0,0 +1,98 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver which does not connect to any real database, but simulates the
+ * latency of connecting and executing statements. This allows measuring the
+ * connection pools without the noise of a real database engine.
+ * <P>
+ * See {@link MockDbSettings} for the supported URL format.
+ */
+public final class MockDriver implements Driver {
+    public static final String URL_PREFIX = "jdbc:loomdbtest:mock:";
+
+    private static final ConcurrentMap<String, MockLockingType.MockLock> DATABASE_LOCKS = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new MockDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+
+        MockDbSettings settings = MockDbSettings.parseUrl(url);
+        simulateLatency(settings.connectLatencyNanos());
+        return new MockConnection(settings, getLock(settings));
+    }
+
+    private static MockLockingType.MockLock getLock(MockDbSettings settings) {
+        return switch (settings.lockScope()) {
+            case CONNECTION -> settings.locking().newLock();
+            case DATABASE -> DATABASE_LOCKS.computeIfAbsent(
+                    settings.databaseName(),
+                    databaseName -> settings.locking().newLock()
+            );
+        };
+    }
+
+    private static void simulateLatency(long latencyNanos) throws SQLException {
+        if (latencyNanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while connecting.", e);
+        }
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
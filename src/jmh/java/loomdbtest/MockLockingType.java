@@ -0,0 +1,63 @@
+package loomdbtest;
+
+import java.sql.SQLException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Defines how the {@link MockDriver} protects the simulated work of a statement
+ * (including the simulated latency).
+ */
+public enum MockLockingType {
+    /**
+     * Uses an intrinsic lock, so a virtual thread waiting for the simulated
+     * latency pins its carrier thread (just like old drivers do).
+     */
+    SYNCHRONIZED {
+        @Override
+        public MockLock newLock() {
+            Object monitor = new Object();
+            return task -> {
+                synchronized (monitor) {
+                    task.run();
+                }
+            };
+        }
+    },
+    /**
+     * Uses a {@code ReentrantLock}, so virtual threads can unmount while waiting.
+     */
+    REENTRANT_LOCK {
+        @Override
+        public MockLock newLock() {
+            Lock lock = new ReentrantLock();
+            return task -> {
+                lock.lock();
+                try {
+                    task.run();
+                } finally {
+                    lock.unlock();
+                }
+            };
+        }
+    },
+    /**
+     * Does not lock at all, so concurrent statements do not wait for each other.
+     */
+    LOCK_FREE {
+        @Override
+        public MockLock newLock() {
+            return SqlTask::run;
+        }
+    };
+
+    public abstract MockLock newLock();
+
+    public interface MockLock {
+        void runLocked(SqlTask task) throws SQLException;
+    }
+
+    public interface SqlTask {
+        void run() throws SQLException;
+    }
+}
@@ -0,0 +1,1080 @@
+package loomdbtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A forward only, read only result set of {@link MockDriver} having two columns:
+ * {@code COL1} (a string) and {@code R} (a double).
+ */
+public final class MockResultSet implements ResultSet {
+    private static final String COL1_LABEL = "COL1";
+    private static final String R_LABEL = "R";
+    private static final int COLUMN_COUNT = 2;
+    private static final String[] COL1_VALUES = {"A", "B", "C"};
+
+    private final Statement statement;
+    private final int rowCount;
+    private int currentRow;
+    private volatile boolean closed;
+
+    public MockResultSet(Statement statement, int rowCount) {
+        this.statement = Objects.requireNonNull(statement, "statement");
+        this.rowCount = rowCount;
+        this.currentRow = 0;
+        this.closed = false;
+    }
+
+    private static SQLFeatureNotSupportedException unsupported() {
+        return new SQLFeatureNotSupportedException("Not supported by the mock driver.");
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("The result set is closed.");
+        }
+    }
+
+    private int checkColumn(int columnIndex) throws SQLException {
+        checkOpen();
+        if (currentRow <= 0 || currentRow > rowCount) {
+            throw new SQLException("The result set is not positioned on a row.");
+        }
+        if (columnIndex < 1 || columnIndex > COLUMN_COUNT) {
+            throw new SQLException("Invalid column index: " + columnIndex);
+        }
+        return columnIndex;
+    }
+
+    private String col1Value() {
+        return COL1_VALUES[(currentRow - 1) % COL1_VALUES.length];
+    }
+
+    private double rValue() {
+        return 1.0 / currentRow;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        checkOpen();
+        if (currentRow >= rowCount) {
+            currentRow = rowCount + 1;
+            return false;
+        }
+        currentRow++;
+        return currentRow <= rowCount;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        checkOpen();
+        return false;
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        return switch (checkColumn(columnIndex)) {
+            case 1 -> col1Value();
+            case 2 -> Double.toString(rValue());
+            default -> throw new AssertionError(columnIndex);
+        };
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        checkColumn(columnIndex);
+        return currentRow;
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        return switch (checkColumn(columnIndex)) {
+            case 1 -> currentRow;
+            case 2 -> rValue();
+            default -> throw new AssertionError(columnIndex);
+        };
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        return getString(columnIndex).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        return new ByteArrayInputStream(getBytes(columnIndex));
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        checkOpen();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkOpen();
+        return MockResultSetMetaData.INSTANCE;
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        return switch (checkColumn(columnIndex)) {
+            case 1 -> col1Value();
+            case 2 -> rValue();
+            default -> throw new AssertionError(columnIndex);
+        };
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        checkOpen();
+        if (COL1_LABEL.equalsIgnoreCase(columnLabel)) {
+            return 1;
+        }
+        if (R_LABEL.equalsIgnoreCase(columnLabel)) {
+            return 2;
+        }
+        throw new SQLException("Unknown column: " + columnLabel);
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        checkOpen();
+        return currentRow == 0 && rowCount > 0;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        checkOpen();
+        return currentRow > rowCount && rowCount > 0;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        checkOpen();
+        return currentRow == 1;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        checkOpen();
+        return currentRow == rowCount;
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        checkOpen();
+        return currentRow <= rowCount ? currentRow : 0;
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        checkOpen();
+        if (direction != FETCH_FORWARD) {
+            throw unsupported();
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        checkOpen();
+        return FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        checkOpen();
+        return 0;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        checkOpen();
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        checkOpen();
+        return CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream inputStream, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream inputStream, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader reader, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream inputStream, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream inputStream, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, int length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        checkOpen();
+        return statement;
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        checkOpen();
+        return CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader, long length) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
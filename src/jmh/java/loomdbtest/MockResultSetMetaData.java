@@ -0,0 +1,158 @@
+package loomdbtest;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * The metadata of {@link MockResultSet}.
+ */
+public final class MockResultSetMetaData implements ResultSetMetaData {
+    private static final String[] COLUMN_LABELS = {"COL1", "R"};
+    private static final int[] COLUMN_TYPES = {Types.VARCHAR, Types.DOUBLE};
+    private static final String[] COLUMN_TYPE_NAMES = {"VARCHAR", "DOUBLE"};
+    private static final String[] COLUMN_CLASS_NAMES = {String.class.getName(), Double.class.getName()};
+
+    public static final MockResultSetMetaData INSTANCE = new MockResultSetMetaData();
+
+    private MockResultSetMetaData() {
+    }
+
+    private static int checkColumn(int column) throws SQLException {
+        if (column < 1 || column > COLUMN_LABELS.length) {
+            throw new SQLException("Invalid column index: " + column);
+        }
+        return column - 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_LABELS.length;
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        checkColumn(column);
+        return false;
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return COLUMN_TYPES[checkColumn(column)] == Types.VARCHAR;
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        checkColumn(column);
+        return true;
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        checkColumn(column);
+        return false;
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        checkColumn(column);
+        return columnNoNulls;
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        return COLUMN_TYPES[checkColumn(column)] == Types.DOUBLE;
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        checkColumn(column);
+        return 64;
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return COLUMN_LABELS[checkColumn(column)];
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return COLUMN_LABELS[checkColumn(column)];
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        checkColumn(column);
+        return "";
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        checkColumn(column);
+        return 0;
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        checkColumn(column);
+        return 0;
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        checkColumn(column);
+        return "";
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        checkColumn(column);
+        return "";
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        return COLUMN_TYPES[checkColumn(column)];
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return COLUMN_TYPE_NAMES[checkColumn(column)];
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        checkColumn(column);
+        return true;
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        checkColumn(column);
+        return false;
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        checkColumn(column);
+        return false;
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        return COLUMN_CLASS_NAMES[checkColumn(column)];
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
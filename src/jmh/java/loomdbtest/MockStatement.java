@@ -0,0 +1,721 @@
+package loomdbtest;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.BatchUpdateException;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The statement implementation of {@link MockDriver}. The same class is used for
+ * both plain and prepared statements: Prepared statements have their command parsed
+ * up front, and they ignore their parameters.
+ */
+public final class MockStatement implements PreparedStatement {
+    private final MockConnection connection;
+    private final MockCommand preparedCommand;
+    private final List<MockCommand> batch;
+
+    private MockResultSet currentResultSet;
+    private int updateCount;
+    private int maxRows;
+    private volatile int queryTimeoutSeconds;
+    private volatile boolean closed;
+
+    // Executions are numbered, so that a late cancel request cannot affect a later execution.
+    private long lastExecution;
+    private volatile long activeExecution;
+    private volatile long canceledExecution;
+    private volatile Thread executingThread;
+
+    public MockStatement(MockConnection connection, MockCommand preparedCommand) {
+        this.connection = Objects.requireNonNull(connection, "connection");
+        this.preparedCommand = preparedCommand;
+        this.batch = new ArrayList<>();
+        this.currentResultSet = null;
+        this.updateCount = -1;
+        this.maxRows = 0;
+        this.queryTimeoutSeconds = 0;
+        this.closed = false;
+        this.lastExecution = 0;
+        this.activeExecution = 0;
+        this.canceledExecution = 0;
+        this.executingThread = null;
+    }
+
+    private static SQLFeatureNotSupportedException unsupported() {
+        return new SQLFeatureNotSupportedException("Not supported by the mock driver.");
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("The statement is closed.");
+        }
+    }
+
+    private void checkParameter(int parameterIndex) throws SQLException {
+        checkOpen();
+        if (parameterIndex < 1) {
+            throw new SQLException("Invalid parameter index: " + parameterIndex);
+        }
+    }
+
+    private void closeCurrentResult() throws SQLException {
+        MockResultSet resultSet = currentResultSet;
+        currentResultSet = null;
+        updateCount = -1;
+        if (resultSet != null) {
+            resultSet.close();
+        }
+    }
+
+    private boolean execute(MockCommand command) throws SQLException {
+        checkOpen();
+        closeCurrentResult();
+
+        long execution = ++lastExecution;
+        activeExecution = execution;
+        try {
+            connection.runCommand(() -> awaitLatency(execution, command.latencyNanos()));
+        } finally {
+            activeExecution = 0;
+        }
+        if (command.query()) {
+            int rowCount = maxRows > 0 ? Math.min(maxRows, command.rowCount()) : command.rowCount();
+            currentResultSet = new MockResultSet(this, rowCount);
+            return true;
+        } else {
+            updateCount = command.updateCount();
+            return false;
+        }
+    }
+
+    /**
+     * Waits for the simulated latency of the statement honoring {@link #cancel() cancel}
+     * and the query timeout. Note that this method is called while holding the lock
+     * of the connection, which is what allows us to simulate carrier pinning.
+     */
+    private void awaitLatency(long execution, long latencyNanos) throws SQLException {
+        int timeoutSeconds = queryTimeoutSeconds;
+        long waitNanos = timeoutSeconds > 0
+                ? Math.min(latencyNanos, TimeUnit.SECONDS.toNanos(timeoutSeconds))
+                : latencyNanos;
+
+        executingThread = Thread.currentThread();
+        try {
+            long endTime = System.nanoTime() + waitNanos;
+            long remainingNanos = waitNanos;
+            // Checked before waiting, so that statements without latency can be canceled as well.
+            checkNotCanceled(execution);
+            while (remainingNanos > 0) {
+                LockSupport.parkNanos(this, remainingNanos);
+                checkNotCanceled(execution);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while executing the statement.");
+                }
+                remainingNanos = endTime - System.nanoTime();
+            }
+        } finally {
+            executingThread = null;
+        }
+
+        if (waitNanos < latencyNanos) {
+            throw new SQLTimeoutException("The statement timed out after " + timeoutSeconds + " seconds.");
+        }
+    }
+
+    private void checkNotCanceled(long execution) throws SQLException {
+        if (canceledExecution == execution) {
+            throw new SQLException("The statement was canceled.", "HY008");
+        }
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        if (!execute(sql)) {
+            throw new SQLException("The statement did not produce a result set.");
+        }
+        return currentResultSet;
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        if (execute(sql)) {
+            throw new SQLException("The statement produced a result set.");
+        }
+        return updateCount;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        closeCurrentResult();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        checkOpen();
+        return 0;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        checkOpen();
+        return maxRows;
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        checkOpen();
+        maxRows = max;
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        checkOpen();
+        return queryTimeoutSeconds;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        checkOpen();
+        if (seconds < 0) {
+            throw new SQLException("Negative query timeout: " + seconds);
+        }
+        queryTimeoutSeconds = seconds;
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        // Cancels only the current execution (if any), not the ones started later.
+        long execution = activeExecution;
+        if (execution == 0) {
+            return;
+        }
+        canceledExecution = execution;
+        Thread thread = executingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        checkOpen();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return execute(MockCommand.parse(sql, connection.settings()));
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        checkOpen();
+        return currentResultSet;
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        checkOpen();
+        return updateCount;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        checkOpen();
+        closeCurrentResult();
+        return false;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        checkOpen();
+        if (direction != ResultSet.FETCH_FORWARD) {
+            throw unsupported();
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        checkOpen();
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        checkOpen();
+        return 0;
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        checkOpen();
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        checkOpen();
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        checkOpen();
+        batch.add(MockCommand.parse(sql, connection.settings()));
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        checkOpen();
+        batch.clear();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        List<MockCommand> commands = new ArrayList<>(batch);
+        batch.clear();
+
+        int[] result = new int[commands.size()];
+        for (int i = 0; i < result.length; i++) {
+            if (execute(commands.get(i))) {
+                throw new BatchUpdateException("Batched statements must not produce result sets.", result);
+            }
+            result[i] = updateCount;
+        }
+        return result;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return getMoreResults();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return executeUpdate(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return execute(sql);
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        checkOpen();
+        return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        checkOpen();
+        return preparedCommand != null;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        checkOpen();
+        return false;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        if (!execute()) {
+            throw new SQLException("The statement did not produce a result set.");
+        }
+        return currentResultSet;
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        if (execute()) {
+            throw new SQLException("The statement produced a result set.");
+        }
+        return updateCount;
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream inputStream, int length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream inputStream, int length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream inputStream, int length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        checkOpen();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        if (preparedCommand == null) {
+            throw new SQLException("This is not a prepared statement.");
+        }
+        return execute(preparedCommand);
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        checkOpen();
+        if (preparedCommand == null) {
+            throw new SQLException("This is not a prepared statement.");
+        }
+        batch.add(preparedCommand);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        throw unsupported();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream inputStream) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream inputStream) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        checkParameter(parameterIndex);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
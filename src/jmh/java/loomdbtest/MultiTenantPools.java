@@ -0,0 +1,374 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.dbcp2.ConnectionFactory;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * Connection pools of multiple tenants sharing a global connection budget (the maximum number
+ * of connections open at the same time).
+ * <P>
+ * Each tenant has some reserved connections which can only be opened by that tenant. The rest
+ * of the budget is shared, and any tenant can borrow from it (up to its own limit). If the shared
+ * budget is exhausted, a tenant can still borrow the budget of an idle connection another tenant
+ * has borrowed: In this case the idle connection is closed, and the tenant opens a new connection
+ * in its place. Idle connections are kept open (in LIFO order) until they are taken by another tenant.
+ * <P>
+ * Setting the reserved connections to the limit of the tenants makes the pools isolated
+ * from each other (without any borrowing).
+ */
+public final class MultiTenantPools implements AutoCloseable {
+    private final ConnectionFactory connectionFactory;
+    private final Duration acquireTimeout;
+    private final int reservedPerTenant;
+    private final int maxPerTenant;
+    private final int sharedPermits;
+
+    private final Lock mainLock;
+    private final Condition[] tenantConditions;
+    private final List<ArrayDeque<Connection>> idleConnections;
+    private final int[] openCounts;
+    private final int[] waitingCounts;
+    private int usedSharedPermits;
+    private int nextSignaledTenant;
+    private boolean closed;
+
+    private int openTotal;
+    private int peakOpenTotal;
+    private long lastOpenChangeNanos;
+    private long openNanosSum;
+    private long statisticsStartNanos;
+    private long evictionCount;
+
+    /**
+     * @param globalLimit the maximum number of connections open at the same time by all the tenants
+     * @param reservedPerTenant the number of connections each tenant can open regardless of the other tenants
+     * @param maxPerTenant the maximum number of connections a single tenant can have open at the same time
+     * @param acquireTimeout the maximum time to wait for a connection, or {@code null} to wait forever
+     */
+    public MultiTenantPools(
+            ConnectionFactory connectionFactory,
+            int tenantCount,
+            int globalLimit,
+            int reservedPerTenant,
+            int maxPerTenant,
+            Duration acquireTimeout
+    ) {
+        ExceptionHelper.checkArgumentInRange(tenantCount, 1, Integer.MAX_VALUE, "tenantCount");
+        ExceptionHelper.checkArgumentInRange(globalLimit, 1, Integer.MAX_VALUE, "globalLimit");
+        ExceptionHelper.checkArgumentInRange(reservedPerTenant, 0, globalLimit / tenantCount, "reservedPerTenant");
+        ExceptionHelper.checkArgumentInRange(
+                maxPerTenant,
+                Math.max(1, reservedPerTenant),
+                Integer.MAX_VALUE,
+                "maxPerTenant"
+        );
+
+        this.connectionFactory = Objects.requireNonNull(connectionFactory, "connectionFactory");
+        this.acquireTimeout = acquireTimeout;
+        this.reservedPerTenant = reservedPerTenant;
+        this.maxPerTenant = maxPerTenant;
+        this.sharedPermits = globalLimit - tenantCount * reservedPerTenant;
+
+        this.mainLock = new ReentrantLock();
+        this.tenantConditions = new Condition[tenantCount];
+        this.idleConnections = new ArrayList<>(tenantCount);
+        for (int i = 0; i < tenantCount; i++) {
+            tenantConditions[i] = mainLock.newCondition();
+            idleConnections.add(new ArrayDeque<>());
+        }
+        this.openCounts = new int[tenantCount];
+        this.waitingCounts = new int[tenantCount];
+        this.usedSharedPermits = 0;
+        this.nextSignaledTenant = 0;
+        this.closed = false;
+
+        this.openTotal = 0;
+        this.peakOpenTotal = 0;
+        this.lastOpenChangeNanos = System.nanoTime();
+        this.openNanosSum = 0;
+        this.statisticsStartNanos = lastOpenChangeNanos;
+        this.evictionCount = 0;
+    }
+
+    public int tenantCount() {
+        return openCounts.length;
+    }
+
+    /**
+     * Returns the data source providing the connections of the given tenant.
+     */
+    public ScopedDataSource tenant(int tenantIndex) {
+        Objects.checkIndex(tenantIndex, openCounts.length);
+        return new ScopedDataSource() {
+            @Override
+            public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+                Connection connection = acquire(tenantIndex);
+                try {
+                    return function.run(connection);
+                } finally {
+                    release(tenantIndex, connection);
+                }
+            }
+
+            @Override
+            public void close() {
+                // The connections are closed with the MultiTenantPools.
+            }
+        };
+    }
+
+    private Connection acquire(int tenant) throws SQLException, InterruptedException {
+        Lease lease = takeLease(tenant);
+        if (lease.idleConnection() != null) {
+            return lease.idleConnection();
+        }
+
+        if (lease.evictedConnection() != null) {
+            closeQuietly(lease.evictedConnection());
+        }
+        try {
+            return connectionFactory.createConnection();
+        } catch (Throwable e) {
+            mainLock.lock();
+            try {
+                addOpen(tenant, -1);
+                signalWaiters(tenant);
+            } finally {
+                mainLock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private Lease takeLease(int tenant) throws SQLException, InterruptedException {
+        long remainingNanos = acquireTimeout != null ? acquireTimeout.toNanos() : Long.MAX_VALUE;
+
+        mainLock.lock();
+        try {
+            Lease lease = tryTake(tenant);
+            if (lease != null) {
+                return lease;
+            }
+
+            waitingCounts[tenant]++;
+            try {
+                while (true) {
+                    if (acquireTimeout == null) {
+                        tenantConditions[tenant].await();
+                    } else {
+                        if (remainingNanos <= 0) {
+                            throw new SQLTransientConnectionException(
+                                    "Timed out waiting for a connection after " + acquireTimeout
+                            );
+                        }
+                        remainingNanos = tenantConditions[tenant].awaitNanos(remainingNanos);
+                    }
+
+                    lease = tryTake(tenant);
+                    if (lease != null) {
+                        return lease;
+                    }
+                }
+            } finally {
+                waitingCounts[tenant]--;
+                // We might have consumed a signal meant for another waiter.
+                signalWaiters(tenant);
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    private Lease tryTake(int tenant) {
+        if (closed) {
+            throw new IllegalStateException("The pools are closed.");
+        }
+
+        Connection idleConnection = idleConnections.get(tenant).pollLast();
+        if (idleConnection != null) {
+            return new Lease(idleConnection, null);
+        }
+
+        int open = openCounts[tenant];
+        if (open >= maxPerTenant) {
+            return null;
+        }
+        if (open < reservedPerTenant || usedSharedPermits < sharedPermits) {
+            addOpen(tenant, 1);
+            return new Lease(null, null);
+        }
+
+        Connection evictedConnection = tryEvictBorrowed(tenant);
+        if (evictedConnection != null) {
+            addOpen(tenant, 1);
+            return new Lease(null, evictedConnection);
+        }
+        return null;
+    }
+
+    private Connection tryEvictBorrowed(int tenant) {
+        int tenantCount = openCounts.length;
+        for (int i = 1; i < tenantCount; i++) {
+            int other = (tenant + i) % tenantCount;
+            if (openCounts[other] <= reservedPerTenant) {
+                continue;
+            }
+
+            Connection evicted = idleConnections.get(other).pollFirst();
+            if (evicted != null) {
+                addOpen(other, -1);
+                evictionCount++;
+                return evicted;
+            }
+        }
+        return null;
+    }
+
+    private void release(int tenant, Connection connection) {
+        // Drivers report their connection closed after a fatal error.
+        boolean reusable = !isClosedQuietly(connection);
+
+        mainLock.lock();
+        try {
+            reusable &= !closed;
+            if (reusable) {
+                idleConnections.get(tenant).addLast(connection);
+            } else {
+                addOpen(tenant, -1);
+            }
+            signalWaiters(tenant);
+        } finally {
+            mainLock.unlock();
+        }
+
+        if (!reusable) {
+            closeQuietly(connection);
+        }
+    }
+
+    private void addOpen(int tenant, int delta) {
+        int before = openCounts[tenant];
+        int after = before + delta;
+        openCounts[tenant] = after;
+        usedSharedPermits += Math.max(0, after - reservedPerTenant) - Math.max(0, before - reservedPerTenant);
+
+        long now = System.nanoTime();
+        openNanosSum += openTotal * (now - lastOpenChangeNanos);
+        lastOpenChangeNanos = now;
+        openTotal += delta;
+        peakOpenTotal = Math.max(peakOpenTotal, openTotal);
+    }
+
+    /**
+     * Wakes up a waiter of the given tenant if there is any, or the waiter of another tenant otherwise.
+     * The woken up waiter might not be able to take a connection, in which case it waits for the next
+     * signal (this is cheaper than finding out which tenant could take a connection).
+     */
+    private void signalWaiters(int tenant) {
+        if (waitingCounts[tenant] > 0) {
+            tenantConditions[tenant].signal();
+            return;
+        }
+
+        int tenantCount = openCounts.length;
+        for (int i = 0; i < tenantCount; i++) {
+            int other = (nextSignaledTenant + i) % tenantCount;
+            if (waitingCounts[other] > 0) {
+                tenantConditions[other].signal();
+                nextSignaledTenant = (other + 1) % tenantCount;
+                return;
+            }
+        }
+    }
+
+    private static boolean isClosedQuietly(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // The connection is discarded anyway.
+        }
+    }
+
+    /**
+     * Restarts measuring the statistics of the connections held open.
+     */
+    public void resetStatistics() {
+        mainLock.lock();
+        try {
+            long now = System.nanoTime();
+            lastOpenChangeNanos = now;
+            statisticsStartNanos = now;
+            openNanosSum = 0;
+            peakOpenTotal = openTotal;
+            evictionCount = 0;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    public Statistics statistics() {
+        mainLock.lock();
+        try {
+            long now = System.nanoTime();
+            long elapsedNanos = now - statisticsStartNanos;
+            long currentOpenNanosSum = openNanosSum + openTotal * (now - lastOpenChangeNanos);
+            double averageOpen = elapsedNanos > 0 ? currentOpenNanosSum / (double) elapsedNanos : openTotal;
+            return new Statistics(averageOpen, peakOpenTotal, evictionCount);
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        List<Connection> toClose = new ArrayList<>();
+        mainLock.lock();
+        try {
+            closed = true;
+            for (int tenant = 0; tenant < idleConnections.size(); tenant++) {
+                ArrayDeque<Connection> tenantIdleConnections = idleConnections.get(tenant);
+                toClose.addAll(tenantIdleConnections);
+                addOpen(tenant, -tenantIdleConnections.size());
+                tenantIdleConnections.clear();
+            }
+            for (Condition condition : tenantConditions) {
+                condition.signalAll();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        toClose.forEach(MultiTenantPools::closeQuietly);
+    }
+
+    /**
+     * The statistics of the connections held open since the last {@link #resetStatistics() reset}.
+     *
+     * @param averageOpen the time weighted average of the number of connections open
+     * @param peakOpen the maximum number of connections open at the same time
+     * @param evictions the number of idle connections closed to let another tenant open a connection
+     */
+    public record Statistics(double averageOpen, int peakOpen, long evictions) {
+    }
+
+    private record Lease(Connection idleConnection, Connection evictedConnection) {
+    }
+}
@@ -0,0 +1,243 @@
+package loomdbtest;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Runs the connection actions of multiple tenants, each using its own pool, while the total number
+ * of connections is limited by a global budget (see {@link MultiTenantPools}). The tenant of each
+ * action is selected by a Zipfian distribution, so a few tenants produce most of the load.
+ * <P>
+ * Each invocation of the benchmark starts the given number of virtual threads concurrently,
+ * each executing a single action. Besides the throughput of the actions, the latencies of the
+ * busiest tenants, the fairness between the tenants, and the number of connections actually
+ * held open are printed after each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class MultiTenantTest {
+    private static final int MAX_PRINTED_TENANTS = 8;
+
+    /**
+     * The maximum number of connections open at the same time by all tenants. The value is
+     * interpreted the same way as {@link DbPoolTest#poolSize}, but it is raised to {@link #tenantCount}
+     * if it is less, so that every tenant can have a connection (even with few processors).
+     */
+    @Param("*1")
+    private String globalPoolSize;
+
+    @Param("16")
+    private int tenantCount;
+
+    @Param("SHARED")
+    private TenantBudget tenantBudget;
+
+    /**
+     * The number of connections each tenant can open regardless of the load of the other tenants.
+     * Only used by the {@code SHARED} budget.
+     */
+    @Param("1")
+    private int tenantReservedConnections;
+
+    /**
+     * The maximum number of connections a tenant can have open. If not positive, then it is only
+     * limited by the global budget. Only used by the {@code SHARED} budget.
+     */
+    @Param("0")
+    private int tenantMaxConnections;
+
+    /**
+     * The exponent of the Zipfian distribution selecting the tenant of each action.
+     * Zero means that all tenants have the same load.
+     */
+    @Param("1.0")
+    private double tenantSkew;
+
+    /**
+     * The number of actions executed concurrently. The value is interpreted the same way
+     * as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*8")
+    private String concurrentTasks;
+
+    @Param("EXECUTE_SCRIPT")
+    private DbPoolTest.ConnectionActionType connectionAction;
+
+    private MultiTenantPools pools;
+    private ScopedDataSource[] tenantDataSources;
+    private DbKeepAliveReference keepAliveReference;
+    private BenchmarkConnectionAction benchmarkConnectionAction;
+    private ZipfianGenerator tenantGenerator;
+    private int actualConcurrentTasks;
+
+    private LatencyHistogram[] tenantLatencies;
+    private LongAdder[] tenantLatencySumsNanos;
+    private final LongAdder completedActions = new LongAdder();
+    private volatile long iterationStartNanos;
+
+    @Setup
+    public void setup() throws Exception {
+        ExceptionHelper.checkArgumentInRange(tenantCount, 1, Integer.MAX_VALUE, "tenantCount");
+
+        int actualGlobalPoolSize = Math.max(DbPoolTest.normalizePoolSize(globalPoolSize), tenantCount);
+        if (tenantBudget == TenantBudget.SHARED) {
+            validateSharedBudget(actualGlobalPoolSize);
+        }
+        actualConcurrentTasks = DbPoolTest.normalizePoolSize(concurrentTasks);
+
+        var testedDb = TestedDb.selectedTestedDb();
+        keepAliveReference = testedDb.keepAliveDb();
+
+        pools = tenantBudget.newPools(
+                new DriverConnectionFactory(testedDb.connectionInfo()),
+                tenantCount,
+                actualGlobalPoolSize,
+                tenantReservedConnections,
+                tenantMaxConnections > 0 ? tenantMaxConnections : actualGlobalPoolSize,
+                null
+        );
+        tenantDataSources = new ScopedDataSource[tenantCount];
+        tenantLatencies = new LatencyHistogram[tenantCount];
+        tenantLatencySumsNanos = new LongAdder[tenantCount];
+        for (int i = 0; i < tenantCount; i++) {
+            tenantDataSources[i] = pools.tenant(i);
+            tenantLatencies[i] = new LatencyHistogram();
+            tenantLatencySumsNanos[i] = new LongAdder();
+        }
+        tenantGenerator = new ZipfianGenerator(tenantCount, tenantSkew);
+
+        // Every tenant shares the same database, only their pools are separate.
+        benchmarkConnectionAction = connectionAction.createAction(
+                actualGlobalPoolSize,
+                tenantDataSources[0].withConnectionAndGet(testedDb::initDb)
+        );
+    }
+
+    private void validateSharedBudget(int actualGlobalPoolSize) {
+        if (tenantReservedConnections < 0 || (long) tenantReservedConnections * tenantCount > actualGlobalPoolSize) {
+            throw new IllegalArgumentException("tenantReservedConnections=" + tenantReservedConnections
+                    + " connections cannot be reserved for each of tenantCount=" + tenantCount
+                    + " tenants within globalPoolSize=" + globalPoolSize
+                    + " (" + actualGlobalPoolSize + " connections).");
+        }
+        if (tenantMaxConnections > 0 && tenantMaxConnections < tenantReservedConnections) {
+            throw new IllegalArgumentException("tenantMaxConnections=" + tenantMaxConnections
+                    + " must not be less than tenantReservedConnections=" + tenantReservedConnections + ".");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, pools);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        for (int i = 0; i < tenantCount; i++) {
+            tenantLatencies[i].reset();
+            tenantLatencySumsNanos[i].reset();
+        }
+        completedActions.reset();
+        pools.resetStatistics();
+        iterationStartNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        double elapsedSec = (System.nanoTime() - iterationStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        MultiTenantPools.Statistics statistics = pools.statistics();
+
+        System.out.println();
+        System.out.println("## Multi-tenant pools (" + tenantBudget + ")");
+        System.out.printf(Locale.ROOT,
+                "actions=%.1f/s, fairness=%.3f, connections held: average=%.1f, peak=%d, evictions=%d%n",
+                completedActions.sum() / elapsedSec,
+                latencyFairnessIndex(),
+                statistics.averageOpen(),
+                statistics.peakOpen(),
+                statistics.evictions()
+        );
+
+        // The tenants with the lowest index are the busiest ones.
+        Map<String, LatencyHistogram> printedLatencies = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(tenantCount, MAX_PRINTED_TENANTS); i++) {
+            printedLatencies.put("Tenant " + i, tenantLatencies[i]);
+        }
+        if (tenantCount > MAX_PRINTED_TENANTS) {
+            printedLatencies.put("Tenant " + (tenantCount - 1), tenantLatencies[tenantCount - 1]);
+        }
+        LatencyHistogram.printSummaries("Tenant action latencies", printedLatencies);
+    }
+
+    /**
+     * Returns Jain's fairness index of the mean action latencies of the tenants having any action.
+     * The index is 1 if all the tenants see the same latency, and approaches {@code 1 / n}
+     * as a single tenant gets all the delays.
+     */
+    private double latencyFairnessIndex() {
+        double sum = 0;
+        double squareSum = 0;
+        int count = 0;
+        for (int i = 0; i < tenantCount; i++) {
+            long actionCount = tenantLatencies[i].count();
+            if (actionCount > 0) {
+                double meanLatency = tenantLatencySumsNanos[i].sum() / (double) actionCount;
+                sum += meanLatency;
+                squareSum += meanLatency * meanLatency;
+                count++;
+            }
+        }
+        return squareSum > 0 ? sum * sum / (count * squareSum) : 1.0;
+    }
+
+    private void runTenantAction(Blackhole blackhole, AtomicReference<Throwable> failureRef) {
+        try {
+            int tenant = tenantGenerator.next();
+            long startNanos = System.nanoTime();
+            tenantDataSources[tenant].withConnection(connection -> {
+                benchmarkConnectionAction.run(connection, blackhole);
+            });
+            long latencyNanos = System.nanoTime() - startNanos;
+
+            tenantLatencies[tenant].record(latencyNanos);
+            tenantLatencySumsNanos[tenant].add(latencyNanos);
+            completedActions.increment();
+        } catch (Throwable e) {
+            failureRef.compareAndSet(null, e);
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void runTenantActions(Blackhole blackhole) throws Exception {
+        AtomicReference<Throwable> failureRef = new AtomicReference<>();
+        Thread[] threads = new Thread[actualConcurrentTasks];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = Thread.startVirtualThread(() -> runTenantAction(blackhole, failureRef));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ExceptionHelper.rethrowCheckedIfNotNull(failureRef.get(), Exception.class);
+    }
+}
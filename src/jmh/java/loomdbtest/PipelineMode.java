@@ -0,0 +1,29 @@
+package loomdbtest;
+
+/**
+ * Defines how the {@link RowPipelineTest} benchmark overlaps fetching the rows of its query
+ * with processing them.
+ */
+public enum PipelineMode {
+    /**
+     * A virtual thread streams the rows into a bounded queue, while the rows already fetched are
+     * processed in parallel. The connection is released as soon as the last row is fetched.
+     */
+    STREAMING {
+        @Override
+        public RowPipeline.PipelineResult processRows(RowPipeline pipeline) throws Exception {
+            return pipeline.processStreaming();
+        }
+    },
+    /**
+     * Reads all rows into memory, releases the connection, and only then processes the rows in parallel.
+     */
+    FETCH_ALL {
+        @Override
+        public RowPipeline.PipelineResult processRows(RowPipeline pipeline) throws Exception {
+            return pipeline.processFetchedAll();
+        }
+    };
+
+    public abstract RowPipeline.PipelineResult processRows(RowPipeline pipeline) throws Exception;
+}
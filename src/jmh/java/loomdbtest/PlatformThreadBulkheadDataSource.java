@@ -0,0 +1,68 @@
+package loomdbtest;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * Runs the connection actions of the wrapped data source on a fixed number of platform threads,
+ * while the calling (possibly virtual) thread waits for the result. This prevents drivers pinning
+ * the carrier threads from starving the virtual thread scheduler, because they can only pin
+ * the threads of the bulkhead.
+ */
+public final class PlatformThreadBulkheadDataSource implements ScopedDataSource {
+    private final ScopedDataSource wrapped;
+    private final ExecutorService executor;
+
+    public PlatformThreadBulkheadDataSource(int threadCount, ScopedDataSource wrapped) {
+        ExceptionHelper.checkArgumentInRange(threadCount, 1, Integer.MAX_VALUE, "threadCount");
+
+        this.wrapped = Objects.requireNonNull(wrapped, "wrapped");
+        this.executor = Executors.newFixedThreadPool(threadCount, Thread
+                .ofPlatform()
+                .name("db-bulkhead-", 0)
+                .daemon(true)
+                .factory()
+        );
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+        return withConnectionAndGet(ConnectionPriority.INTERACTIVE, function);
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionPriority priority, ConnectionFunction<V> function) throws Exception {
+        Future<V> resultFuture = executor.submit(() -> wrapped.withConnectionAndGet(priority, function));
+        try {
+            return resultFuture.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exceptionCause) {
+                throw exceptionCause;
+            }
+            throw ExceptionHelper.throwUnchecked(cause);
+        } catch (InterruptedException e) {
+            resultFuture.cancel(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Bulkhead executor did not terminate in a reasonable time.");
+            }
+        } catch (InterruptedException e) {
+            throw ExceptionHelper.throwUnchecked(e);
+        } finally {
+            wrapped.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package loomdbtest;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The time a connection action waited for its connection.
+ */
+@Name("loomdbtest.PoolAcquire")
+@Label("Pool Acquire Wait")
+@Category({"Loom DB Test", "Pool"})
+@Description("The time a connection action waited for its connection")
+@Enabled(false)
+@StackTrace(false)
+final class PoolAcquireEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(PoolAcquireEvent.class);
+
+    @Label("Correlation Id")
+    @Description("Identifies the connection action across the pool, connection and statement events")
+    long correlationId;
+
+    @Label("Pool Type")
+    String poolType;
+
+    @Label("Queue Depth")
+    @Description("The number of connection actions already waiting for a connection when this one started waiting")
+    int queueDepth;
+
+    @Label("Connection Id")
+    int connectionId;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
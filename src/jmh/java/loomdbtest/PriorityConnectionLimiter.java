@@ -0,0 +1,160 @@
+package loomdbtest;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * Limits the number of concurrently used connections similarly to a semaphore, but with
+ * separate lanes for each {@link ConnectionPriority}.
+ * <P>
+ * Each lane may have some reserved permits which can only be used by the tasks of that lane.
+ * The rest of the permits are shared, and when they become available, they are handed out
+ * to the waiting task of the highest priority. That is, lower priority tasks cannot take a shared
+ * permit while a higher priority task is waiting for one.
+ */
+public final class PriorityConnectionLimiter {
+    private static final ConnectionPriority[] PRIORITIES = ConnectionPriority.values();
+
+    private final Lock mainLock;
+    private final Condition[] laneConditions;
+    private final int[] reservedPermits;
+    private final int[] usedPermits;
+    private final int[] waitingCounts;
+    private final int sharedPermits;
+    private int usedSharedPermits;
+
+    public PriorityConnectionLimiter(int permitCount, Map<ConnectionPriority, Integer> reservedPermits) {
+        ExceptionHelper.checkArgumentInRange(permitCount, 1, Integer.MAX_VALUE, "permitCount");
+
+        this.mainLock = new ReentrantLock();
+        this.laneConditions = new Condition[PRIORITIES.length];
+        this.reservedPermits = new int[PRIORITIES.length];
+        this.usedPermits = new int[PRIORITIES.length];
+        this.waitingCounts = new int[PRIORITIES.length];
+
+        int allReservedPermits = 0;
+        for (ConnectionPriority priority : PRIORITIES) {
+            int lane = priority.ordinal();
+            int reserved = reservedPermits.getOrDefault(priority, 0);
+            ExceptionHelper.checkArgumentInRange(reserved, 0, permitCount, "reservedPermits." + priority);
+
+            this.laneConditions[lane] = mainLock.newCondition();
+            this.reservedPermits[lane] = reserved;
+            allReservedPermits += reserved;
+        }
+        if (allReservedPermits > permitCount) {
+            throw new IllegalArgumentException("Cannot reserve " + allReservedPermits
+                    + " permits out of " + permitCount);
+        }
+
+        this.sharedPermits = permitCount - allReservedPermits;
+        this.usedSharedPermits = 0;
+    }
+
+    /**
+     * Waits until a permit is available for the given lane and takes it.
+     *
+     * @param timeout the maximum time to wait, or {@code null} to wait forever
+     * @return {@code true} if the permit was taken, {@code false} if timed out
+     */
+    public boolean acquire(ConnectionPriority priority, Duration timeout) throws InterruptedException {
+        int lane = priority.ordinal();
+        long remainingNanos = timeout != null ? timeout.toNanos() : Long.MAX_VALUE;
+
+        mainLock.lock();
+        try {
+            if (tryTake(lane)) {
+                return true;
+            }
+
+            waitingCounts[lane]++;
+            try {
+                while (true) {
+                    if (timeout == null) {
+                        laneConditions[lane].await();
+                    } else {
+                        if (remainingNanos <= 0) {
+                            return false;
+                        }
+                        remainingNanos = laneConditions[lane].awaitNanos(remainingNanos);
+                    }
+
+                    if (tryTake(lane)) {
+                        return true;
+                    }
+                }
+            } finally {
+                waitingCounts[lane]--;
+                // We might have consumed a signal meant for a waiter which could have
+                // taken a permit, so we have to pass on the signal if we have given up.
+                signalWaiters();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    public void release(ConnectionPriority priority) {
+        int lane = priority.ordinal();
+
+        mainLock.lock();
+        try {
+            int used = usedPermits[lane];
+            if (used <= 0) {
+                throw new IllegalStateException("Released more permits than acquired for " + priority);
+            }
+
+            usedPermits[lane] = used - 1;
+            if (used > reservedPermits[lane]) {
+                usedSharedPermits--;
+            }
+            signalWaiters();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    private boolean tryTake(int lane) {
+        if (usedPermits[lane] < reservedPermits[lane]) {
+            usedPermits[lane]++;
+            return true;
+        }
+
+        if (usedSharedPermits < sharedPermits && !hasHigherPriorityWaiter(lane)) {
+            usedPermits[lane]++;
+            usedSharedPermits++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean hasHigherPriorityWaiter(int lane) {
+        for (int i = 0; i < lane; i++) {
+            if (waitingCounts[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void signalWaiters() {
+        boolean sharedAvailable = usedSharedPermits < sharedPermits;
+        for (int lane = 0; lane < PRIORITIES.length; lane++) {
+            if (waitingCounts[lane] <= 0) {
+                continue;
+            }
+
+            if (usedPermits[lane] < reservedPermits[lane]) {
+                laneConditions[lane].signal();
+            } else if (sharedAvailable) {
+                laneConditions[lane].signal();
+                sharedAvailable = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package loomdbtest;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * A read-through cache of query results layered over a {@link ScopedDataSource}. A connection
+ * is only requested from the wrapped data source if the result of the query is not cached, and no
+ * other thread is already executing the same query (in which case its result is shared).
+ * <P>
+ * The results are keyed by the query text (with its whitespace normalized) and its parameters,
+ * and are evicted after the configured TTL, or in approximate LRU order if there are too many of them.
+ * Looking up a cached result does not lock anything. Statements modifying a table evict the results of
+ * the queries reading that table, if they are executed through {@link #update(List) update}, or through a
+ * connection borrowed from this data source. Tables are recognized by simple pattern matching, and
+ * statements not recognized (including every statement created by {@link Connection#createStatement()},
+ * since their SQL is not known in advance) evict every result.
+ */
+public final class QueryCache implements ScopedDataSource {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern QUERY = Pattern.compile("^(?:SELECT|WITH)\\b.*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern QUERIED_TABLE = Pattern.compile(
+            "\\b(?:FROM|JOIN)\\s+([\\w.$\"]+)",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final Pattern MODIFIED_TABLE = Pattern.compile(
+            "^(?:INSERT\\s+INTO|UPDATE|DELETE\\s+FROM|MERGE\\s+INTO|TRUNCATE\\s+TABLE)\\s+([\\w.$\"]+).*",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final String ALL_TABLES = "*";
+
+    /**
+     * The last access time of entries is only updated if it changes at least this much,
+     * so that concurrent hits of the same entry do not keep writing the same cache line.
+     */
+    private static final long ACCESS_TIME_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The fraction of the entries evicted at once when the cache is full, so that the eviction
+     * (which has to find the least recently used entries) does not run for every new entry.
+     */
+    private static final int EVICTION_FRACTION = 16;
+
+    private final ScopedDataSource wrapped;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final ConcurrentMap<QueryKey, CacheEntry> entries;
+    private final Lock updateLock;
+    private final Map<String, Long> tableVersions;
+    private long allTablesVersion;
+    private final ConcurrentMap<QueryKey, CompletableFuture<List<Object[]>>> inFlightQueries;
+
+    private final LongAdder hitCount;
+    private final LongAdder missCount;
+    private final LongAdder sharedLoadCount;
+    private final LongAdder invalidationCount;
+
+    public QueryCache(ScopedDataSource wrapped, int maxEntries, Duration ttl) {
+        ExceptionHelper.checkArgumentInRange(maxEntries, 1, Integer.MAX_VALUE, "maxEntries");
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+
+        this.wrapped = Objects.requireNonNull(wrapped, "wrapped");
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new ConcurrentHashMap<>();
+        this.updateLock = new ReentrantLock();
+        this.tableVersions = new HashMap<>();
+        this.allTablesVersion = 0;
+        this.inFlightQueries = new ConcurrentHashMap<>();
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.sharedLoadCount = new LongAdder();
+        this.invalidationCount = new LongAdder();
+    }
+
+    /**
+     * Returns the rows of the given query, executing it only if its result is not cached.
+     * Each row is an array of its column values.
+     */
+    public List<Object[]> query(String sql, List<?> parameters) throws Exception {
+        QueryKey key = new QueryKey(normalizeSql(sql), List.copyOf(parameters));
+        if (!QUERY.matcher(key.sql()).matches()) {
+            throw new IllegalArgumentException("Not a query: " + sql);
+        }
+
+        List<Object[]> cachedRows = tryGetCached(key);
+        if (cachedRows != null) {
+            hitCount.increment();
+            return cachedRows;
+        }
+
+        CompletableFuture<List<Object[]>> newLoad = new CompletableFuture<>();
+        CompletableFuture<List<Object[]>> existingLoad = inFlightQueries.putIfAbsent(key, newLoad);
+        if (existingLoad != null) {
+            sharedLoadCount.increment();
+            return awaitLoad(existingLoad);
+        }
+
+        missCount.increment();
+        try {
+            Set<String> tables = queriedTables(key.sql());
+            Map<String, Long> versionsBeforeLoad = tableVersions(tables);
+            List<Object[]> rows = wrapped.withConnectionAndGet(connection -> executeQuery(connection, key));
+            tryCache(key, tables, versionsBeforeLoad, rows);
+            newLoad.complete(rows);
+            return rows;
+        } catch (Throwable e) {
+            newLoad.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightQueries.remove(key, newLoad);
+        }
+    }
+
+    /**
+     * Executes the given modifying statements on a single connection, and then evicts the
+     * cached results of the queries reading the modified tables.
+     */
+    public void update(List<String> statements) throws Exception {
+        Set<String> tables = new HashSet<>();
+        for (String statement : statements) {
+            tables.add(modifiedTable(normalizeSql(statement)));
+        }
+
+        try {
+            wrapped.withConnection(connection -> {
+                for (String statement : statements) {
+                    executeUpdate(connection, statement);
+                }
+            });
+        } finally {
+            // Even a failed update might have modified some tables.
+            invalidate(tables);
+        }
+    }
+
+    /**
+     * Executes the given function with a connection of the wrapped data source, bypassing the cache.
+     * The cached results of the queries reading the tables the function might have modified are
+     * evicted after the function returns.
+     */
+    @Override
+    public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+        return withConnectionAndGet(ConnectionPriority.INTERACTIVE, function);
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionPriority priority, ConnectionFunction<V> function) throws Exception {
+        // The function might use the connection from multiple threads.
+        Set<String> modifiedTables = ConcurrentHashMap.newKeySet();
+        try {
+            return wrapped.withConnectionAndGet(
+                    priority,
+                    connection -> function.run(new InvalidatingConnection(connection, modifiedTables))
+            );
+        } finally {
+            if (!modifiedTables.isEmpty()) {
+                invalidate(modifiedTables);
+            }
+        }
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of queries which were not cached, but waited for the
+     * result of the same query already being executed.
+     */
+    public long sharedLoadCount() {
+        return sharedLoadCount.sum();
+    }
+
+    public long invalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+        sharedLoadCount.reset();
+        invalidationCount.reset();
+    }
+
+    @Override
+    public void close() {
+        wrapped.close();
+    }
+
+    private static String normalizeSql(String sql) {
+        return WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+    }
+
+    private static String normalizeTableName(String tableName) {
+        return tableName.replace("\"", "").toUpperCase(Locale.ROOT);
+    }
+
+    private static Set<String> queriedTables(String normalizedSql) {
+        Set<String> result = new HashSet<>();
+        Matcher matcher = QUERIED_TABLE.matcher(normalizedSql);
+        while (matcher.find()) {
+            result.add(normalizeTableName(matcher.group(1)));
+        }
+        return result;
+    }
+
+    private static String modifiedTable(String normalizedSql) {
+        Matcher matcher = MODIFIED_TABLE.matcher(normalizedSql);
+        return matcher.matches() ? normalizeTableName(matcher.group(1)) : ALL_TABLES;
+    }
+
+    private static <V> V awaitLoad(CompletableFuture<V> load) throws Exception {
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exceptionCause) {
+                throw exceptionCause;
+            }
+            throw ExceptionHelper.throwUnchecked(cause);
+        }
+    }
+
+    private static List<Object[]> executeQuery(Connection connection, QueryKey key) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(key.sql())) {
+            List<?> parameters = key.parameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int columnCount = resultSet.getMetaData().getColumnCount();
+                List<Object[]> rows = new ArrayList<>();
+                while (resultSet.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+                return List.copyOf(rows);
+            }
+        }
+    }
+
+    private static void executeUpdate(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (statement.execute(sql)) {
+                statement.getResultSet().close();
+            }
+        }
+    }
+
+    private List<Object[]> tryGetCached(QueryKey key) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        long nowNanos = System.nanoTime();
+        if (nowNanos - entry.expireTimeNanos >= 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        if (nowNanos - entry.lastAccessNanos >= ACCESS_TIME_RESOLUTION_NANOS) {
+            entry.lastAccessNanos = nowNanos;
+        }
+        return entry.rows;
+    }
+
+    private Map<String, Long> tableVersions(Set<String> tables) {
+        updateLock.lock();
+        try {
+            Map<String, Long> result = new HashMap<>();
+            result.put(ALL_TABLES, allTablesVersion);
+            for (String table : tables) {
+                result.put(table, tableVersions.getOrDefault(table, 0L));
+            }
+            return result;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void tryCache(
+            QueryKey key,
+            Set<String> tables,
+            Map<String, Long> versionsBeforeLoad,
+            List<Object[]> rows
+    ) {
+        updateLock.lock();
+        try {
+            // If any of the tables were modified while the query was running, then
+            // we cannot know if the result reflects the modification or not.
+            if (!versionsBeforeLoad.equals(tableVersions(tables))) {
+                return;
+            }
+
+            long nowNanos = System.nanoTime();
+            entries.put(key, new CacheEntry(rows, tables, nowNanos + ttlNanos, nowNanos));
+            if (entries.size() > maxEntries) {
+                evictLeastRecentlyUsed();
+            }
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        List<Map.Entry<QueryKey, CacheEntry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccessNanos));
+
+        int evictCount = candidates.size() - maxEntries + maxEntries / EVICTION_FRACTION;
+        for (int i = 0; i < evictCount && i < candidates.size(); i++) {
+            var candidate = candidates.get(i);
+            entries.remove(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private void invalidate(Set<String> tables) {
+        invalidationCount.increment();
+        boolean allTables = tables.contains(ALL_TABLES);
+
+        updateLock.lock();
+        try {
+            if (allTables) {
+                allTablesVersion++;
+                entries.clear();
+            } else {
+                for (String table : tables) {
+                    tableVersions.merge(table, 1L, Long::sum);
+                }
+                entries.values().removeIf(entry -> !isDisjoint(entry.tables, tables));
+            }
+        } finally {
+            updateLock.unlock();
+        }
+
+        // Queries started before the modification must not be joined by new readers.
+        inFlightQueries.keySet().removeIf(key -> allTables || !isDisjoint(queriedTables(key.sql()), tables));
+    }
+
+    private static boolean isDisjoint(Set<String> tables1, Set<String> tables2) {
+        for (String table : tables1) {
+            if (tables2.contains(table)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record QueryKey(String sql, List<?> parameters) {
+        public QueryKey {
+            Objects.requireNonNull(sql, "sql");
+            Objects.requireNonNull(parameters, "parameters");
+        }
+    }
+
+    private static final class CacheEntry {
+        private final List<Object[]> rows;
+        private final Set<String> tables;
+        private final long expireTimeNanos;
+        private volatile long lastAccessNanos;
+
+        public CacheEntry(List<Object[]> rows, Set<String> tables, long expireTimeNanos, long lastAccessNanos) {
+            this.rows = rows;
+            this.tables = tables;
+            this.expireTimeNanos = expireTimeNanos;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+
+    /**
+     * Records the tables the statements created through it might modify. Prepared statements are
+     * recognized by their SQL, but other statements might execute anything, so they mark every table.
+     */
+    private static final class InvalidatingConnection extends DelegatingConnection {
+        private final Set<String> modifiedTables;
+
+        public InvalidatingConnection(Connection wrapped, Set<String> modifiedTables) {
+            super(wrapped);
+            this.modifiedTables = modifiedTables;
+        }
+
+        private void recordStatement(String sql) {
+            String normalizedSql = normalizeSql(sql);
+            if (!QUERY.matcher(normalizedSql).matches()) {
+                modifiedTables.add(modifiedTable(normalizedSql));
+            }
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            modifiedTables.add(ALL_TABLES);
+            return wrapped.createStatement();
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+            modifiedTables.add(ALL_TABLES);
+            return wrapped.createStatement(resultSetType, resultSetConcurrency);
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            modifiedTables.add(ALL_TABLES);
+            return wrapped.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            recordStatement(sql);
+            return wrapped.prepareStatement(sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            recordStatement(sql);
+            return wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            recordStatement(sql);
+            return wrapped.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            recordStatement(sql);
+            return wrapped.prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+            recordStatement(sql);
+            return wrapped.prepareStatement(sql, columnIndexes);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+            recordStatement(sql);
+            return wrapped.prepareStatement(sql, columnNames);
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql) throws SQLException {
+            modifiedTables.add(ALL_TABLES);
+            return wrapped.prepareCall(sql);
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+            modifiedTables.add(ALL_TABLES);
+            return wrapped.prepareCall(sql, resultSetType, resultSetConcurrency);
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+            modifiedTables.add(ALL_TABLES);
+            return wrapped.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        }
+
+        @Override
+        public void close() {
+            // The connection is owned by the wrapped data source.
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return wrapped.isClosed();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package loomdbtest;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of a mix of reads (the statements of the {@code cache-read} script)
+ * and writes (the statements of the {@code cache-write} script) with and without a {@link QueryCache}
+ * layered over the pool. The hit rate of the cache, and the ratio of reads not requesting a connection
+ * are printed after each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+@Fork(1)
+public class QueryCacheTest {
+    /**
+     * The maximum number of concurrent connections. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*1")
+    private String poolSize;
+
+    @Param("SEMAPHORE")
+    private DbPoolType dbPoolType;
+
+    /**
+     * The percentage (0-100) of the operations reading, the rest of the operations write.
+     */
+    @Param("90")
+    private int readPercent;
+
+    /**
+     * The maximum number of cached query results. If zero, then the cache is not used at all.
+     */
+    @Param("1000")
+    private int cacheSize;
+
+    @Param("1000")
+    private long cacheTtlMs;
+
+    private ScopedDataSource dataSource;
+    private DbKeepAliveReference keepAliveReference;
+    private List<String> readStatements;
+    private List<String> writeStatements;
+    private QueryCache queryCache;
+
+    private final LongAdder readCount = new LongAdder();
+
+    @Setup
+    public void setup() throws Exception {
+        ExceptionHelper.checkArgumentInRange(readPercent, 0, 100, "readPercent");
+
+        int actualPoolSize = DbPoolTest.normalizePoolSize(poolSize);
+        dataSource = dbPoolType.newDataSource(DbPoolSettings.ofPoolSize(actualPoolSize));
+
+        var testedDb = TestedDb.selectedTestedDb();
+        keepAliveReference = testedDb.keepAliveDb();
+
+        dataSource.withConnectionAndGet(testedDb::initDb);
+        dataSource.withConnection(connection -> {
+            readStatements = testedDb.loadScript(connection, "cache-read");
+            writeStatements = testedDb.loadScript(connection, "cache-write");
+        });
+        if (readStatements.isEmpty()) {
+            throw new IllegalStateException("Missing cache-read script for " + testedDb);
+        }
+        DbPoolTest.preopenConnections(actualPoolSize, dataSource);
+
+        if (cacheSize > 0) {
+            queryCache = new QueryCache(dataSource, cacheSize, Duration.ofMillis(cacheTtlMs));
+            // The cache now owns the pool.
+            dataSource = queryCache;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, dataSource);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        readCount.reset();
+        if (queryCache != null) {
+            queryCache.resetStatistics();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        if (queryCache == null) {
+            return;
+        }
+
+        long queryCount = queryCache.hitCount() + queryCache.missCount() + queryCache.sharedLoadCount();
+        long avoidedCount = queryCache.hitCount() + queryCache.sharedLoadCount();
+
+        System.out.println();
+        System.out.println("## Query cache");
+        System.out.printf(Locale.ROOT,
+                "reads=%d, queries=%d, hits=%d (%.2f%%), shared loads=%d, misses=%d,"
+                        + " connection requests avoided=%.2f%%, invalidations=%d%n",
+                readCount.sum(),
+                queryCount,
+                queryCache.hitCount(),
+                toPercent(queryCache.hitCount(), queryCount),
+                queryCache.sharedLoadCount(),
+                queryCache.missCount(),
+                toPercent(avoidedCount, queryCount),
+                queryCache.invalidationCount()
+        );
+    }
+
+    private static double toPercent(long count, long total) {
+        return total > 0 ? 100.0 * count / total : 0.0;
+    }
+
+    private void read(Blackhole blackhole) throws Exception {
+        readCount.increment();
+        if (queryCache != null) {
+            for (String statement : readStatements) {
+                for (Object[] row : queryCache.query(withActionId(statement), List.of())) {
+                    blackhole.consume(row);
+                }
+            }
+        } else {
+            dataSource.withConnection(connection -> {
+                for (String statement : readStatements) {
+                    try (Statement jdbcStatement = connection.createStatement();
+                            ResultSet rows = jdbcStatement.executeQuery(withActionId(statement))) {
+                        while (rows.next()) {
+                            blackhole.consume(rows);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void write() throws Exception {
+        List<String> statements = writeStatements
+                .stream()
+                .map(QueryCacheTest::withActionId)
+                .toList();
+        if (queryCache != null) {
+            queryCache.update(statements);
+        } else {
+            dataSource.withConnection(connection -> {
+                for (String statement : statements) {
+                    try (Statement jdbcStatement = connection.createStatement()) {
+                        jdbcStatement.execute(statement);
+                    }
+                }
+            });
+        }
+    }
+
+    private static String withActionId(String statement) {
+        return statement.replace(SqlScriptUtils.ACTION_ID_PLACEHOLDER, SqlScriptUtils.currentActionId());
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void readOrWrite(Blackhole blackhole) throws Exception {
+        if (ThreadLocalRandom.current().nextInt(100) < readPercent) {
+            read(blackhole);
+        } else {
+            write();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package loomdbtest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.openjdk.jmh.util.ListStatistics;
+
+/**
+ * Compares two runs of the {@link ResultsStore}: Matches the metrics of the same benchmark configurations
+ * (the same benchmark, mode and parameters), and flags the changes where the confidence intervals of the
+ * two runs do not overlap. The confidence intervals are computed from the scores of the measurement
+ * iterations, or taken from JMH (at 99.9%) if there are not enough iterations.
+ * <P>
+ * The comparison is configured by the following system properties:
+ * <ul>
+ *  <li>{@code loomdbtest.resultsStore}: The store containing the runs.</li>
+ *  <li>{@code loomdbtest.testedDb}: Only the runs of this database are considered.</li>
+ *  <li>{@code loomdbtest.compareBaseline}: The run id or label of the baseline run. The default is the run
+ *   before the candidate.</li>
+ *  <li>{@code loomdbtest.compareCandidate}: The run id or label of the candidate run. The default is the
+ *   last run.</li>
+ *  <li>{@code loomdbtest.compareConfidence}: The confidence level of the intervals. The default is 0.99.</li>
+ *  <li>{@code loomdbtest.comparisonOutput}: The file to write the report into, in addition to the standard
+ *   output.</li>
+ * </ul>
+ * If a label selects multiple runs, then the last of them is selected.
+ */
+public final class ResultsComparison {
+    private final StoredRun baseline;
+    private final StoredRun candidate;
+    private final double confidence;
+
+    public ResultsComparison(StoredRun baseline, StoredRun candidate, double confidence) {
+        if (!(confidence > 0.0 && confidence < 1.0)) {
+            throw new IllegalArgumentException("confidence must be in the range (0, 1): " + confidence);
+        }
+
+        this.baseline = Objects.requireNonNull(baseline, "baseline");
+        this.candidate = Objects.requireNonNull(candidate, "candidate");
+        this.confidence = confidence;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var store = new ResultsStore(Path.of(ResultsStore.requiredProperty("loomdbtest.resultsStore")));
+        String testedDb = System.getProperty("loomdbtest.testedDb", "").trim();
+        String testedDbSubtype = System.getProperty("loomdbtest.testedDbSubtype", "").trim();
+        String testedDbName = testedDbSubtype.isEmpty() ? testedDb : testedDb + "." + testedDbSubtype;
+
+        List<StoredRun> runs = new ArrayList<>();
+        for (StoredRun run : store.readRuns()) {
+            if (testedDb.isEmpty() || run.testedDb().equals(testedDbName)) {
+                runs.add(run);
+            }
+        }
+
+        int candidateIndex = selectRun(runs, System.getProperty("loomdbtest.compareCandidate", ""), runs.size());
+        int baselineIndex = selectRun(runs, System.getProperty("loomdbtest.compareBaseline", ""), candidateIndex);
+        double confidence = Double.parseDouble(System.getProperty("loomdbtest.compareConfidence", "0.99"));
+
+        String report = new ResultsComparison(runs.get(baselineIndex), runs.get(candidateIndex), confidence)
+                .formatReport();
+        System.out.println();
+        System.out.print(report);
+
+        String output = System.getProperty("loomdbtest.comparisonOutput", "").trim();
+        if (!output.isEmpty()) {
+            Path outputPath = Path.of(output);
+            Path outputDir = outputPath.toAbsolutePath().getParent();
+            if (outputDir != null) {
+                Files.createDirectories(outputDir);
+            }
+            Files.writeString(outputPath, report);
+        }
+    }
+
+    /**
+     * Returns the index of the last run with the given id or label, or the index of the run before
+     * {@code defaultEnd}, if the selector is empty.
+     */
+    private static int selectRun(List<StoredRun> runs, String selector, int defaultEnd) {
+        String trimmedSelector = selector.trim();
+        if (trimmedSelector.isEmpty()) {
+            if (defaultEnd <= 0) {
+                throw new IllegalStateException("There are not enough runs stored to compare.");
+            }
+            return defaultEnd - 1;
+        }
+
+        for (int i = runs.size() - 1; i >= 0; i--) {
+            StoredRun run = runs.get(i);
+            if (run.runId().equals(trimmedSelector) || run.label().equals(trimmedSelector)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("There is no stored run with id or label: " + trimmedSelector);
+    }
+
+    public String formatReport() {
+        StringBuilder result = new StringBuilder();
+        result.append("Baseline:  ").append(describeRun(baseline)).append('\n');
+        result.append("Candidate: ").append(describeRun(candidate)).append('\n');
+        appendVersionChanges(result);
+        result.append('\n');
+
+        Map<String, BenchmarkMetric> baselineMetrics = metricsByConfiguration(baseline);
+        Map<String, BenchmarkMetric> candidateMetrics = metricsByConfiguration(candidate);
+
+        var paramNames = new TreeSet<String>();
+        candidateMetrics.values().forEach(metric -> paramNames.addAll(metric.params().keySet()));
+
+        List<String[]> rows = new ArrayList<>();
+        List<String> header = new ArrayList<>();
+        header.add("Benchmark");
+        paramNames.forEach(paramName -> header.add("(" + paramName + ")"));
+        header.addAll(List.of("Mode", "Baseline", "", "Error", "Candidate", "", "Error", "Units", "Change", "Verdict"));
+        rows.add(header.toArray(String[]::new));
+
+        Map<Verdict, Integer> verdictCounts = new TreeMap<>();
+        int missingCount = 0;
+        for (BenchmarkMetric candidateMetric : candidateMetrics.values()) {
+            BenchmarkMetric baselineMetric = baselineMetrics.get(candidateMetric.configurationKey());
+            if (baselineMetric == null) {
+                missingCount++;
+                continue;
+            }
+
+            ConfidenceInterval baselineInterval = confidenceInterval(baselineMetric);
+            ConfidenceInterval candidateInterval = confidenceInterval(candidateMetric);
+            Verdict verdict = Verdict.of(candidateMetric, baselineInterval, candidateInterval);
+            verdictCounts.merge(verdict, 1, Integer::sum);
+
+            List<String> row = new ArrayList<>();
+            row.add(candidateMetric.name());
+            paramNames.forEach(paramName -> row.add(candidateMetric.params().getOrDefault(paramName, "N/A")));
+            row.add(candidateMetric.mode());
+            addScoreColumns(row, baselineInterval);
+            addScoreColumns(row, candidateInterval);
+            row.add(candidateMetric.unit());
+            row.add(formatChange(baselineInterval.mean(), candidateInterval.mean()));
+            row.add(verdict.getDisplayName());
+            rows.add(row.toArray(String[]::new));
+        }
+
+        if (rows.size() > 1) {
+            result.append(ResultsStore.formatColumns(rows));
+            result.append('\n');
+        }
+
+        result.append(String.format(Locale.ROOT, "Summary (%.1f%% confidence):", 100.0 * confidence));
+        verdictCounts.forEach((verdict, count) -> {
+            result.append(' ').append(count).append(' ').append(verdict.getDisplayName()).append(',');
+        });
+        result.append(' ').append(missingCount).append(" not in baseline, ");
+        int removedCount = 0;
+        for (String key : baselineMetrics.keySet()) {
+            if (!candidateMetrics.containsKey(key)) {
+                removedCount++;
+            }
+        }
+        result.append(removedCount).append(" not in candidate\n");
+        return result.toString();
+    }
+
+    private static String describeRun(StoredRun run) {
+        String label = run.label().isEmpty() ? "" : " [" + run.label() + "]";
+        return run.runId() + label + " at " + run.timestamp() + ", " + run.jvmVersion();
+    }
+
+    private void appendVersionChanges(StringBuilder result) {
+        Map<String, String> baselineVersions = versionsByModule(baseline);
+        Map<String, String> candidateVersions = versionsByModule(candidate);
+
+        var modules = new TreeSet<String>();
+        modules.addAll(baselineVersions.keySet());
+        modules.addAll(candidateVersions.keySet());
+        for (String module : modules) {
+            String baselineVersion = baselineVersions.getOrDefault(module, "-");
+            String candidateVersion = candidateVersions.getOrDefault(module, "-");
+            if (!baselineVersion.equals(candidateVersion)) {
+                result.append("Changed:   ")
+                        .append(module).append(' ')
+                        .append(baselineVersion).append(" -> ").append(candidateVersion)
+                        .append('\n');
+            }
+        }
+    }
+
+    private static Map<String, String> versionsByModule(StoredRun run) {
+        Map<String, String> result = new TreeMap<>(run.driverVersions());
+        for (String dependency : run.dependencies()) {
+            int versionIndex = dependency.lastIndexOf(':');
+            if (versionIndex > 0) {
+                result.put(dependency.substring(0, versionIndex), dependency.substring(versionIndex + 1));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, BenchmarkMetric> metricsByConfiguration(StoredRun run) {
+        Map<String, BenchmarkMetric> result = new LinkedHashMap<>();
+        for (BenchmarkMetric metric : run.metrics()) {
+            result.put(metric.configurationKey(), metric);
+        }
+        return result;
+    }
+
+    private ConfidenceInterval confidenceInterval(BenchmarkMetric metric) {
+        double[] rawData = metric.rawData();
+        if (rawData.length >= 2) {
+            var statistics = new ListStatistics(rawData);
+            double[] interval = statistics.getConfidenceIntervalAt(confidence);
+            return new ConfidenceInterval(statistics.getMean(), interval[0], interval[1]);
+        }
+
+        double error = Double.isFinite(metric.scoreError()) ? metric.scoreError() : Double.NaN;
+        return new ConfidenceInterval(metric.score(), metric.score() - error, metric.score() + error);
+    }
+
+    private static void addScoreColumns(List<String> row, ConfidenceInterval interval) {
+        row.add(formatScore(interval.mean()));
+        boolean hasError = interval.hasBounds();
+        row.add(hasError ? "±" : "");
+        row.add(hasError ? formatScore(interval.halfWidth()) : "");
+    }
+
+    private static String formatScore(double score) {
+        return String.format(Locale.ROOT, "%.3f", score);
+    }
+
+    private static String formatChange(double baselineScore, double candidateScore) {
+        if (baselineScore == 0.0) {
+            return "N/A";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", 100.0 * (candidateScore - baselineScore) / baselineScore);
+    }
+
+    private record ConfidenceInterval(double mean, double lower, double upper) {
+        public boolean hasBounds() {
+            return Double.isFinite(lower) && Double.isFinite(upper);
+        }
+
+        public double halfWidth() {
+            return (upper - lower) / 2.0;
+        }
+    }
+
+    private enum Verdict {
+        FASTER("faster"),
+        SLOWER("slower"),
+        HIGHER("higher"),
+        LOWER("lower"),
+        UNCHANGED("unchanged"),
+        UNKNOWN("unknown");
+
+        private final String displayName;
+
+        Verdict(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public static Verdict of(
+                BenchmarkMetric metric,
+                ConfidenceInterval baseline,
+                ConfidenceInterval candidate
+        ) {
+            if (!baseline.hasBounds() || !candidate.hasBounds()) {
+                return UNKNOWN;
+            }
+
+            boolean increased = candidate.lower() > baseline.upper();
+            boolean decreased = candidate.upper() < baseline.lower();
+            if (!increased && !decreased) {
+                return UNCHANGED;
+            }
+            if (metric.isSecondary()) {
+                // We do not know if a higher value of a secondary metric is better.
+                return increased ? HIGHER : LOWER;
+            }
+            // Throughput is the only mode where higher scores are better.
+            boolean higherIsBetter = metric.mode().equals("thrpt");
+            return increased == higherIsBetter ? FASTER : SLOWER;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package loomdbtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An append-only store of benchmark runs: A file with the JSON of a {@link StoredRun} in each line.
+ * Runs are never modified or removed, so that any later run can be {@link ResultsComparison compared}
+ * to any earlier one.
+ * <P>
+ * The {@link #main(String[]) main} method appends the JSON results of a JMH run to the store,
+ * and writes them in the human-readable table format of JMH as well. It is configured by the following
+ * system properties:
+ * <ul>
+ *  <li>{@code loomdbtest.jmhResults}: The JSON results written by JMH.</li>
+ *  <li>{@code loomdbtest.resultsText}: The file to write the results table into.</li>
+ *  <li>{@code loomdbtest.resultsStore}: The store to append the run to.</li>
+ *  <li>{@code loomdbtest.runLabel}: An optional label of the run (e.g., the version of the driver tested).</li>
+ *  <li>{@code loomdbtest.dependencies}: The comma separated {@code group:name:version} of the dependencies.</li>
+ * </ul>
+ */
+public final class ResultsStore {
+    private static final DateTimeFormatter RUN_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+
+    private final Path storeFile;
+
+    public ResultsStore(Path storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path jmhResults = Path.of(requiredProperty("loomdbtest.jmhResults"));
+        Path resultsText = Path.of(requiredProperty("loomdbtest.resultsText"));
+        var store = new ResultsStore(Path.of(requiredProperty("loomdbtest.resultsStore")));
+
+        List<Object> benchmarks = Json.asArray(Json.parse(Files.readString(jmhResults)));
+        Files.writeString(resultsText, formatTable(BenchmarkMetric.fromJmhResults(benchmarks)));
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String testedDb = testedDbName();
+        StoredRun run = new StoredRun(
+                now.format(RUN_ID_FORMAT) + "-" + testedDb,
+                now.toString(),
+                testedDb,
+                System.getProperty("loomdbtest.runLabel", "").trim(),
+                driverVersions(),
+                splitList(System.getProperty("loomdbtest.dependencies", "")),
+                benchmarks
+        );
+        store.append(run);
+        System.out.println("Run " + run.runId() + " is stored in " + store.storeFile.toAbsolutePath() + ".");
+    }
+
+    static String requiredProperty(String name) {
+        String value = System.getProperty(name, "").trim();
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Missing required system property: " + name);
+        }
+        return value;
+    }
+
+    private static String testedDbName() {
+        String db = System.getProperty("loomdbtest.testedDb", "").trim();
+        String subtype = System.getProperty("loomdbtest.testedDbSubtype", "").trim();
+        return subtype.isEmpty() ? db : db + "." + subtype;
+    }
+
+    private static List<String> splitList(String values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values.split(",")) {
+            if (!value.isBlank()) {
+                result.add(value.trim());
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> driverVersions() {
+        Map<String, String> result = new TreeMap<>();
+        for (Driver driver : Collections.list(DriverManager.getDrivers())) {
+            String implementationVersion = driver.getClass().getPackage().getImplementationVersion();
+            String version = implementationVersion != null
+                    ? implementationVersion
+                    : driver.getMajorVersion() + "." + driver.getMinorVersion();
+            result.put(driver.getClass().getName(), version);
+        }
+        return result;
+    }
+
+    public void append(StoredRun run) throws IOException {
+        Path storeDir = storeFile.toAbsolutePath().getParent();
+        if (storeDir != null) {
+            Files.createDirectories(storeDir);
+        }
+        Files.writeString(
+                storeFile,
+                Json.write(run.toJson()) + "\n",
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+        );
+    }
+
+    public List<StoredRun> readRuns() throws IOException {
+        if (!Files.exists(storeFile)) {
+            return List.of();
+        }
+
+        List<StoredRun> result = new ArrayList<>();
+        for (String line : Files.readAllLines(storeFile)) {
+            if (!line.isBlank()) {
+                result.add(StoredRun.fromJson(Json.asObject(Json.parse(line))));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the metrics in the same table format as JMH writes its human-readable results.
+     */
+    static String formatTable(List<BenchmarkMetric> metrics) {
+        var paramNames = new TreeSet<String>();
+        metrics.forEach(metric -> paramNames.addAll(metric.params().keySet()));
+
+        List<String[]> rows = new ArrayList<>();
+        List<String> header = new ArrayList<>();
+        header.add("Benchmark");
+        paramNames.forEach(paramName -> header.add("(" + paramName + ")"));
+        header.addAll(List.of("Mode", "Cnt", "Score", "", "Error", "Units"));
+        rows.add(header.toArray(String[]::new));
+
+        for (BenchmarkMetric metric : metrics) {
+            List<String> row = new ArrayList<>();
+            row.add(metric.name());
+            paramNames.forEach(paramName -> row.add(metric.params().getOrDefault(paramName, "N/A")));
+            row.add(metric.mode());
+            int sampleCount = metric.rawData().length;
+            row.add(sampleCount > 0 ? Integer.toString(sampleCount) : "");
+            row.add(formatScore(metric.score()));
+            boolean hasError = Double.isFinite(metric.scoreError());
+            row.add(hasError ? "±" : "");
+            row.add(hasError ? formatScore(metric.scoreError()) : "");
+            row.add(metric.unit());
+            rows.add(row.toArray(String[]::new));
+        }
+
+        return formatColumns(rows);
+    }
+
+    /**
+     * Aligns the given rows into columns: The first column to the left, and the others to the right.
+     */
+    static String formatColumns(List<String[]> rows) {
+        int[] widths = new int[rows.get(0).length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < row.length; i++) {
+                String format = i == 0 ? "%-" + widths[i] + "s" : "  %" + widths[i] + "s";
+                line.append(String.format(Locale.ROOT, format, row[i]));
+            }
+            result.append(line.toString().stripTrailing()).append('\n');
+        }
+        return result.toString();
+    }
+
+    private static String formatScore(double score) {
+        return String.format(Locale.ROOT, "%.3f", score);
+    }
+}
@@ -0,0 +1,236 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads the rows of a query, and maps and aggregates them in a {@link ForkJoinPool}.
+ * The rows are processed in batches: Each batch is a fork/join task, which is split further
+ * if it is larger than the batch size (which is only the case for {@link #processFetchedAll()}).
+ */
+public final class RowPipeline {
+    private static final PipelineRow END_OF_ROWS = new PipelineRow(-1, "");
+
+    /**
+     * The fetch size hint for the driver. Some drivers read all rows into memory
+     * without it (or without disabling auto-commit), which would defeat streaming.
+     */
+    private static final int FETCH_SIZE = 1000;
+
+    private final ScopedDataSource dataSource;
+    private final String query;
+    private final ForkJoinPool processorPool;
+    private final int queueDepth;
+    private final int batchSize;
+    private final long rowCpuWork;
+
+    public RowPipeline(
+            ScopedDataSource dataSource,
+            String query,
+            ForkJoinPool processorPool,
+            int queueDepth,
+            int batchSize,
+            long rowCpuWork
+    ) {
+        this.dataSource = Objects.requireNonNull(dataSource, "dataSource");
+        this.query = Objects.requireNonNull(query, "query");
+        this.processorPool = Objects.requireNonNull(processorPool, "processorPool");
+        this.queueDepth = ExceptionHelper.checkArgumentInRange(queueDepth, 1, Integer.MAX_VALUE, "queueDepth");
+        this.batchSize = ExceptionHelper.checkArgumentInRange(batchSize, 1, Integer.MAX_VALUE, "batchSize");
+        this.rowCpuWork = ExceptionHelper.checkArgumentInRange(rowCpuWork, 0, Long.MAX_VALUE, "rowCpuWork");
+    }
+
+    /**
+     * Fetches the rows in a new virtual thread, and processes them on the calling thread
+     * (and the processor pool) while they are being fetched.
+     */
+    public PipelineResult processStreaming() throws Exception {
+        BlockingQueue<PipelineRow> queue = new ArrayBlockingQueue<>(queueDepth);
+        var failureRef = new AtomicReference<Throwable>();
+        long[] holdNanosRef = new long[1];
+
+        Thread producer = Thread.ofVirtual().name("row-pipeline-producer").start(() -> {
+            try {
+                holdNanosRef[0] = fetchRows(queue::put);
+            } catch (Throwable e) {
+                failureRef.set(e);
+            } finally {
+                putUninterruptibly(queue, END_OF_ROWS);
+            }
+        });
+
+        List<ForkJoinTask<RowAggregate>> batchTasks = new ArrayList<>();
+        boolean consumedAll = false;
+        try {
+            List<PipelineRow> batch = new ArrayList<>(batchSize);
+            boolean endOfRows = false;
+            while (!endOfRows) {
+                batch.add(queue.take());
+                // Takes whatever else is available without blocking, to avoid a handoff for each row.
+                queue.drainTo(batch, batchSize - batch.size());
+
+                // The end marker is the last element the producer ever adds.
+                int lastIndex = batch.size() - 1;
+                if (batch.get(lastIndex) == END_OF_ROWS) {
+                    batch.remove(lastIndex);
+                    endOfRows = true;
+                }
+                if (batch.size() >= batchSize) {
+                    batchTasks.add(processorPool.submit(new ProcessRowsTask(batch, 0, batch.size())));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchTasks.add(processorPool.submit(new ProcessRowsTask(batch, 0, batch.size())));
+            }
+            consumedAll = true;
+        } finally {
+            if (!consumedAll) {
+                // Unblocks the producer, so that it can release its connection.
+                producer.interrupt();
+                queue.clear();
+            }
+            producer.join();
+        }
+        ExceptionHelper.rethrowCheckedIfNotNull(failureRef.get(), Exception.class);
+
+        RowAggregate result = RowAggregate.EMPTY;
+        for (ForkJoinTask<RowAggregate> batchTask : batchTasks) {
+            result = result.combine(batchTask.join());
+        }
+        return new PipelineResult(result.rowCount(), result.checksum(), holdNanosRef[0]);
+    }
+
+    /**
+     * Fetches all rows into memory first, and processes them after the connection was released.
+     */
+    public PipelineResult processFetchedAll() throws Exception {
+        List<PipelineRow> rows = new ArrayList<>();
+        long holdNanos = fetchRows(rows::add);
+
+        RowAggregate result = processorPool.invoke(new ProcessRowsTask(rows, 0, rows.size()));
+        return new PipelineResult(result.rowCount(), result.checksum(), holdNanos);
+    }
+
+    private static void putUninterruptibly(BlockingQueue<PipelineRow> queue, PipelineRow row) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(row);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Passes the rows of the query to the given consumer, and returns the time the connection was held for.
+     */
+    private long fetchRows(RowConsumer rowConsumer) throws Exception {
+        return dataSource.withConnectionAndGet(connection -> {
+            long holdStartNanos = System.nanoTime();
+            fetchRows(connection, rowConsumer);
+            return System.nanoTime() - holdStartNanos;
+        });
+    }
+
+    private void fetchRows(Connection connection, RowConsumer rowConsumer) throws Exception {
+        // Postgres only streams the rows with a cursor, if auto-commit is disabled.
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        rowConsumer.accept(new PipelineRow(rows.getLong(1), rows.getString(2)));
+                    }
+                }
+            }
+            connection.commit();
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private long mapRow(PipelineRow row) {
+        Blackhole.consumeCPU(rowCpuWork);
+        return 31 * row.id() + row.payload().hashCode();
+    }
+
+    /**
+     * The outcome of processing all rows of the query.
+     *
+     * @param rowCount the number of rows processed
+     * @param checksum the aggregate of the mapped rows
+     * @param connectionHoldNanos the time the connection was held while fetching the rows
+     */
+    public record PipelineResult(long rowCount, long checksum, long connectionHoldNanos) {
+    }
+
+    private interface RowConsumer {
+        void accept(PipelineRow row) throws Exception;
+    }
+
+    private record PipelineRow(long id, String payload) {
+    }
+
+    private record RowAggregate(long rowCount, long checksum) {
+        public static final RowAggregate EMPTY = new RowAggregate(0, 0);
+
+        public RowAggregate combine(RowAggregate other) {
+            return new RowAggregate(rowCount + other.rowCount, checksum + other.checksum);
+        }
+    }
+
+    private final class ProcessRowsTask extends RecursiveTask<RowAggregate> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<PipelineRow> rows;
+        private final int fromIndex;
+        private final int toIndex;
+
+        public ProcessRowsTask(List<PipelineRow> rows, int fromIndex, int toIndex) {
+            this.rows = rows;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        protected RowAggregate compute() {
+            if (toIndex - fromIndex > batchSize) {
+                int middleIndex = (fromIndex + toIndex) >>> 1;
+                var left = new ProcessRowsTask(rows, fromIndex, middleIndex);
+                left.fork();
+                RowAggregate right = new ProcessRowsTask(rows, middleIndex, toIndex).compute();
+                return left.join().combine(right);
+            }
+
+            long checksum = 0;
+            for (int i = fromIndex; i < toIndex; i++) {
+                checksum += mapRow(rows.get(i));
+            }
+            return new RowAggregate(toIndex - fromIndex, checksum);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads all rows of the {@code LOOM_DB_TEST_PIPELINE} table (created by the {@code pipeline-init} script),
+ * and maps and aggregates them in parallel in the way selected by {@link PipelineMode}. The end-to-end
+ * throughput (in rows/s), and the time the connection was held for are printed after each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+@Fork(1)
+public class RowPipelineTest {
+    private static final String INSERT_QUERY = "INSERT INTO LOOM_DB_TEST_PIPELINE (ID, PAYLOAD) VALUES (?, ?)";
+    private static final String SELECT_QUERY = "SELECT ID, PAYLOAD FROM LOOM_DB_TEST_PIPELINE";
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    @Param("SEMAPHORE")
+    private DbPoolType dbPoolType;
+
+    @Param("STREAMING")
+    private PipelineMode pipelineMode;
+
+    /**
+     * The parallelism of the fork/join pool processing the rows. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*1")
+    private String pipelineParallelism;
+
+    /**
+     * The maximum number of rows fetched, but not yet taken for processing.
+     */
+    @Param("1024")
+    private int pipelineQueueDepth;
+
+    /**
+     * The maximum number of rows processed by a single fork/join task.
+     */
+    @Param("256")
+    private int pipelineBatchSize;
+
+    /**
+     * The number of rows in the table.
+     */
+    @Param("10000")
+    private int pipelineRowCount;
+
+    /**
+     * The amount of CPU work of mapping a single row, as defined by {@link Blackhole#consumeCPU(long)}.
+     */
+    @Param("100")
+    private long rowCpuWork;
+
+    private ScopedDataSource dataSource;
+    private DbKeepAliveReference keepAliveReference;
+    private ForkJoinPool processorPool;
+    private RowPipeline pipeline;
+
+    private final LatencyHistogram endToEndTimes = new LatencyHistogram();
+    private final LatencyHistogram connectionHoldTimes = new LatencyHistogram();
+    private final LongAdder processedRows = new LongAdder();
+    private final LongAdder endToEndNanos = new LongAdder();
+    private final LongAdder connectionHoldNanos = new LongAdder();
+    private volatile long iterationStartNanos;
+
+    @Setup
+    public void setup() throws Exception {
+        ExceptionHelper.checkArgumentInRange(pipelineQueueDepth, 1, Integer.MAX_VALUE, "pipelineQueueDepth");
+        ExceptionHelper.checkArgumentInRange(pipelineBatchSize, 1, Integer.MAX_VALUE, "pipelineBatchSize");
+        ExceptionHelper.checkArgumentInRange(pipelineRowCount, 0, Integer.MAX_VALUE, "pipelineRowCount");
+        ExceptionHelper.checkArgumentInRange(rowCpuWork, 0, Long.MAX_VALUE, "rowCpuWork");
+
+        // There is a single benchmark thread, and it only uses a single connection at a time.
+        dataSource = dbPoolType.newDataSource(DbPoolSettings.ofPoolSize(1));
+
+        var testedDb = TestedDb.selectedTestedDb();
+        keepAliveReference = testedDb.keepAliveDb();
+
+        dataSource.withConnectionAndGet(testedDb::initDb);
+        dataSource.withConnection(connection -> {
+            createTable(connection, testedDb.loadScript(connection, "pipeline-init"));
+            insertRows(connection);
+        });
+
+        processorPool = new ForkJoinPool(DbPoolTest.normalizePoolSize(pipelineParallelism));
+        pipeline = new RowPipeline(
+                dataSource,
+                SELECT_QUERY,
+                processorPool,
+                pipelineQueueDepth,
+                pipelineBatchSize,
+                rowCpuWork
+        );
+        DbPoolTest.preopenConnections(1, dataSource);
+    }
+
+    private static void createTable(Connection connection, List<String> statements) throws SQLException {
+        for (String statementStr : statements) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(statementStr);
+            }
+        }
+    }
+
+    private void insertRows(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_QUERY)) {
+            for (int id = 0; id < pipelineRowCount; id++) {
+                statement.setLong(1, id);
+                statement.setString(2, "row-" + id);
+                statement.addBatch();
+                if ((id + 1) % INSERT_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, dataSource, processorPool::shutdown);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        endToEndTimes.reset();
+        connectionHoldTimes.reset();
+        processedRows.reset();
+        endToEndNanos.reset();
+        connectionHoldNanos.reset();
+        iterationStartNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        long elapsedNanos = System.nanoTime() - iterationStartNanos;
+        long rows = processedRows.sum();
+        long endToEnd = endToEndNanos.sum();
+
+        System.out.println();
+        System.out.println("## Row pipeline (" + pipelineMode + ")");
+        System.out.printf(Locale.ROOT,
+                "rows=%d, throughput=%.0f rows/s, connection held for %.1f%% of the end-to-end time%n",
+                rows,
+                elapsedNanos > 0 ? rows / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1)) : 0.0,
+                endToEnd > 0 ? 100.0 * connectionHoldNanos.sum() / endToEnd : 0.0
+        );
+        System.out.println("end-to-end: " + endToEndTimes.toSummaryString());
+        System.out.println("connection hold: " + connectionHoldTimes.toSummaryString());
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void processRows(Blackhole blackhole) throws Exception {
+        long startNanos = System.nanoTime();
+        RowPipeline.PipelineResult result = pipelineMode.processRows(pipeline);
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        blackhole.consume(result.checksum());
+        endToEndTimes.record(elapsedNanos);
+        endToEndNanos.add(elapsedNanos);
+        connectionHoldTimes.record(result.connectionHoldNanos());
+        connectionHoldNanos.add(result.connectionHoldNanos());
+        processedRows.add(result.rowCount());
+    }
+}
@@ -1,8 +1,18 @@
 package loomdbtest;
 
+import org.openjdk.jmh.infra.Blackhole;
+
 public interface ScopedDataSource extends AutoCloseable {
     <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception;
 
+    /**
+     * Executes the given function with a connection requested with the given priority.
+     * The default implementation ignores the priority.
+     */
+    default <V> V withConnectionAndGet(ConnectionPriority priority, ConnectionFunction<V> function) throws Exception {
+        return withConnectionAndGet(function);
+    }
+
     default void withConnection(ConnectionAction action) throws Exception {
         withConnectionAndGet(connection -> {
             action.run(connection);
@@ -10,6 +20,22 @@ public interface ScopedDataSource extends AutoCloseable {
         });
     }
 
+    default void withConnection(ConnectionPriority priority, ConnectionAction action) throws Exception {
+        withConnectionAndGet(priority, connection -> {
+            action.run(connection);
+            return null;
+        });
+    }
+
+    /**
+     * Executes the given benchmark action with a connection. Implementations should override this
+     * method without allocating anything themselves (beyond what borrowing the connection allocates),
+     * so that the measured borrow path does not allocate a closure capturing the blackhole for each call.
+     */
+    default void withConnection(BenchmarkConnectionAction action, Blackhole blackhole) throws Exception {
+        withConnection(connection -> action.run(connection, blackhole));
+    }
+
     @Override
     void close();
 }
@@ -0,0 +1,51 @@
+package loomdbtest;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Spreads the connection requests between multiple independent data sources (usually
+ * connecting to separate database instances). The data sources are selected in round-robin
+ * order for each connection action. Routing by the id of the thread would not spread the load
+ * evenly, because thread ids are allocated in patterns (e.g., JMH might create every other thread),
+ * so all actions could end up in the same shard. The rows of an action still live in the same shard,
+ * because an action never outlives its connection.
+ */
+public final class ShardedDataSource implements ScopedDataSource {
+    private final ScopedDataSource[] shards;
+    private final AtomicInteger nextShardIndex;
+
+    public ShardedDataSource(List<? extends ScopedDataSource> shards) {
+        this.shards = shards.toArray(ScopedDataSource[]::new);
+        ExceptionHelper.checkArgumentInRange(this.shards.length, 1, Integer.MAX_VALUE, "shards.size()");
+        ExceptionHelper.checkNotNullElements(this.shards, "shards");
+        this.nextShardIndex = new AtomicInteger(0);
+    }
+
+    private ScopedDataSource selectShard() {
+        int routingKey = nextShardIndex.getAndIncrement();
+        return shards[Integer.remainderUnsigned(routingKey, shards.length)];
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionFunction<V> function) throws Exception {
+        return selectShard().withConnectionAndGet(function);
+    }
+
+    @Override
+    public <V> V withConnectionAndGet(ConnectionPriority priority, ConnectionFunction<V> function) throws Exception {
+        return selectShard().withConnectionAndGet(priority, function);
+    }
+
+    @Override
+    public void withConnection(BenchmarkConnectionAction action, Blackhole blackhole) throws Exception {
+        selectShard().withConnection(action, blackhole);
+    }
+
+    @Override
+    public void close() {
+        DbPoolTest.closeAll(shards);
+    }
+}
@@ -22,6 +22,13 @@ import java.util.TimeZone;
 
 public final class SqlScriptUtils {
     private static final String SQL_SCRIPT_DIR_PROPERTY = "loomdbtest.sqlScriptDir";
+    private static final String COMMON_SCRIPT_DIR_NAME = "common";
+
+    /**
+     * The placeholder in the statements to be replaced with a value unique to the executing thread
+     * (see {@link #currentActionId()}).
+     */
+    public static final String ACTION_ID_PLACEHOLDER = "@ACTION_ID@";
 
     private static final Path SQL_SCRIPT_DIR = tryGetSqlScriptDir();
 
@@ -128,13 +135,40 @@ public final class SqlScriptUtils {
         }
     }
 
+    public static String currentActionId() {
+        return "X" + Thread.currentThread().threadId();
+    }
+
+    /**
+     * Returns the given file from the script directory of the given database, or from the
+     * common script directory if the database does not have such a file. Returns {@code null}
+     * if neither have it.
+     */
+    private static Path tryGetScriptFile(String dbName, String... candidates) {
+        Path scriptDir = getValidSqlScriptDir();
+        Path result = tryGetExistingFile(scriptDir.resolve(dbName), candidates);
+        if (result == null) {
+            result = tryGetExistingFile(scriptDir.resolve(COMMON_SCRIPT_DIR_NAME), candidates);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the content of the given (non-template) file in the script directory of the given database
+     * (or in the common script directory), or {@code null} if there is no such file.
+     */
+    public static String tryReadScriptFile(String dbName, String fileName) throws IOException {
+        Path file = tryGetScriptFile(dbName, fileName);
+        return file != null ? Files.readString(file) : null;
+    }
+
     public static List<String> loadSqlScriptStatements(
             SqlScriptParameters parameters,
             String dbName,
             String scriptBaseName
     ) throws IOException {
-        Path scriptFile = tryGetExistingFile(
-                getValidSqlScriptDir().resolve(dbName),
+        Path scriptFile = tryGetScriptFile(
+                dbName,
                 scriptBaseName + ".sql.ftl",
                 scriptBaseName + ".sql"
         );
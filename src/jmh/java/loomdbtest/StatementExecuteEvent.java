@@ -0,0 +1,59 @@
+package loomdbtest;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The execution of a single statement of a SQL script (including reading its result).
+ */
+@Name("loomdbtest.StatementExecute")
+@Label("Statement Execute")
+@Category({"Loom DB Test", "SQL"})
+@Description("The execution of a statement of a SQL script, including reading its result")
+@Enabled(false)
+@StackTrace(false)
+final class StatementExecuteEvent extends Event {
+    static final EventType TYPE = EventType.getEventType(StatementExecuteEvent.class);
+
+    private static final int MAX_FINGERPRINT_LENGTH = 200;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final ConcurrentMap<String, String> FINGERPRINTS = new ConcurrentHashMap<>();
+
+    @Label("Correlation Id")
+    @Description("Identifies the connection action across the pool, connection and statement events")
+    long correlationId;
+
+    @Label("SQL Fingerprint")
+    @Description("The statement with its literals replaced by '?'")
+    String sqlFingerprint;
+
+    @Label("Row Count")
+    @Description("The number of rows read or updated, or -1 if unknown")
+    long rowCount;
+
+    /**
+     * Returns the statement with its whitespace normalized and its literals replaced, so that
+     * the executions of the same statement with different values can be grouped together.
+     */
+    static String fingerprint(String sql) {
+        return FINGERPRINTS.computeIfAbsent(sql, StatementExecuteEvent::computeFingerprint);
+    }
+
+    private static String computeFingerprint(String sql) {
+        String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = WHITESPACE.matcher(result.trim()).replaceAll(" ");
+        return result.length() > MAX_FINGERPRINT_LENGTH ? result.substring(0, MAX_FINGERPRINT_LENGTH) : result;
+    }
+}
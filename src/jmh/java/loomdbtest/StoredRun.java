@@ -0,0 +1,87 @@
+package loomdbtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A single benchmark run in the {@link ResultsStore}.
+ *
+ * @param runId the unique id of the run
+ * @param timestamp the time the run was stored (in ISO-8601 format)
+ * @param testedDb the database the run was executed against (including its subtype, if any)
+ * @param label the user defined label of the run (e.g., the version of the driver tested), or an empty string
+ * @param driverVersions the version of each JDBC driver available to the benchmarks, keyed by the driver class
+ * @param dependencies the {@code group:name:version} coordinates of the dependencies of the benchmarks
+ * @param benchmarks the JSON results of JMH, as they were written by JMH
+ */
+public record StoredRun(
+        String runId,
+        String timestamp,
+        String testedDb,
+        String label,
+        Map<String, String> driverVersions,
+        List<String> dependencies,
+        List<Object> benchmarks
+) {
+    public StoredRun {
+        Objects.requireNonNull(runId, "runId");
+        Objects.requireNonNull(timestamp, "timestamp");
+        Objects.requireNonNull(testedDb, "testedDb");
+        Objects.requireNonNull(label, "label");
+        driverVersions = Map.copyOf(driverVersions);
+        dependencies = List.copyOf(dependencies);
+        benchmarks = List.copyOf(benchmarks);
+    }
+
+    public static StoredRun fromJson(Map<String, Object> json) {
+        Map<String, String> driverVersions = new LinkedHashMap<>();
+        Json.asObject(json.get("driverVersions")).forEach((key, value) -> driverVersions.put(key, value.toString()));
+
+        List<String> dependencies = new ArrayList<>();
+        Json.asArray(json.get("dependencies")).forEach(dependency -> dependencies.add(dependency.toString()));
+
+        return new StoredRun(
+                json.get("runId").toString(),
+                json.get("timestamp").toString(),
+                json.get("testedDb").toString(),
+                Objects.toString(json.get("label"), ""),
+                driverVersions,
+                dependencies,
+                Json.asArray(json.get("benchmarks"))
+        );
+    }
+
+    public Map<String, Object> toJson() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("runId", runId);
+        result.put("timestamp", timestamp);
+        result.put("testedDb", testedDb);
+        result.put("label", label);
+        result.put("driverVersions", driverVersions);
+        result.put("dependencies", dependencies);
+        result.put("benchmarks", benchmarks);
+        return result;
+    }
+
+    public List<BenchmarkMetric> metrics() {
+        return BenchmarkMetric.fromJmhResults(benchmarks);
+    }
+
+    /**
+     * Returns the version of the JVM the benchmarks were executed on, as reported by JMH.
+     */
+    public String jvmVersion() {
+        for (Object benchmarkObj : benchmarks) {
+            Map<String, Object> benchmark = Json.asObject(benchmarkObj);
+            Object vmName = benchmark.get("vmName");
+            Object jdkVersion = benchmark.get("jdkVersion");
+            if (vmName != null || jdkVersion != null) {
+                return vmName + " " + jdkVersion;
+            }
+        }
+        return "unknown";
+    }
+}
@@ -0,0 +1,75 @@
+package loomdbtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the outcomes of the connection actions of the tasks, so that the goodput
+ * (the number of actions completing within their deadline) can be reported as a
+ * secondary result of the benchmark.
+ * <P>
+ * The tasks record into striped counters, which are only published into the
+ * reported fields at the end of each benchmark invocation.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class TaskOutcomes {
+    public long goodOps;
+    public long lateOps;
+    public long shedOps;
+    public long acquireTimeoutOps;
+    public long executionTimeoutOps;
+
+    private final Map<Outcome, LongAdder> pendingCounts;
+
+    public TaskOutcomes() {
+        pendingCounts = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            pendingCounts.put(outcome, new LongAdder());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        goodOps = 0;
+        lateOps = 0;
+        shedOps = 0;
+        acquireTimeoutOps = 0;
+        executionTimeoutOps = 0;
+        pendingCounts.values().forEach(LongAdder::reset);
+    }
+
+    void record(Outcome outcome) {
+        pendingCounts.get(outcome).increment();
+    }
+
+    void record(DeadlineExceededException.Reason reason) {
+        record(switch (reason) {
+            case SHED -> Outcome.SHED;
+            case ACQUIRE_TIMEOUT -> Outcome.ACQUIRE_TIMEOUT;
+            case EXECUTION_TIMEOUT -> Outcome.EXECUTION_TIMEOUT;
+        });
+    }
+
+    void publish() {
+        goodOps += pendingCounts.get(Outcome.GOOD).sumThenReset();
+        lateOps += pendingCounts.get(Outcome.LATE).sumThenReset();
+        shedOps += pendingCounts.get(Outcome.SHED).sumThenReset();
+        acquireTimeoutOps += pendingCounts.get(Outcome.ACQUIRE_TIMEOUT).sumThenReset();
+        executionTimeoutOps += pendingCounts.get(Outcome.EXECUTION_TIMEOUT).sumThenReset();
+    }
+
+    public enum Outcome {
+        GOOD,
+        LATE,
+        SHED,
+        ACQUIRE_TIMEOUT,
+        EXECUTION_TIMEOUT
+    }
+}
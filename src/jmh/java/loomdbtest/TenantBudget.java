@@ -0,0 +1,76 @@
+package loomdbtest;
+
+import java.time.Duration;
+import org.apache.commons.dbcp2.ConnectionFactory;
+
+/**
+ * Defines how the global connection budget is divided between the tenants of {@link MultiTenantPools}.
+ */
+public enum TenantBudget {
+    /**
+     * Each tenant has its own pool with an equal share of the global budget, and cannot
+     * use the connections of other tenants even if they are idle.
+     */
+    ISOLATED {
+        @Override
+        public MultiTenantPools newPools(
+                ConnectionFactory connectionFactory,
+                int tenantCount,
+                int globalLimit,
+                int reservedPerTenant,
+                int maxPerTenant,
+                Duration acquireTimeout
+        ) {
+            int tenantShare = globalLimit / tenantCount;
+            if (tenantShare <= 0) {
+                throw new IllegalArgumentException("Cannot split " + globalLimit
+                        + " connections between " + tenantCount + " tenants.");
+            }
+            return new MultiTenantPools(
+                    connectionFactory,
+                    tenantCount,
+                    globalLimit,
+                    tenantShare,
+                    tenantShare,
+                    acquireTimeout
+            );
+        }
+    },
+    /**
+     * Each tenant has some reserved connections, and can borrow the rest of the budget
+     * (including the idle connections of other tenants) up to its own limit.
+     */
+    SHARED {
+        @Override
+        public MultiTenantPools newPools(
+                ConnectionFactory connectionFactory,
+                int tenantCount,
+                int globalLimit,
+                int reservedPerTenant,
+                int maxPerTenant,
+                Duration acquireTimeout
+        ) {
+            return new MultiTenantPools(
+                    connectionFactory,
+                    tenantCount,
+                    globalLimit,
+                    reservedPerTenant,
+                    maxPerTenant,
+                    acquireTimeout
+            );
+        }
+    };
+
+    /**
+     * Creates the pools of the tenants. The reserved and maximum connections per tenant are
+     * ignored if the budget type implies them.
+     */
+    public abstract MultiTenantPools newPools(
+            ConnectionFactory connectionFactory,
+            int tenantCount,
+            int globalLimit,
+            int reservedPerTenant,
+            int maxPerTenant,
+            Duration acquireTimeout
+    );
+}
@@ -10,49 +10,57 @@ import java.sql.Statement;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import org.jtrim2.utils.ExceptionHelper;
 
 public enum TestedDb {
     H2(
-            connectionKeepAlive(),
-            new JdbcConnectionInfo("jdbc:h2:mem:dbpooltest")
+            "dbpooltest",
+            h2KeepAlive(),
+            TestedDb::h2ConnectionInfo
     ),
     HSQL(
+            "dbpooltest",
             runCommandOnCloseKeepAlive("SHUTDOWN"),
-            new JdbcConnectionInfo("jdbc:hsqldb:mem:dbpooltest")
+            TestedDb::hsqlConnectionInfo
     ),
     POSTGRES(
             noopKeepAlive(),
-            new JdbcConnectionInfo(
+            unsharded(new JdbcConnectionInfo(
                     "jdbc:postgresql://localhost:5432/loomdbtest",
                     JdbcCredential.DEFAULT
-            )
+            ))
     ),
     MARIA(
             noopKeepAlive(),
-            new JdbcConnectionInfo(
+            unsharded(new JdbcConnectionInfo(
                     "jdbc:mariadb://localhost:3306/loomdbtest",
                     JdbcCredential.DEFAULT
-            )
+            ))
     ),
     DERBY(
-            javaDbKeepAlive("loomdbtest"),
-            new JdbcConnectionInfo(
-                    "jdbc:derby:memory:loomdbtest;create=true"
-            )
+            "loomdbtest",
+            javaDbKeepAlive(),
+            TestedDb::derbyConnectionInfo
     ),
     MSSQL(
             noopKeepAlive(),
-            new JdbcConnectionInfo(
+            unsharded(new JdbcConnectionInfo(
                     "jdbc:sqlserver://localhost:1433;encrypt=false;databaseName=loomdbtest;integratedSecurity=false;",
                     JdbcCredential.DEFAULT
-            )
+            ))
     ),
     ORACLE(
             noopKeepAlive(),
-            new JdbcConnectionInfo(
+            unsharded(new JdbcConnectionInfo(
                     "jdbc:oracle:thin:@localhost:1521/loomdbtest",
                     JdbcCredential.DEFAULT
-            )
+            ))
+    ),
+    MOCK(
+            noopKeepAlive(),
+            shard -> mockConnectionInfo(shardDbName("dbpooltest", shard))
     );
 
     private static final TestedDb TESTED_DB;
@@ -67,74 +75,231 @@ public enum TestedDb {
                     e
             );
         }
+
+        if (TESTED_DB == DERBY && DbStorage.syncPolicy() == DbSyncPolicy.ASYNC) {
+            // This is a system wide setting, which must be set before Derby boots.
+            System.setProperty("derby.system.durability", "test");
+        }
     }
 
+    private final String storedDbName;
     private final DbKeepAliveStarter keepAliveStarter;
-    private final JdbcConnectionInfo connectionInfo;
+    private final IntFunction<JdbcConnectionInfo> shardConnectionInfos;
 
     TestedDb(
             DbKeepAliveStarter keepAliveStarter,
-            JdbcConnectionInfo connectionInfo
+            IntFunction<JdbcConnectionInfo> shardConnectionInfos
     ) {
+        this.storedDbName = null;
         this.keepAliveStarter = keepAliveStarter;
-        this.connectionInfo = connectionInfo;
+        this.shardConnectionInfos = shardConnectionInfos;
+    }
+
+    /**
+     * Creates a database running within the JVM which can store its files on disk
+     * (depending on {@link DbStorage#storageMode()}).
+     */
+    TestedDb(
+            String storedDbName,
+            DbKeepAliveStarter keepAliveStarter,
+            Function<String, JdbcConnectionInfo> connectionInfoOfDbName
+    ) {
+        this.storedDbName = storedDbName;
+        this.keepAliveStarter = keepAliveStarter;
+        this.shardConnectionInfos = shard -> connectionInfoOfDbName.apply(shardDbName(storedDbName, shard));
+    }
+
+    private static String shardDbName(String dbName, int shard) {
+        return shard == 0 ? dbName : dbName + "_" + shard;
+    }
+
+    private static IntFunction<JdbcConnectionInfo> unsharded(JdbcConnectionInfo connectionInfo) {
+        return shard -> {
+            if (shard != 0) {
+                throw new UnsupportedOperationException("Cannot start multiple instances of a database server.");
+            }
+            return connectionInfo;
+        };
+    }
+
+    private static JdbcConnectionInfo h2ConnectionInfo(String dbName) {
+        String syncOptions = switch (DbStorage.syncPolicy()) {
+            case DEFAULT -> "";
+            // H2 does not sync on commit, but at least writes the changes immediately.
+            case COMMIT -> ";WRITE_DELAY=0";
+            case ASYNC -> ";WRITE_DELAY=1000";
+        };
+        return new JdbcConnectionInfo(switch (DbStorage.storageMode()) {
+            case MEMORY -> "jdbc:h2:mem:" + dbName;
+            case FILE -> "jdbc:h2:file:" + DbStorage.dbFilePath(dbName) + syncOptions;
+            case NIO -> "jdbc:h2:nio:" + DbStorage.dbFilePath(dbName) + syncOptions;
+            case NIO_MAPPED -> "jdbc:h2:nioMapped:" + DbStorage.dbFilePath(dbName) + syncOptions;
+        });
+    }
+
+    private static JdbcConnectionInfo hsqlConnectionInfo(String dbName) {
+        // Tables of HSQL are kept in memory by default even if the database is stored in files,
+        // and only the log is written to disk. Cached tables are stored in the data file.
+        String fileOptions = ";hsqldb.default_table_type=cached" + switch (DbStorage.syncPolicy()) {
+            case DEFAULT -> "";
+            case COMMIT -> ";hsqldb.write_delay=false";
+            case ASYNC -> ";hsqldb.write_delay=true";
+        };
+        return new JdbcConnectionInfo(switch (DbStorage.storageMode()) {
+            case MEMORY -> "jdbc:hsqldb:mem:" + dbName;
+            case FILE -> "jdbc:hsqldb:file:" + DbStorage.dbFilePath(dbName) + fileOptions
+                    + ";hsqldb.nio_data_file=false";
+            case NIO_MAPPED -> "jdbc:hsqldb:file:" + DbStorage.dbFilePath(dbName) + fileOptions
+                    + ";hsqldb.nio_data_file=true";
+            case NIO -> throw unsupportedStorage(HSQL);
+        });
+    }
+
+    private static JdbcConnectionInfo derbyConnectionInfo(String dbName) {
+        return new JdbcConnectionInfo(switch (DbStorage.storageMode()) {
+            case MEMORY -> "jdbc:derby:memory:" + dbName + ";create=true";
+            case FILE -> "jdbc:derby:" + DbStorage.dbFilePath(dbName) + ";create=true";
+            case NIO, NIO_MAPPED -> throw unsupportedStorage(DERBY);
+        });
+    }
+
+    private static UnsupportedOperationException unsupportedStorage(TestedDb testedDb) {
+        return new UnsupportedOperationException(
+                "Storage mode " + DbStorage.storageMode() + " is not supported by " + testedDb
+        );
     }
 
     private static String selectedTestDbSubtype() {
         return System.getProperty("loomdbtest.testedDbSubtype", "").trim().toUpperCase(Locale.ROOT);
     }
 
+    private static JdbcConnectionInfo mockConnectionInfo(String dbName) {
+        var url = new StringBuilder(MockDriver.URL_PREFIX).append(dbName);
+        for (String subtypePart : selectedTestDbSubtype().split("\\.")) {
+            for (MockLockingType locking : MockLockingType.values()) {
+                if (locking.name().equals(subtypePart)) {
+                    url.append(";locking=").append(locking.name());
+                }
+            }
+        }
+
+        var mockDbOptions = System.getProperty("loomdbtest.mockDbOptions", "").trim();
+        if (!mockDbOptions.isEmpty()) {
+            url.append(';').append(mockDbOptions);
+        }
+        return new JdbcConnectionInfo(url.toString());
+    }
+
     public static TestedDb selectedTestedDb() {
         return TESTED_DB;
     }
 
     public DbKeepAliveReference keepAliveDb() throws SQLException {
-        return keepAliveStarter.keepAliveDb(this);
+        return keepAliveDb(0);
+    }
+
+    /**
+     * Keeps the given shard of this database alive until the returned reference is closed.
+     * Closing the reference shuts down the database (if it is running within the JVM), and
+     * deletes its files if it was stored on disk.
+     */
+    public DbKeepAliveReference keepAliveDb(int shard) throws SQLException {
+        return keepAliveDb(shard, IsolatedDriver.DEFAULT_VARIANT);
+    }
+
+    /**
+     * Keeps the given shard of this database alive the same way as {@link #keepAliveDb(int)}, except
+     * that the database is accessed through the given variant of the driver. This matters for databases
+     * running within the JVM, because each driver variant has its own instance of the database.
+     */
+    public DbKeepAliveReference keepAliveDb(int shard, String driverVariant) throws SQLException {
+        DbKeepAliveReference dbReference = keepAliveStarter.keepAliveDb(connectionInfo(shard, driverVariant));
+        if (storedDbName == null || !DbStorage.storageMode().isPersistent()) {
+            return dbReference;
+        }
+
+        String dbName = shardDbName(storedDbName, shard);
+        return () -> {
+            try {
+                dbReference.close();
+            } finally {
+                DbStorage.deleteDbDirectory(dbName);
+            }
+        };
     }
 
     public JdbcConnectionInfo connectionInfo() {
-        return connectionInfo;
+        return connectionInfo(0);
+    }
+
+    /**
+     * Returns the connection info of an independent instance of this database. Shard zero
+     * is the same database as returned by {@link #connectionInfo()}. Only the databases
+     * running within the JVM support multiple shards.
+     */
+    public JdbcConnectionInfo connectionInfo(int shard) {
+        ExceptionHelper.checkArgumentInRange(shard, 0, Integer.MAX_VALUE, "shard");
+        return shardConnectionInfos.apply(shard);
+    }
+
+    /**
+     * Returns the connection info of the given shard (see {@link #connectionInfo(int)}), connecting through
+     * the given variant of the driver (see {@link IsolatedDriver}).
+     */
+    public JdbcConnectionInfo connectionInfo(int shard, String driverVariant) {
+        return connectionInfo(shard).withDriverVariant(driverVariant);
     }
 
     public Connection newConnection() throws SQLException {
-        JdbcCredential credential = connectionInfo.credential();
-        if (credential != null) {
-            return DriverManager.getConnection(
-                    connectionInfo.jdbcUrl(),
-                    credential.username(),
-                    credential.password()
-            );
-        } else {
-            return DriverManager.getConnection(connectionInfo.jdbcUrl());
-        }
+        return connectionInfo().newConnection();
     }
 
     public BenchmarkConnectionAction initDb(Connection connection) throws SQLException {
-        String dbName = name().toLowerCase(Locale.ROOT);
+        List<String> initScripts = loadScript(connection, "init", "Init Statements");
+        List<String> benchmarkScripts = loadScript(connection, "benchmark", "Benchmark Statements");
+
+        executeStatements(connection, initScripts);
+        return toBenchmarkAction(benchmarkScripts);
+    }
+
+    /**
+     * Returns an action executing the statements of the given script of this database.
+     */
+    public BenchmarkConnectionAction loadBenchmarkAction(Connection connection, String scriptBaseName) {
+        return toBenchmarkAction(loadScript(connection, scriptBaseName));
+    }
+
+    /**
+     * Returns the name of the directory containing the scripts of this database.
+     */
+    public String scriptDirName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Loads the statements of the given script of this database (without executing them).
+     * The {@code @ACTION_ID@} placeholders are not replaced in the returned statements.
+     */
+    public List<String> loadScript(Connection connection, String scriptBaseName) {
+        return loadScript(connection, scriptBaseName, "Statements of " + scriptBaseName);
+    }
+
+    private List<String> loadScript(Connection connection, String scriptBaseName, String caption) {
+        String dbName = scriptDirName();
         boolean sleep = selectedTestDbSubtype().endsWith("SLEEP");
 
-        List<String> initScripts;
-        List<String> benchmarkScripts;
+        List<String> statements;
         try {
-            initScripts = SqlScriptUtils.loadSqlScriptStatements(
+            statements = SqlScriptUtils.loadSqlScriptStatements(
                     new SqlScriptParameters(connection, sleep),
                     dbName,
-                    "init"
+                    scriptBaseName
             );
-            printStatements("Init Statements", initScripts);
-
-            benchmarkScripts = SqlScriptUtils.loadSqlScriptStatements(
-                    new SqlScriptParameters(connection, sleep),
-                    dbName,
-                    "benchmark"
-            );
-            printStatements("Benchmark Statements", benchmarkScripts);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-
-        executeStatements(connection, initScripts);
-        return toBenchmarkAction(benchmarkScripts);
+        printStatements(caption, statements);
+        return statements;
     }
 
     private static void printStatements(String caption, List<String> statements) {
@@ -152,9 +317,12 @@ public enum TestedDb {
     ) {
         return (connection, blackhole) -> {
             executeStatements(connection, actionScripts, resultSet -> {
+                long rowCount = 0;
                 while (resultSet.next()) {
                     blackhole.consume(resultSet);
+                    rowCount++;
                 }
+                return rowCount;
             });
         };
     }
@@ -163,7 +331,7 @@ public enum TestedDb {
             Connection connection,
             List<String> statements
     ) throws SQLException {
-        executeStatements(connection, statements, resultSet -> { });
+        executeStatements(connection, statements, resultSet -> -1);
     }
 
     private static void executeStatements(
@@ -171,17 +339,40 @@ public enum TestedDb {
             List<String> statements,
             ResultSetAction resultSetAction
     ) throws SQLException {
-        String actionId = "X" + Thread.currentThread().threadId();
+        String actionId = SqlScriptUtils.currentActionId();
         for (String statement : statements) {
-            executeStatement(
-                    connection,
-                    statement.replace("@ACTION_ID@", actionId),
-                    resultSetAction)
-            ;
+            String resolvedStatement = statement.replace(SqlScriptUtils.ACTION_ID_PLACEHOLDER, actionId);
+            if (StatementExecuteEvent.TYPE.isEnabled()) {
+                executeTracedStatement(connection, statement, resolvedStatement, resultSetAction);
+            } else {
+                executeStatement(connection, resolvedStatement, resultSetAction);
+            }
         }
     }
 
-    private static void executeStatement(
+    private static void executeTracedStatement(
+            Connection connection,
+            String unresolvedStatementStr,
+            String statementStr,
+            ResultSetAction resultSetAction
+    ) throws SQLException {
+        var event = new StatementExecuteEvent();
+        event.correlationId = JfrTracingDataSource.currentCorrelationId();
+        event.sqlFingerprint = StatementExecuteEvent.fingerprint(unresolvedStatementStr);
+        event.rowCount = -1;
+        event.begin();
+        try {
+            event.rowCount = executeStatement(connection, statementStr, resultSetAction);
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the number of rows read by the given action, or the update count if the
+     * statement did not return a result set.
+     */
+    private static long executeStatement(
             Connection connection,
             String statementStr,
             ResultSetAction resultSetAction
@@ -189,17 +380,20 @@ public enum TestedDb {
         try (Statement statement = connection.createStatement()) {
             if (statement.execute(statementStr)) {
                 try (ResultSet rows = statement.getResultSet()) {
-                    resultSetAction.processResultSet(rows);
+                    return resultSetAction.processResultSet(rows);
                 }
             }
+            return statement.getUpdateCount();
         }
     }
 
-    private static DbKeepAliveStarter javaDbKeepAlive(String dbName) {
-        return db -> () -> {
+    private static DbKeepAliveStarter javaDbKeepAlive() {
+        return connectionInfo -> () -> {
+            // Only in-memory databases can be dropped, the files of others are deleted after the shutdown.
+            String closeAttribute = DbStorage.storageMode().isPersistent() ? ";shutdown=true" : ";drop=true";
             try {
                 DriverManager
-                        .getConnection("jdbc:derby:memory:" + dbName + ";drop=true")
+                        .getConnection(connectionInfo.jdbcUrl().replace(";create=true", closeAttribute))
                         .close();
             } catch (SQLException e) {
                 // Java DB responds with an exception on success
@@ -213,17 +407,34 @@ public enum TestedDb {
     }
 
     private static DbKeepAliveStarter connectionKeepAlive() {
-        return db -> db.newConnection()::close;
+        return connectionInfo -> connectionInfo.newConnection()::close;
+    }
+
+    private static DbKeepAliveStarter h2KeepAlive() {
+        return connectionInfo -> {
+            if (!DbStorage.storageMode().isPersistent()) {
+                return connectionKeepAlive().keepAliveDb(connectionInfo);
+            }
+
+            // Closing the connection is not enough to close the database files if the pool
+            // still has open connections.
+            Connection connection = connectionInfo.newConnection();
+            return () -> {
+                try (connection; Statement statement = connection.createStatement()) {
+                    statement.execute("SHUTDOWN");
+                }
+            };
+        };
     }
 
     private static DbKeepAliveStarter noopKeepAlive() {
-        return db -> () -> { };
+        return connectionInfo -> () -> { };
     }
 
     private static DbKeepAliveStarter runCommandOnCloseKeepAlive(String command) {
-        return db -> {
+        return connectionInfo -> {
             return () -> {
-                try (Connection connection = db.newConnection();
+                try (Connection connection = connectionInfo.newConnection();
                         Statement statement = connection.createStatement()
                 ) {
                     if (statement.execute(command)) {
@@ -235,10 +446,13 @@ public enum TestedDb {
     }
 
     private interface ResultSetAction {
-        void processResultSet(ResultSet resultSet) throws SQLException;
+        /**
+         * Returns the number of rows read, or -1 if the rows were not counted.
+         */
+        long processResultSet(ResultSet resultSet) throws SQLException;
     }
 
     private interface DbKeepAliveStarter {
-        DbKeepAliveReference keepAliveDb(TestedDb db) throws SQLException;
+        DbKeepAliveReference keepAliveDb(JdbcConnectionInfo connectionInfo) throws SQLException;
     }
 }
@@ -0,0 +1,379 @@
+package loomdbtest;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Samples the {@code ThreadLocal} (and {@code InheritableThreadLocal}) values of virtual threads right before
+ * they finish their task. Since a virtual thread is never reused, all these values are built for a single task,
+ * and become garbage after it. The values are attributed to the class responsible for them: The subclass of
+ * {@code ThreadLocal}, the supplier of {@link ThreadLocal#withInitial(Supplier) withInitial}, or the class of the
+ * value for plain {@code ThreadLocal} instances.
+ * <P>
+ * The size of the values is estimated by walking the objects reachable from them (assuming compressed oops).
+ * The walk does not follow references to objects obviously shared with other threads (e.g., connections,
+ * classes and threads), nor the referents of weak and soft references, and stops at {@link #MAX_WALK_DEPTH}.
+ * So, the estimate is an approximation of the retained size.
+ * <P>
+ * Reading the thread locals requires {@code --add-opens java.base/java.lang=ALL-UNNAMED}. Objects of other
+ * JDK packages not opened are only counted by their shallow size.
+ */
+public final class ThreadLocalAuditor {
+    private static final int MAX_WALK_DEPTH = 6;
+    private static final int MAX_WALK_OBJECTS = 10_000;
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    // ThreadLocalMap.Entry: header + referent, queue, next, discovered + value.
+    private static final long ENTRY_BYTES = align(OBJECT_HEADER_BYTES + 5 * REFERENCE_BYTES);
+    // The names of hidden classes (lambdas) contain their address.
+    private static final Pattern HIDDEN_CLASS_SUFFIX = Pattern.compile("\\+0x[0-9a-fA-F]+|/0x[0-9a-fA-F]+");
+
+    private static final ThreadLocalAccess THREAD_LOCAL_ACCESS = ThreadLocalAccess.tryCreate();
+    private static final ConcurrentMap<Class<?>, List<Field>> INSTANCE_FIELDS = new ConcurrentHashMap<>();
+
+    private final int sampleInterval;
+    private final AtomicLong taskCounter;
+    private final LongAdder sampledThreadCount;
+    private final ConcurrentMap<String, Usage> usageByOwner;
+
+    public ThreadLocalAuditor(int sampleInterval) {
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException("sampleInterval must be positive: " + sampleInterval);
+        }
+        if (THREAD_LOCAL_ACCESS == null) {
+            throw new IllegalStateException("The thread locals cannot be read."
+                    + " Run with --add-opens java.base/java.lang=ALL-UNNAMED");
+        }
+
+        this.sampleInterval = sampleInterval;
+        this.taskCounter = new AtomicLong(0);
+        this.sampledThreadCount = new LongAdder();
+        this.usageByOwner = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns a new auditor if enabled by the {@code loomdbtest.threadLocalAudit} system property,
+     * or {@code null} otherwise. The {@code loomdbtest.threadLocalAuditInterval} system property defines
+     * which tasks are sampled (every Nth).
+     */
+    public static ThreadLocalAuditor tryCreateFromSystemProperties() {
+        if (!Boolean.getBoolean("loomdbtest.threadLocalAudit")) {
+            return null;
+        }
+        return new ThreadLocalAuditor(Integer.getInteger("loomdbtest.threadLocalAuditInterval", 16));
+    }
+
+    /**
+     * Samples the thread locals of the current thread, if it is a virtual thread, and it was selected
+     * for sampling. This method is expected to be called at the end of the task of the thread.
+     */
+    public void sampleCurrentThread() {
+        Thread thread = Thread.currentThread();
+        if (!thread.isVirtual() || taskCounter.getAndIncrement() % sampleInterval != 0) {
+            return;
+        }
+
+        sampledThreadCount.increment();
+        sampleMap(THREAD_LOCAL_ACCESS.threadLocals(thread));
+        sampleMap(THREAD_LOCAL_ACCESS.inheritableThreadLocals(thread));
+    }
+
+    private void sampleMap(Object threadLocalMap) {
+        if (threadLocalMap == null) {
+            return;
+        }
+
+        Object[] table = THREAD_LOCAL_ACCESS.table(threadLocalMap);
+        if (table == null) {
+            // The map of threads not supporting thread locals.
+            return;
+        }
+        // The map itself: Header + table, size, threshold; and its table.
+        usage("java.lang.ThreadLocal$ThreadLocalMap").add(0, align(OBJECT_HEADER_BYTES + REFERENCE_BYTES + 8)
+                + arraySize(table.length, REFERENCE_BYTES));
+
+        for (Object entry : table) {
+            if (entry == null) {
+                continue;
+            }
+            ThreadLocal<?> threadLocal = (ThreadLocal<?>) ((Reference<?>) entry).get();
+            Object value = THREAD_LOCAL_ACCESS.value(entry);
+            usage(ownerName(threadLocal, value)).add(1, ENTRY_BYTES + estimateSize(value));
+        }
+    }
+
+    private Usage usage(String owner) {
+        return usageByOwner.computeIfAbsent(owner, key -> new Usage());
+    }
+
+    private static String ownerName(ThreadLocal<?> threadLocal, Object value) {
+        if (threadLocal == null) {
+            return "<stale entry>";
+        }
+
+        Class<?> ownerClass = threadLocal.getClass();
+        if (ownerClass == ThreadLocal.class || ownerClass == InheritableThreadLocal.class) {
+            ownerClass = value != null ? value.getClass() : ownerClass;
+        } else if (THREAD_LOCAL_ACCESS.isSuppliedThreadLocal(threadLocal)) {
+            Supplier<?> supplier = THREAD_LOCAL_ACCESS.supplier(threadLocal);
+            ownerClass = supplier != null ? supplier.getClass() : ownerClass;
+        }
+        return HIDDEN_CLASS_SUFFIX.matcher(ownerClass.getName()).replaceAll("");
+    }
+
+    private static long estimateSize(Object root) {
+        if (root == null) {
+            return 0;
+        }
+
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Object> queue = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        queue.add(root);
+        depths.add(0);
+        visited.add(root);
+
+        long result = 0;
+        while (!queue.isEmpty() && visited.size() <= MAX_WALK_OBJECTS) {
+            Object obj = queue.poll();
+            int depth = depths.poll();
+            Class<?> type = obj.getClass();
+
+            List<Object> children = new ArrayList<>();
+            if (type.isArray()) {
+                Class<?> componentType = type.getComponentType();
+                int length = Array.getLength(obj);
+                result += arraySize(length, componentType.isPrimitive() ? primitiveSize(componentType) : REFERENCE_BYTES);
+                if (!componentType.isPrimitive()) {
+                    for (Object element : (Object[]) obj) {
+                        children.add(element);
+                    }
+                }
+            } else {
+                long size = OBJECT_HEADER_BYTES;
+                boolean followReferences = !(obj instanceof Reference<?>);
+                for (Field field : instanceFields(type)) {
+                    Class<?> fieldType = field.getType();
+                    size += fieldType.isPrimitive() ? primitiveSize(fieldType) : REFERENCE_BYTES;
+                    if (!fieldType.isPrimitive() && followReferences && field.canAccess(obj)) {
+                        try {
+                            children.add(field.get(obj));
+                        } catch (IllegalAccessException e) {
+                            // Only counted by its shallow size.
+                        }
+                    }
+                }
+                result += align(size);
+            }
+
+            if (depth >= MAX_WALK_DEPTH) {
+                continue;
+            }
+            for (Object child : children) {
+                if (child != null && !isShared(child) && visited.add(child)) {
+                    queue.add(child);
+                    depths.add(depth + 1);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isShared(Object obj) {
+        return obj instanceof Class<?>
+                || obj instanceof ClassLoader
+                || obj instanceof Thread
+                || obj instanceof ThreadLocal<?>
+                || obj instanceof Module
+                || obj instanceof Connection
+                || obj instanceof Statement
+                || obj instanceof ResultSet
+                || obj instanceof Enum<?>;
+    }
+
+    private static List<Field> instanceFields(Class<?> type) {
+        return INSTANCE_FIELDS.computeIfAbsent(type, ThreadLocalAuditor::findInstanceFields);
+    }
+
+    private static List<Field> findInstanceFields(Class<?> type) {
+        List<Field> result = new ArrayList<>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                } catch (InaccessibleObjectException | SecurityException e) {
+                    // Counted, but not followed.
+                }
+                result.add(field);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long arraySize(int length, int elementSize) {
+        return align(ARRAY_HEADER_BYTES + (long) length * elementSize);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Discards the samples taken so far (e.g., the ones of the warmup iterations).
+     */
+    public void reset() {
+        taskCounter.set(0);
+        sampledThreadCount.reset();
+        usageByOwner.clear();
+    }
+
+    /**
+     * Prints the average number of thread local entries and their estimated size per sampled task
+     * for each responsible class, flagging the classes responsible for at least 10% of the bytes.
+     */
+    public void printSummary(String caption) {
+        System.out.println();
+        System.out.println("## " + caption);
+
+        long sampledCount = sampledThreadCount.sum();
+        if (sampledCount == 0) {
+            System.out.println("No virtual threads were sampled.");
+            return;
+        }
+
+        record OwnerUsage(String owner, double entriesPerTask, double bytesPerTask) {
+        }
+
+        List<OwnerUsage> usages = new ArrayList<>();
+        usageByOwner.forEach((owner, usage) -> usages.add(new OwnerUsage(
+                owner,
+                usage.entryCount.sum() / (double) sampledCount,
+                usage.byteCount.sum() / (double) sampledCount
+        )));
+        usages.sort((a, b) -> Double.compare(b.bytesPerTask(), a.bytesPerTask()));
+
+        double totalEntries = usages.stream().mapToDouble(OwnerUsage::entriesPerTask).sum();
+        double totalBytes = usages.stream().mapToDouble(OwnerUsage::bytesPerTask).sum();
+        System.out.printf(Locale.ROOT, "Sampled tasks: %d, entries/task: %.1f, bytes/task: %.0f%n",
+                sampledCount, totalEntries, totalBytes);
+        for (OwnerUsage usage : usages) {
+            boolean flagged = usage.bytesPerTask() >= 0.1 * totalBytes;
+            System.out.printf(Locale.ROOT, "%10.0f B/task %6.2f entries/task  %s%s%n",
+                    usage.bytesPerTask(), usage.entriesPerTask(), usage.owner(), flagged ? "  <- heavy" : "");
+        }
+    }
+
+    private static final class Usage {
+        private final LongAdder entryCount = new LongAdder();
+        private final LongAdder byteCount = new LongAdder();
+
+        public void add(int entries, long bytes) {
+            entryCount.add(entries);
+            byteCount.add(bytes);
+        }
+    }
+
+    /**
+     * The reflective access to the internals of {@code ThreadLocal}.
+     */
+    private record ThreadLocalAccess(
+            Field threadLocalsField,
+            Field inheritableThreadLocalsField,
+            Field tableField,
+            Field valueField,
+            Class<?> suppliedThreadLocalClass,
+            Field supplierField
+    ) {
+        public static ThreadLocalAccess tryCreate() {
+            try {
+                Class<?> mapClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap");
+                Class<?> entryClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap$Entry");
+                Class<?> suppliedClass = Class.forName("java.lang.ThreadLocal$SuppliedThreadLocal");
+                return new ThreadLocalAccess(
+                        accessibleField(Thread.class, "threadLocals"),
+                        accessibleField(Thread.class, "inheritableThreadLocals"),
+                        accessibleField(mapClass, "table"),
+                        accessibleField(entryClass, "value"),
+                        suppliedClass,
+                        accessibleField(suppliedClass, "supplier")
+                );
+            } catch (ReflectiveOperationException | InaccessibleObjectException e) {
+                return null;
+            }
+        }
+
+        private static Field accessibleField(Class<?> type, String name) throws NoSuchFieldException {
+            Field result = type.getDeclaredField(name);
+            result.setAccessible(true);
+            return result;
+        }
+
+        private static Object get(Field field, Object obj) {
+            try {
+                return field.get(obj);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Object threadLocals(Thread thread) {
+            return get(threadLocalsField, thread);
+        }
+
+        public Object inheritableThreadLocals(Thread thread) {
+            return get(inheritableThreadLocalsField, thread);
+        }
+
+        public Object[] table(Object threadLocalMap) {
+            return (Object[]) get(tableField, threadLocalMap);
+        }
+
+        public Object value(Object entry) {
+            return get(valueField, entry);
+        }
+
+        public boolean isSuppliedThreadLocal(ThreadLocal<?> threadLocal) {
+            return suppliedThreadLocalClass.isInstance(threadLocal);
+        }
+
+        public Supplier<?> supplier(ThreadLocal<?> threadLocal) {
+            return (Supplier<?>) get(supplierField, threadLocal);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package loomdbtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples a counter of completed actions in consecutive time windows of equal length on a
+ * background thread, so that throughput dips shorter than an iteration can be detected.
+ * The first window starts when the sampler is created.
+ */
+public final class ThroughputSampler {
+    private final long startNanos;
+    private final long windowNanos;
+    private final Thread samplerThread;
+    private final long[] windowCounts;
+    private int windowCount;
+
+    public ThroughputSampler(String name, LongAdder completedActions, long windowMs) {
+        // Enough for an iteration of 10 minutes, the rest of the windows are ignored.
+        this.windowCounts = new long[(int) Math.max(1, TimeUnit.MINUTES.toMillis(10) / windowMs)];
+        this.windowCount = 0;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.startNanos = System.nanoTime();
+        this.samplerThread = Thread.ofPlatform()
+                .name(name)
+                .daemon(true)
+                .start(() -> sample(completedActions));
+    }
+
+    private void sample(LongAdder completedActions) {
+        long prevCompleted = completedActions.sum();
+        try {
+            while (windowCount < windowCounts.length) {
+                // Sleeping until the end of the window, so that the windows do not drift.
+                long windowEndNanos = startNanos + (windowCount + 1) * windowNanos;
+                TimeUnit.NANOSECONDS.sleep(windowEndNanos - System.nanoTime());
+
+                long completed = completedActions.sum();
+                windowCounts[windowCount] = completed - prevCompleted;
+                windowCount++;
+                prevCompleted = completed;
+            }
+        } catch (InterruptedException e) {
+            // The iteration is over.
+        }
+    }
+
+    /**
+     * Returns the index of the window containing the given {@code System.nanoTime()} value.
+     */
+    public int windowIndexAt(long nanos) {
+        return (int) Math.max(0, (nanos - startNanos) / windowNanos);
+    }
+
+    /**
+     * Stops the sampling, and returns the number of actions completed in each window
+     * (the last, incomplete window is not included).
+     */
+    public long[] stop() throws InterruptedException {
+        samplerThread.interrupt();
+        samplerThread.join();
+        return Arrays.copyOf(windowCounts, windowCount);
+    }
+}
@@ -0,0 +1,31 @@
+package loomdbtest;
+
+import java.sql.Connection;
+
+/**
+ * The isolation level of the explicit transactions of {@link TransactionTest}.
+ */
+public enum TransactionIsolation {
+    /**
+     * Keeps the default isolation level of the connection.
+     */
+    DEFAULT(-1),
+    READ_UNCOMMITTED(Connection.TRANSACTION_READ_UNCOMMITTED),
+    READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+    REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+    SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+    private final int jdbcLevel;
+
+    TransactionIsolation(int jdbcLevel) {
+        this.jdbcLevel = jdbcLevel;
+    }
+
+    /**
+     * Returns the {@code Connection.TRANSACTION_*} constant of this isolation level, or
+     * a negative value for {@link #DEFAULT}.
+     */
+    public int jdbcLevel() {
+        return jdbcLevel;
+    }
+}
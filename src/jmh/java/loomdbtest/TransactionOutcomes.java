@@ -0,0 +1,41 @@
+package loomdbtest;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the outcomes of the transactions of {@link TransactionTest}, reported as
+ * secondary results of the benchmark.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class TransactionOutcomes {
+    /**
+     * The number of committed transactions.
+     */
+    public long commits;
+    /**
+     * The number of times a transaction was rolled back due to a conflict with another transaction
+     * (e.g., deadlock, lock timeout or serialization failure).
+     */
+    public long aborts;
+    /**
+     * The number of times an aborted transaction was restarted.
+     */
+    public long retries;
+    /**
+     * The number of transactions given up after too many aborts.
+     */
+    public long failedTransactions;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        commits = 0;
+        aborts = 0;
+        retries = 0;
+        failedTransactions = 0;
+    }
+}
@@ -0,0 +1,297 @@
+package loomdbtest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.jtrim2.utils.ExceptionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Updates "hot" rows of {@code LOOM_DB_TEST_TABLE} in explicit transactions, so that lock waits
+ * and transaction conflicts within the database affect the results. Each statement of a transaction
+ * first locks a row selected by a Zipfian distribution (the {@code hot-row-lock} script), then updates
+ * it (the {@code hot-row-update} script). Transactions aborted due to a conflict are retried.
+ * <P>
+ * The number of commits, aborts and retries are reported as secondary results, and the breakdown
+ * of the time the connections were held (waiting for the row locks, updating and committing) is
+ * printed after each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+@Fork(1)
+public class TransactionTest {
+    private static final String ROW_KEY_PLACEHOLDER = "@ROW_KEY@";
+    private static final String ROW_KEY_PREFIX = "HOT";
+
+    // SQL states of lock timeouts and transaction conflicts outside the "40" (transaction rollback) class.
+    private static final Set<String> CONFLICT_SQL_STATES = Set.of(
+            "HYT00", // H2: lock timeout
+            "61000", // Oracle: deadlock
+            "72000"  // Oracle: cannot serialize access
+    );
+
+    /**
+     * The maximum number of concurrent connections. The value is interpreted
+     * the same way as {@link DbPoolTest#poolSize}.
+     */
+    @Param("*1")
+    private String poolSize;
+
+    @Param("SEMAPHORE")
+    private DbPoolType dbPoolType;
+
+    /**
+     * The number of rows updated in a single transaction. If zero, then a single
+     * row is updated in autocommit mode (without locking it first).
+     */
+    @Param("2")
+    private int statementsPerTransaction;
+
+    @Param("DEFAULT")
+    private TransactionIsolation isolationLevel;
+
+    /**
+     * The number of rows updated by the transactions.
+     */
+    @Param("100")
+    private int hotRowCount;
+
+    /**
+     * The exponent of the Zipfian distribution selecting the updated rows. Zero means
+     * that all rows are equally likely to be selected.
+     */
+    @Param("1.0")
+    private double keySkew;
+
+    /**
+     * The number of times an aborted transaction is retried before giving up.
+     */
+    @Param("3")
+    private int maxRetries;
+
+    private ScopedDataSource dataSource;
+    private DbKeepAliveReference keepAliveReference;
+    private List<String> lockStatements;
+    private List<String> updateStatements;
+    private String[] rowKeys;
+    private ZipfianGenerator keyGenerator;
+
+    private final LongAdder holdNanos = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAdder workNanos = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+
+    @Setup
+    public void setup() throws Exception {
+        ExceptionHelper.checkArgumentInRange(statementsPerTransaction, 0, Integer.MAX_VALUE, "statementsPerTransaction");
+        ExceptionHelper.checkArgumentInRange(maxRetries, 0, Integer.MAX_VALUE, "maxRetries");
+
+        int actualPoolSize = DbPoolTest.normalizePoolSize(poolSize);
+        dataSource = dbPoolType.newDataSource(DbPoolSettings.ofPoolSize(actualPoolSize));
+
+        var testedDb = TestedDb.selectedTestedDb();
+        keepAliveReference = testedDb.keepAliveDb();
+
+        rowKeys = new String[hotRowCount];
+        for (int i = 0; i < rowKeys.length; i++) {
+            rowKeys[i] = ROW_KEY_PREFIX + i;
+        }
+        keyGenerator = new ZipfianGenerator(hotRowCount, keySkew);
+
+        dataSource.withConnectionAndGet(testedDb::initDb);
+        dataSource.withConnection(connection -> {
+            lockStatements = testedDb.loadScript(connection, "hot-row-lock");
+            updateStatements = testedDb.loadScript(connection, "hot-row-update");
+            insertHotRows(connection);
+        });
+        DbPoolTest.preopenConnections(actualPoolSize, dataSource);
+    }
+
+    private void insertHotRows(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO LOOM_DB_TEST_TABLE (COL1) VALUES (?)"
+        )) {
+            for (String rowKey : rowKeys) {
+                statement.setString(1, rowKey);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        DbPoolTest.closeAll(keepAliveReference, dataSource);
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        holdNanos.reset();
+        lockWaitNanos.reset();
+        workNanos.reset();
+        commitNanos.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportIteration() {
+        long held = holdNanos.sum();
+        long lockWait = lockWaitNanos.sum();
+        long work = workNanos.sum();
+        long commit = commitNanos.sum();
+
+        System.out.println();
+        System.out.println("## Connection hold time");
+        System.out.printf(Locale.ROOT,
+                "held=%.3f s: lock wait=%.1f%%, work=%.1f%%, commit/rollback=%.1f%%, other=%.1f%%%n",
+                held / (double) TimeUnit.SECONDS.toNanos(1),
+                toPercent(lockWait, held),
+                toPercent(work, held),
+                toPercent(commit, held),
+                toPercent(held - lockWait - work - commit, held)
+        );
+    }
+
+    private static double toPercent(long part, long total) {
+        return total > 0 ? 100.0 * part / total : 0.0;
+    }
+
+    private static boolean isTransactionConflict(SQLException e) {
+        if (e instanceof SQLTransactionRollbackException) {
+            return true;
+        }
+        String sqlState = e.getSQLState();
+        return sqlState != null && (sqlState.startsWith("40") || CONFLICT_SQL_STATES.contains(sqlState));
+    }
+
+    private static void executeStatements(
+            Connection connection,
+            List<String> statements,
+            String rowKey,
+            Blackhole blackhole
+    ) throws SQLException {
+        String actionId = SqlScriptUtils.currentActionId();
+        for (String statementStr : statements) {
+            String resolvedStatement = statementStr
+                    .replace(ROW_KEY_PLACEHOLDER, rowKey)
+                    .replace(SqlScriptUtils.ACTION_ID_PLACEHOLDER, actionId);
+            try (Statement statement = connection.createStatement()) {
+                if (statement.execute(resolvedStatement)) {
+                    try (ResultSet rows = statement.getResultSet()) {
+                        while (rows.next()) {
+                            blackhole.consume(rows);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void runAutoCommit(Connection connection, int[] keys, Blackhole blackhole) throws SQLException {
+        long startNanos = System.nanoTime();
+        executeStatements(connection, updateStatements, rowKeys[keys[0]], blackhole);
+        workNanos.add(System.nanoTime() - startNanos);
+    }
+
+    private void runTransaction(Connection connection, int[] keys, Blackhole blackhole) throws SQLException {
+        int originalIsolation = connection.getTransactionIsolation();
+        int isolation = isolationLevel.jdbcLevel();
+        if (isolation >= 0) {
+            connection.setTransactionIsolation(isolation);
+        }
+        connection.setAutoCommit(false);
+        try {
+            for (int key : keys) {
+                String rowKey = rowKeys[key];
+
+                long lockStartNanos = System.nanoTime();
+                executeStatements(connection, lockStatements, rowKey, blackhole);
+                long lockEndNanos = System.nanoTime();
+                lockWaitNanos.add(lockEndNanos - lockStartNanos);
+
+                executeStatements(connection, updateStatements, rowKey, blackhole);
+                workNanos.add(System.nanoTime() - lockEndNanos);
+            }
+
+            long commitStartNanos = System.nanoTime();
+            connection.commit();
+            commitNanos.add(System.nanoTime() - commitStartNanos);
+        } catch (Throwable e) {
+            long rollbackStartNanos = System.nanoTime();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            commitNanos.add(System.nanoTime() - rollbackStartNanos);
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            if (isolation >= 0) {
+                connection.setTransactionIsolation(originalIsolation);
+            }
+        }
+    }
+
+    private void runWithConnection(Connection connection, int[] keys, Blackhole blackhole) throws SQLException {
+        long startNanos = System.nanoTime();
+        try {
+            if (statementsPerTransaction == 0) {
+                runAutoCommit(connection, keys, blackhole);
+            } else {
+                runTransaction(connection, keys, blackhole);
+            }
+        } finally {
+            holdNanos.add(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3)
+    public void updateHotRows(Blackhole blackhole, TransactionOutcomes outcomes) throws Exception {
+        int[] keys = new int[Math.max(1, statementsPerTransaction)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyGenerator.next();
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                dataSource.withConnection(connection -> runWithConnection(connection, keys, blackhole));
+                outcomes.commits++;
+                return;
+            } catch (SQLException e) {
+                if (!isTransactionConflict(e)) {
+                    throw e;
+                }
+
+                outcomes.aborts++;
+                if (attempt >= maxRetries) {
+                    outcomes.failedTransactions++;
+                    return;
+                }
+                outcomes.retries++;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package loomdbtest;
+
+/**
+ * Gunther's Universal Scalability Law: The throughput at concurrency {@code N} is
+ * {@code lambda * N / (1 + sigma * (N - 1) + kappa * N * (N - 1))}, where {@code sigma}
+ * is the cost of contention, and {@code kappa} is the cost of coherency (crosstalk).
+ * By Little's law, the response time at concurrency {@code N} is {@code N / throughput}.
+ */
+public record UniversalScalabilityModel(double lambda, double sigma, double kappa) {
+    public UniversalScalabilityModel {
+        if (!(lambda > 0.0) || Double.isInfinite(lambda)) {
+            throw new IllegalArgumentException("lambda must be a positive number: " + lambda);
+        }
+        if (Double.isNaN(sigma) || Double.isInfinite(sigma)) {
+            throw new IllegalArgumentException("sigma must be a finite number: " + sigma);
+        }
+        if (Double.isNaN(kappa) || Double.isInfinite(kappa)) {
+            throw new IllegalArgumentException("kappa must be a finite number: " + kappa);
+        }
+    }
+
+    /**
+     * Fits the model to the given measurements with linear least squares (on the response times,
+     * which are linear in the coefficients of the model). Returns {@code null} if there are less than
+     * three different concurrency levels, or if the measurements do not describe a valid model.
+     */
+    public static UniversalScalabilityModel tryFit(double[] concurrencies, double[] throughputs) {
+        if (concurrencies.length != throughputs.length) {
+            throw new IllegalArgumentException("The number of concurrencies and throughputs differ.");
+        }
+
+        // response time = a + b * (N - 1) + c * N * (N - 1), where
+        // a = 1 / lambda, b = sigma / lambda, c = kappa / lambda
+        double[][] normalMatrix = new double[3][4];
+        for (int i = 0; i < concurrencies.length; i++) {
+            double n = concurrencies[i];
+            double[] x = {1.0, n - 1.0, n * (n - 1.0)};
+            double y = n / throughputs[i];
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) {
+                    normalMatrix[row][column] += x[row] * x[column];
+                }
+                normalMatrix[row][3] += x[row] * y;
+            }
+        }
+
+        double[] coefficients = solve(normalMatrix);
+        if (coefficients == null || !(coefficients[0] > 0.0)) {
+            return null;
+        }
+
+        double a = coefficients[0];
+        return new UniversalScalabilityModel(1.0 / a, coefficients[1] / a, coefficients[2] / a);
+    }
+
+    private static double[] solve(double[][] augmentedMatrix) {
+        int size = augmentedMatrix.length;
+        for (int pivot = 0; pivot < size; pivot++) {
+            int maxRow = pivot;
+            for (int row = pivot + 1; row < size; row++) {
+                if (Math.abs(augmentedMatrix[row][pivot]) > Math.abs(augmentedMatrix[maxRow][pivot])) {
+                    maxRow = row;
+                }
+            }
+            double[] pivotRow = augmentedMatrix[maxRow];
+            augmentedMatrix[maxRow] = augmentedMatrix[pivot];
+            augmentedMatrix[pivot] = pivotRow;
+
+            double pivotValue = pivotRow[pivot];
+            if (Math.abs(pivotValue) < 1e-12 * Math.abs(augmentedMatrix[0][0])) {
+                return null;
+            }
+            for (int row = pivot + 1; row < size; row++) {
+                double factor = augmentedMatrix[row][pivot] / pivotValue;
+                for (int column = pivot; column <= size; column++) {
+                    augmentedMatrix[row][column] -= factor * pivotRow[column];
+                }
+            }
+        }
+
+        double[] result = new double[size];
+        for (int row = size - 1; row >= 0; row--) {
+            double value = augmentedMatrix[row][size];
+            for (int column = row + 1; column < size; column++) {
+                value -= augmentedMatrix[row][column] * result[column];
+            }
+            result[row] = value / augmentedMatrix[row][row];
+        }
+        return result;
+    }
+
+    public double throughputAt(double concurrency) {
+        return lambda * concurrency / (1.0 + sigma * (concurrency - 1.0) + kappa * concurrency * (concurrency - 1.0));
+    }
+
+    public double responseTimeAt(double concurrency) {
+        return concurrency / throughputAt(concurrency);
+    }
+
+    /**
+     * Returns the concurrency where the throughput is the highest, or positive infinity
+     * if the throughput never stops growing.
+     */
+    public double peakConcurrency() {
+        if (kappa <= 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.sqrt(Math.max(1.0 - sigma, 0.0) / kappa);
+    }
+}
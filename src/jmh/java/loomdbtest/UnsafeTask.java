@@ -0,0 +1,17 @@
+package loomdbtest;
+
+import org.jtrim2.utils.ExceptionHelper;
+
+public interface UnsafeTask {
+    void run() throws Exception;
+
+    default Runnable toRunnable() {
+        return () -> {
+            try {
+                run();
+            } catch (Exception e) {
+                throw ExceptionHelper.throwUnchecked(e);
+            }
+        };
+    }
+}
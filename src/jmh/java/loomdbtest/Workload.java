@@ -0,0 +1,160 @@
+package loomdbtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A weighted mix of scripts executed instead of the single benchmark script.
+ * <P>
+ * A workload is defined by a {@code <NAME>.workload} file in the script directory of the
+ * database (or in the common script directory). Each non-empty line of the file (except for the
+ * ones starting with '#') defines an operation in the "SCRIPT_NAME WEIGHT [THINK_TIME_MS]" format.
+ * For example:
+ * <pre>
+ * # script      weight  think time (ms)
+ * point-read    70
+ * insert-delete 20
+ * scan          10      5
+ * </pre>
+ * The scripts are looked up the same way as the {@code benchmark} script.
+ */
+public final class Workload {
+    private final List<ScriptOperation> operations;
+    private final int[] cumulativeWeights;
+    private long iterationStartNanos;
+
+    private Workload(List<ScriptOperation> operations) {
+        this.operations = List.copyOf(operations);
+        this.cumulativeWeights = new int[operations.size()];
+
+        int weightSum = 0;
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            weightSum = Math.addExact(weightSum, operations.get(i).definition().weight());
+            cumulativeWeights[i] = weightSum;
+        }
+        this.iterationStartNanos = System.nanoTime();
+    }
+
+    public static List<WorkloadOperation> parseDefinition(String content) {
+        List<WorkloadOperation> result = new ArrayList<>();
+        for (String line : content.split("\\R")) {
+            String trimmedLine = line.trim();
+            if (!trimmedLine.isEmpty() && !trimmedLine.startsWith("#")) {
+                result.add(WorkloadOperation.parse(trimmedLine));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the given workload of the database, and the scripts of its operations.
+     */
+    public static Workload load(TestedDb testedDb, String workloadName, Connection connection) {
+        String definitionFileName = workloadName + ".workload";
+        List<WorkloadOperation> definitions;
+        try {
+            String content = SqlScriptUtils.tryReadScriptFile(testedDb.scriptDirName(), definitionFileName);
+            if (content == null) {
+                throw new IllegalArgumentException("Missing workload definition: " + definitionFileName);
+            }
+            definitions = parseDefinition(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (definitions.isEmpty()) {
+            throw new IllegalArgumentException("Workload has no operations: " + definitionFileName);
+        }
+
+        List<ScriptOperation> operations = new ArrayList<>(definitions.size());
+        for (WorkloadOperation definition : definitions) {
+            operations.add(new ScriptOperation(
+                    definition,
+                    testedDb.loadBenchmarkAction(connection, definition.scriptName()),
+                    new LatencyHistogram()
+            ));
+        }
+        return new Workload(operations);
+    }
+
+    public List<ScriptOperation> operations() {
+        return operations;
+    }
+
+    /**
+     * Returns the index (in {@link #operations()}) of a randomly selected operation according
+     * to the weights of the operations.
+     */
+    public int selectOperationIndex() {
+        int selector = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (selector < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        throw new AssertionError("Weight is out of range: " + selector);
+    }
+
+    public void startIteration() {
+        operations.forEach(operation -> operation.latencies().reset());
+        iterationStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Prints the throughput and the latency distribution (including the wait for the connection,
+     * but not the think time) of each operation since the last {@link #startIteration() startIteration}.
+     * Failed operations (including the ones missing their deadline) are counted as well.
+     */
+    public void printIterationReport() {
+        double elapsedSec = (System.nanoTime() - iterationStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        System.out.println();
+        System.out.println("## Workload operations");
+        for (ScriptOperation operation : operations) {
+            WorkloadOperation definition = operation.definition();
+            LatencyHistogram latencies = operation.latencies();
+            System.out.printf(Locale.ROOT, "%s (weight %d): ops/s=%.1f, %s%n",
+                    definition.scriptName(),
+                    definition.weight(),
+                    elapsedSec > 0 ? latencies.count() / elapsedSec : 0.0,
+                    latencies.toSummaryString()
+            );
+        }
+    }
+
+    public record ScriptOperation(
+            WorkloadOperation definition,
+            BenchmarkConnectionAction action,
+            LatencyHistogram latencies
+    ) {
+        /**
+         * Executes the script of the operation with a connection of the given data source.
+         */
+        public void run(ScopedDataSource dataSource, Blackhole blackhole) throws Exception {
+            long startNanos = System.nanoTime();
+            try {
+                dataSource.withConnection(connection -> {
+                    action.run(connection, blackhole);
+                });
+            } finally {
+                latencies.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * Waits for the think time of the operation (if any).
+         */
+        public void think() throws InterruptedException {
+            long thinkTimeMs = definition.thinkTimeMs();
+            if (thinkTimeMs > 0) {
+                Thread.sleep(thinkTimeMs);
+            }
+        }
+    }
+}
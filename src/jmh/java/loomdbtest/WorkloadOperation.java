@@ -0,0 +1,39 @@
+package loomdbtest;
+
+import java.util.Objects;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * An entry of a workload definition file (see {@link Workload}).
+ *
+ * @param scriptName the base name of the script executed by the operation
+ * @param weight the relative frequency of the operation compared to other operations of the workload
+ * @param thinkTimeMs the time (in ms) the task sleeps after the operation without holding a connection
+ */
+public record WorkloadOperation(
+        String scriptName,
+        int weight,
+        long thinkTimeMs
+) {
+    public WorkloadOperation {
+        Objects.requireNonNull(scriptName, "scriptName");
+        ExceptionHelper.checkArgumentInRange(weight, 1, Integer.MAX_VALUE, "weight");
+        ExceptionHelper.checkArgumentInRange(thinkTimeMs, 0, Long.MAX_VALUE, "thinkTimeMs");
+    }
+
+    /**
+     * Parses a line in the "SCRIPT_NAME WEIGHT [THINK_TIME_MS]" format.
+     */
+    public static WorkloadOperation parse(String line) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Invalid workload operation: " + line);
+        }
+
+        return new WorkloadOperation(
+                parts[0],
+                Integer.parseInt(parts[1]),
+                parts.length > 2 ? Long.parseLong(parts[2]) : 0
+        );
+    }
+}
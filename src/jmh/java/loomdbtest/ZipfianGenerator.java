@@ -0,0 +1,38 @@
+package loomdbtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.jtrim2.utils.ExceptionHelper;
+
+/**
+ * Generates integers in the range [0, n) where the probability of {@code k} is proportional
+ * to {@code 1 / (k + 1)^exponent}. That is, an exponent of zero means the uniform distribution,
+ * and the greater the exponent, the more the small values dominate.
+ */
+public final class ZipfianGenerator {
+    private final double[] cumulativeProbabilities;
+
+    public ZipfianGenerator(int n, double exponent) {
+        ExceptionHelper.checkArgumentInRange(n, 1, Integer.MAX_VALUE, "n");
+        if (!(exponent >= 0.0) || Double.isInfinite(exponent)) {
+            throw new IllegalArgumentException("exponent must be a non-negative number: " + exponent);
+        }
+
+        cumulativeProbabilities = new double[n];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulativeProbabilities[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulativeProbabilities[i] /= sum;
+        }
+    }
+
+    public int next() {
+        double selector = ThreadLocalRandom.current().nextDouble();
+        int index = Arrays.binarySearch(cumulativeProbabilities, selector);
+        int result = index >= 0 ? index : -index - 1;
+        return Math.min(result, cumulativeProbabilities.length - 1);
+    }
+}
@@ -0,0 +1,160 @@
+#!/bin/bash
+
+set -euo pipefail
+shopt -s extglob
+
+script_dir=$(cd "$(dirname "$0")" && pwd)
+
+processor_counts=""
+jmh_args=()
+
+while [[ $# > 0 ]] ; do
+  case "$1" in
+    --processorCounts?(=*))
+      if [[ $1 =~ .*=.* ]]; then
+        processor_counts="${1#*=}"
+      else
+        processor_counts="$2"
+        shift
+      fi
+      ;;
+    --@(processorCount|carrierParallelism)?(=*))
+      echo 1>&2 "$1 is set by the sweep for each run, use --processorCounts instead"
+      exit 1
+      ;;
+    --testedDb?(=*))
+      if [[ $1 =~ .*=.* ]]; then
+        db_value="${1#*=}"
+        jmh_args+=("$1")
+      else
+        db_value="$2"
+        jmh_args+=("$1" "$2")
+        shift
+      fi
+      db_names="${db_names+${db_names},}${db_value}"
+      ;;
+    *)
+      jmh_args+=("$1")
+      ;;
+  esac
+  shift
+done
+
+if [[ ${processor_counts} = "" ]]; then
+  echo 1>&2 "Missing required --processorCounts parameter"
+  exit 2
+fi
+if [[ ${db_names:-} = "" ]]; then
+  echo 1>&2 "Missing required --testedDb parameter"
+  exit 2
+fi
+
+results_dir="${script_dir}/jmh-results"
+dest_dir="${results_dir}/sweep"
+
+mkdir -p "${dest_dir}"
+
+IFS=, read -r -a processor_count_list <<< "${processor_counts}"
+IFS=, read -r -a db_name_list <<< "${db_names}"
+
+for processor_count in "${processor_count_list[@]}"; do
+  "${script_dir}/jmh.sh" "--processorCount=${processor_count}" "${jmh_args[@]}"
+
+  for db_name in "${db_name_list[@]}"; do
+    cp "${results_dir}/${db_name}.results.txt" "${dest_dir}/${db_name}.cpu${processor_count}.results.txt"
+  done
+done
+
+# Prints the score of each benchmark configuration for every processor count, along with its speedup
+# and efficiency relative to the first processor count. The input files must be ordered by the processor
+# counts, and the processor count is passed as a "processors=<COUNT>" argument before each file.
+scaling_table() {
+  awk '
+    function is_number(value) {
+      return value ~ /^-?[0-9]+(\.[0-9]+)?([eE][-+]?[0-9]+)?$/
+    }
+
+    FNR == 1 {
+      param_count = 0
+      file_processors[++file_count] = processors
+    }
+
+    $1 == "Benchmark" {
+      param_count = 0
+      for (i = 2; i <= NF && $i ~ /^\(.*\)$/; i++) {
+        param_names[++param_count] = substr($i, 2, length($i) - 2)
+      }
+      next
+    }
+
+    param_count > 0 && $1 !~ /:/ && NF >= param_count + 3 {
+      units = $NF
+      score = ($(NF - 2) == "±") ? $(NF - 3) : $(NF - 1)
+      gsub(",", ".", score)
+      if (!is_number(score)) {
+        next
+      }
+
+      key = $1
+      for (i = 1; i <= param_count; i++) {
+        key = key " " param_names[i] "=" $(i + 1)
+      }
+      key = key " (" $(param_count + 2) ", " units ")"
+
+      if (!(key in seen)) {
+        seen[key] = 1
+        keys[++key_count] = key
+        # Throughput is the only mode where higher scores are better.
+        higher_is_better[key] = ($(param_count + 2) == "thrpt")
+      }
+      scores[key, processors] = score
+    }
+
+    END {
+      for (k = 1; k <= key_count; k++) {
+        key = keys[k]
+        print "## " key
+        printf "%12s %16s %10s %12s\n", "processors", "score", "speedup", "efficiency"
+
+        base_processors = ""
+        for (f = 1; f <= file_count; f++) {
+          p = file_processors[f]
+          if (!((key, p) in scores)) {
+            printf "%12s %16s\n", p, "N/A"
+            continue
+          }
+
+          score = scores[key, p]
+          if (base_processors == "") {
+            base_processors = p
+            base_score = score
+          }
+
+          if (score == 0 || base_score == 0) {
+            speedup = 0
+          } else if (higher_is_better[key]) {
+            speedup = score / base_score
+          } else {
+            speedup = base_score / score
+          }
+          efficiency = 100 * speedup * base_processors / p
+
+          printf "%12s %16.3f %10.2f %11.1f%%%s\n",
+              p, score, speedup, efficiency, (efficiency < 50 ? "  <- not scaling" : "")
+        }
+        print ""
+      }
+    }
+  ' "$@"
+}
+
+for db_name in "${db_name_list[@]}"; do
+  awk_args=()
+  for processor_count in "${processor_count_list[@]}"; do
+    awk_args+=("processors=${processor_count}" "${dest_dir}/${db_name}.cpu${processor_count}.results.txt")
+  done
+
+  dest_file="${dest_dir}/${db_name}.scaling.txt"
+  scaling_table "${awk_args[@]}" > "${dest_file}"
+  echo "Scaling table for ${db_name} is stored in ${dest_file}."
+done